@@ -52,6 +52,14 @@ android {
         targetCompatibility = JavaVersion.VERSION_1_8
     }
 
+    testOptions {
+        unitTests.all {
+            // 1シーズン分の記録処理の長時間テストは -Psoak を付けたときだけ実行する
+            it.systemProperty("soak", project.hasProperty("soak").toString())
+            project.findProperty("soak.matches")?.let { matches -> it.systemProperty("soak.matches", matches) }
+        }
+    }
+
     packaging {
         resources {
             excludes += "META-INF/INDEX.LIST"
@@ -61,6 +69,7 @@ android {
 }
 
 dependencies {
+    implementation(project(":core"))
     implementation(libs.google.http.client)
     implementation(libs.google.api.client.gson)
     implementation(libs.google.api.services.sheets)
@@ -68,6 +77,7 @@ dependencies {
     implementation(libs.google.api.client.android)
     implementation(libs.appcompat)
     implementation(libs.material)
+    implementation(libs.recyclerview)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
@@ -0,0 +1,225 @@
+package com.ppp.svwbrecord;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.Adapter;
+import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * 記録パネルのデッキ名検索欄。入力のたびに {@link DeckSearchIndex} を引き、候補を RecyclerView に表示する。
+ * 候補をタップすると同じ名前のスピナーの項目を選択する（スピナーの並びは索引と同じとは限らない）。
+ * 候補の更新は差分だけを反映し、表示中の行のビューは使い回す。
+ */
+class DeckSearchController {
+
+    static final int MAX_RESULTS = 30;
+
+    /**
+     * 記録パネルのウィンドウの設定を変更する側
+     */
+    interface Host {
+        /** 検索欄に文字を入力できるよう、パネルのウィンドウがフォーカスを受け取れるかを切り替える */
+        void setPanelFocusable(boolean focusable);
+    }
+
+    private final EditText input;
+    private final RecyclerView resultsView;
+    private final Spinner target;
+    private final Host host;
+    private final ResultAdapter adapter = new ResultAdapter();
+    private DeckSearchIndex index = DeckSearchIndex.EMPTY;
+
+    @SuppressLint("ClickableViewAccessibility")
+    DeckSearchController(EditText input, RecyclerView resultsView, Spinner target, Host host) {
+        this.input = input;
+        this.resultsView = resultsView;
+        this.target = target;
+        this.host = host;
+
+        resultsView.setLayoutManager(new LinearLayoutManager(input.getContext()));
+        resultsView.setAdapter(adapter);
+
+        // パネルは通常フォーカスを受け取らないので、検索欄に触れたときだけ受け取れるようにする
+        input.setOnTouchListener((v, event) -> {
+            if (event.getAction() == MotionEvent.ACTION_UP) {
+                host.setPanelFocusable(true);
+                input.requestFocus();
+                showKeyboard();
+            }
+            return false;
+        });
+        input.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId == EditorInfo.IME_ACTION_DONE) {
+                int[] results = adapter.results;
+                if (results.length > 0) {
+                    select(results[0]);
+                } else {
+                    clear();
+                }
+                return true;
+            }
+            return false;
+        });
+        input.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                updateResults(s.toString());
+            }
+        });
+    }
+
+    /**
+     * 検索に使う索引を差し替える（マスターデータのバージョンが変わったとき）
+     */
+    void setIndex(DeckSearchIndex index) {
+        this.index = index;
+        adapter.submit(index, new int[0]);
+        if (input.length() > 0) {
+            updateResults(input.getText().toString());
+        }
+    }
+
+    /**
+     * 検索欄を空にして候補を閉じ、パネルをフォーカスを受け取らない状態に戻す
+     */
+    void clear() {
+        if (input.length() > 0) {
+            input.setText("");
+        }
+        resultsView.setVisibility(View.GONE);
+        hideKeyboard();
+        input.clearFocus();
+        host.setPanelFocusable(false);
+    }
+
+    private void updateResults(String query) {
+        if (query.trim().isEmpty()) {
+            adapter.submit(index, new int[0]);
+            resultsView.setVisibility(View.GONE);
+            return;
+        }
+        adapter.submit(index, index.search(query, MAX_RESULTS));
+        resultsView.setVisibility(View.VISIBLE);
+    }
+
+    private void select(int deckIndex) {
+        // 相手のデッキは最近対戦したデッキが先に並ぶので、索引の位置ではなく名前で探す
+        int position = positionOf(target.getAdapter(), index.getName(deckIndex));
+        if (position >= 0) {
+            target.setSelection(position);
+        }
+        clear();
+    }
+
+    private static int positionOf(Adapter adapter, String name) {
+        for (int i = 0; i < adapter.getCount(); i++) {
+            if (name.equals(adapter.getItem(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void showKeyboard() {
+        InputMethodManager imm = (InputMethodManager) input.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            imm.showSoftInput(input, InputMethodManager.SHOW_IMPLICIT);
+        }
+    }
+
+    private void hideKeyboard() {
+        InputMethodManager imm = (InputMethodManager) input.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            imm.hideSoftInputFromWindow(input.getWindowToken(), 0);
+        }
+    }
+
+    private class ResultAdapter extends RecyclerView.Adapter<ResultViewHolder> {
+        private DeckSearchIndex resultIndex = DeckSearchIndex.EMPTY;
+        private int[] results = new int[0];
+
+        void submit(DeckSearchIndex newIndex, int[] newResults) {
+            if (newIndex != resultIndex) {
+                resultIndex = newIndex;
+                results = newResults;
+                notifyDataSetChanged();
+                return;
+            }
+            final int[] oldResults = results;
+            results = newResults;
+            DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldResults.length;
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newResults.length;
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return oldResults[oldPosition] == newResults[newPosition];
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return true;
+                }
+            }, false).dispatchUpdatesTo(this);
+        }
+
+        @NonNull
+        @Override
+        public ResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            TextView view = (TextView) LayoutInflater.from(parent.getContext())
+                    .inflate(android.R.layout.simple_list_item_1, parent, false);
+            return new ResultViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ResultViewHolder holder, int position) {
+            int deckIndex = results[position];
+            holder.text.setText(resultIndex.getName(deckIndex));
+            holder.text.setOnClickListener(v -> select(deckIndex));
+        }
+
+        @Override
+        public int getItemCount() {
+            return results.length;
+        }
+    }
+
+    private static class ResultViewHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        ResultViewHolder(TextView text) {
+            super(text);
+            this.text = text;
+        }
+    }
+}
@@ -4,21 +4,25 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
+import android.app.KeyguardManager;
 import android.app.Service;
-import android.app.usage.UsageStats;
+import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
-import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 public class GameWatchService extends Service {
 
@@ -36,12 +40,41 @@ public class GameWatchService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private static final int GAME_NOTIFICATION_ID = 2;
     private static final String CHANNEL_ID = "GameWatchChannel";
+    // 起動直後に現在の前面アプリを判定するために遡る時間
+    private static final long BOOTSTRAP_LOOKBACK_MS = 3 * 60 * 60 * 1000L; // 3時間
+
+    // --- Polling Intervals ---
+    // ゲームが前面にある間は短い間隔で確認する
+    private static final long FOREGROUND_POLL_INTERVAL_MS = 1000;
+    // ゲームを最近見かけた場合の間隔
+    private static final long RECENT_POLL_INTERVAL_MS = 2000;
+    // ゲームをしばらく見かけていない場合は、この間隔まで徐々に延ばす
+    private static final long MAX_IDLE_POLL_INTERVAL_MS = 15000;
+    private static final long RECENTLY_SEEN_WINDOW_MS = 5 * 60 * 1000; // 5分
+
+    // --- Polling Statistics ---
+    private static volatile long wakeupCount = 0;
+    private static volatile long monitoringStartedAtElapsed = 0;
 
     // --- Member Variables ---
-    private final Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable runnable;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 監視処理はメインスレッドではなく専用のスレッドで行う
+    private HandlerThread watchThread;
+    private Handler watchHandler;
+    private final Runnable pollRunnable = this::poll;
+    private boolean isMonitoring = false;
+    private boolean isScreenInteractive = true;
+    private boolean isDeviceIdle = false;
+    private long currentPollIntervalMs = RECENT_POLL_INTERVAL_MS;
+    private long lastGameSeenElapsed = 0;
     private boolean isUiVisible = false;
 
+    // UsageEvents の読み取り位置（次に読むイベントの開始時刻）
+    private long eventCursor = 0;
+    // 監視対象（ゲームまたはこのアプリ）のうち、現在前面にあるパッケージ
+    private String watchedForegroundPackage = null;
+    private final UsageEvents.Event reusableEvent = new UsageEvents.Event();
+
 
     // =================================================================================
     // Service Lifecycle Methods
@@ -53,6 +86,22 @@ public class GameWatchService extends Service {
         isRunning = true;
         Log.d(TAG, "Service onCreate, isRunning = true");
         createNotificationChannel();
+
+        watchThread = new HandlerThread("GameWatchThread", Process.THREAD_PRIORITY_BACKGROUND);
+        watchThread.start();
+        watchHandler = new Handler(watchThread.getLooper());
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        isScreenInteractive = powerManager.isInteractive();
+        isDeviceIdle = powerManager.isDeviceIdleMode();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_USER_PRESENT);
+        filter.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        // 受信処理も監視スレッドで行い、状態を1つのスレッドだけで扱う
+        registerReceiver(deviceStateReceiver, filter, null, watchHandler, Context.RECEIVER_NOT_EXPORTED);
     }
 
     @Override
@@ -63,22 +112,28 @@ public class GameWatchService extends Service {
         if (intent != null) {
             String action = intent.getAction();
             if (ACTION_START_MONITORING.equals(action)) {
-                Log.d(TAG, "Received START_MONITORING action. Starting the handler loop.");
-                if (runnable != null) {
-                    handler.removeCallbacks(runnable);
-                }
-                runnable = () -> {
-                    checkForegroundApp();
-                    handler.postDelayed(runnable, 2000);
-                };
-                handler.post(runnable);
+                Log.d(TAG, "Received START_MONITORING action. Starting the watch loop.");
+                watchHandler.post(() -> {
+                    if (!isMonitoring) {
+                        isMonitoring = true;
+                        wakeupCount = 0;
+                        monitoringStartedAtElapsed = SystemClock.elapsedRealtime();
+                    }
+                    currentPollIntervalMs = RECENT_POLL_INTERVAL_MS;
+                    schedulePoll(0);
+                });
+                // 前回のプロセスで送信できなかった記録があれば送信する
+                RecordPipeline.getInstance(this).requestSync();
             } else if (ACTION_STOP_MONITORING.equals(action)) {
                 Log.d(TAG, "Received STOP_MONITORING action.");
                 stopSelf();
             } else if (ACTION_REFRESH_UI.equals(action)) {
                 Log.d(TAG, "Received REFRESH_UI action.");
                 // isUiVisibleを一度falseにして、次のチェックでUIが再表示されるようにする
-                isUiVisible = false;
+                watchHandler.post(() -> {
+                    isUiVisible = false;
+                    schedulePoll(0);
+                });
             }
         }
         return START_STICKY;
@@ -96,11 +151,12 @@ public class GameWatchService extends Service {
         isRunning = false;
         Log.d(TAG, "Service onDestroy, isRunning = false");
         super.onDestroy();
-        if (runnable != null) {
-            handler.removeCallbacks(runnable);
-        }
+        unregisterReceiver(deviceStateReceiver);
+        watchHandler.removeCallbacksAndMessages(null);
+        watchThread.quitSafely();
+        mainHandler.removeCallbacksAndMessages(null);
         hideGameNotification();
-        stopService(new Intent(this, FloatingButtonService.class));
+        stopService(new Intent(this, OverlayService.class));
     }
 
     @Nullable
@@ -114,34 +170,134 @@ public class GameWatchService extends Service {
     // Core Logic Methods
     // =================================================================================
 
+    /**
+     * 監視開始からの1時間あたりの起床回数（バッテリー消費の確認用）
+     */
+    public static double getWakeupsPerHour() {
+        long startedAt = monitoringStartedAtElapsed;
+        if (startedAt <= 0) {
+            return 0;
+        }
+        long elapsedMs = Math.max(1, SystemClock.elapsedRealtime() - startedAt);
+        return wakeupCount * 3600000.0 / elapsedMs;
+    }
+
+    public static long getWakeupCount() {
+        return wakeupCount;
+    }
+
+    private final BroadcastReceiver deviceStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+                Log.d(TAG, "Screen off. Pausing watch loop.");
+                isScreenInteractive = false;
+            } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+                Log.d(TAG, "User present. Resuming watch loop.");
+                isScreenInteractive = true;
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                // ロック画面がない場合は USER_PRESENT を待たずに再開する
+                KeyguardManager keyguardManager = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
+                isScreenInteractive = keyguardManager == null || !keyguardManager.isKeyguardLocked();
+            } else if (PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED.equals(action)) {
+                PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+                isDeviceIdle = powerManager.isDeviceIdleMode();
+                Log.d(TAG, "Device idle mode changed: " + isDeviceIdle);
+            }
+
+            if (canPoll()) {
+                currentPollIntervalMs = RECENT_POLL_INTERVAL_MS;
+                schedulePoll(0);
+            } else {
+                watchHandler.removeCallbacks(pollRunnable);
+            }
+        }
+    };
+
+    private boolean canPoll() {
+        return isMonitoring && isScreenInteractive && !isDeviceIdle;
+    }
+
+    private void schedulePoll(long delayMs) {
+        watchHandler.removeCallbacks(pollRunnable);
+        if (canPoll()) {
+            watchHandler.postDelayed(pollRunnable, delayMs);
+        }
+    }
+
+    private void poll() {
+        wakeupCount++;
+        checkForegroundApp();
+        schedulePoll(nextPollInterval());
+    }
+
+    /**
+     * ゲームが前面にあれば短く、最近見かけていなければ徐々に長くする
+     */
+    private long nextPollInterval() {
+        long now = SystemClock.elapsedRealtime();
+        if (TARGET_PACKAGE_NAME.equals(watchedForegroundPackage)) {
+            lastGameSeenElapsed = now;
+            currentPollIntervalMs = FOREGROUND_POLL_INTERVAL_MS;
+        } else if (lastGameSeenElapsed > 0 && now - lastGameSeenElapsed < RECENTLY_SEEN_WINDOW_MS) {
+            currentPollIntervalMs = RECENT_POLL_INTERVAL_MS;
+        } else {
+            currentPollIntervalMs = Math.min(Math.max(currentPollIntervalMs, RECENT_POLL_INTERVAL_MS) * 2, MAX_IDLE_POLL_INTERVAL_MS);
+        }
+        return currentPollIntervalMs;
+    }
+
+    /**
+     * 前回のチェック以降に発生した UsageEvents だけを読み、監視対象アプリの表示状態を更新する。
+     * 全アプリの使用統計を毎回読み込むのではなく、新しいイベントの数に比例した処理量で済む。
+     */
     private void checkForegroundApp() {
         UsageStatsManager usm = (UsageStatsManager) this.getSystemService(Context.USAGE_STATS_SERVICE);
-        long time = System.currentTimeMillis();
-        List<UsageStats> appList = usm.queryUsageStats(UsageStatsManager.INTERVAL_DAILY, time - 1000 * 10, time);
+        long now = System.currentTimeMillis();
+        // 初回は直近の履歴から現在の状態を復元する
+        long begin = eventCursor > 0 ? eventCursor : now - BOOTSTRAP_LOOKBACK_MS;
+        if (begin > now) {
+            // 時計が戻された場合はカーソルを作り直す
+            begin = now - BOOTSTRAP_LOOKBACK_MS;
+        }
 
-        if (appList != null && !appList.isEmpty()) {
-            SortedMap<Long, UsageStats> sortedMap = new TreeMap<>();
-            for (UsageStats usageStats : appList) {
-                sortedMap.put(usageStats.getLastTimeUsed(), usageStats);
+        UsageEvents events = usm.queryEvents(begin, now);
+        if (events == null) {
+            return;
+        }
+        long lastTimestamp = eventCursor;
+        while (events.hasNextEvent()) {
+            events.getNextEvent(reusableEvent);
+            lastTimestamp = Math.max(lastTimestamp, reusableEvent.getTimeStamp());
+
+            int eventType = reusableEvent.getEventType();
+            if (eventType != UsageEvents.Event.ACTIVITY_RESUMED && eventType != UsageEvents.Event.ACTIVITY_PAUSED) {
+                continue;
             }
-            if (!sortedMap.isEmpty()) {
-                UsageStats lastUsedAppStats = sortedMap.get(sortedMap.lastKey());
-                if (lastUsedAppStats != null && lastUsedAppStats.getPackageName() != null) {
-                    String currentApp = lastUsedAppStats.getPackageName();
-                    boolean shouldBeVisible = TARGET_PACKAGE_NAME.equals(currentApp) || MY_APP_PACKAGE_NAME.equals(currentApp);
-
-                    if (shouldBeVisible && !isUiVisible) {
-                        Log.i(TAG, "App detected (" + currentApp + "). SHOWING UI...");
-                        isUiVisible = true;
-                        handleGameStart();
-                    } else if (!shouldBeVisible && isUiVisible) {
-                        Log.i(TAG, "App lost focus (current: " + currentApp + "). HIDING UI...");
-                        isUiVisible = false;
-                        handleGameStop();
-                    }
-                }
+            String packageName = reusableEvent.getPackageName();
+            if (!TARGET_PACKAGE_NAME.equals(packageName) && !MY_APP_PACKAGE_NAME.equals(packageName)) {
+                continue;
+            }
+            if (eventType == UsageEvents.Event.ACTIVITY_RESUMED) {
+                watchedForegroundPackage = packageName;
+            } else if (packageName.equals(watchedForegroundPackage)) {
+                watchedForegroundPackage = null;
             }
         }
+        // 次回は処理済みのイベントの直後から読む
+        eventCursor = Math.max(begin, lastTimestamp + 1);
+
+        boolean shouldBeVisible = watchedForegroundPackage != null;
+        if (shouldBeVisible && !isUiVisible) {
+            Log.i(TAG, "App detected (" + watchedForegroundPackage + "). SHOWING UI...");
+            isUiVisible = true;
+            mainHandler.post(this::handleGameStart);
+        } else if (!shouldBeVisible && isUiVisible) {
+            Log.i(TAG, "App lost focus. HIDING UI...");
+            isUiVisible = false;
+            mainHandler.post(this::handleGameStop);
+        }
     }
 
     private void handleGameStart() {
@@ -149,7 +305,8 @@ public class GameWatchService extends Service {
         String displayMode = prefs.getString(MainActivity.KEY_DISPLAY_MODE, MainActivity.MODE_NOTIFICATION);
 
         if (MainActivity.MODE_FLOATING_BUTTON.equals(displayMode)) {
-            Intent intent = new Intent(this, FloatingButtonService.class);
+            Intent intent = new Intent(this, OverlayService.class);
+            intent.setAction(OverlayService.ACTION_SHOW_FLOATING_BUTTON);
             String accountName = prefs.getString(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, null);
             if (accountName != null) {
                 intent.putExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, accountName);
@@ -163,7 +320,12 @@ public class GameWatchService extends Service {
 
     private void handleGameStop() {
         hideGameNotification();
-        stopService(new Intent(this, FloatingButtonService.class));
+        if (OverlayService.isRunning) {
+            // 記録パネルを開いている場合はそのまま残し、フローティングボタンだけ隠す
+            Intent intent = new Intent(this, OverlayService.class);
+            intent.setAction(OverlayService.ACTION_HIDE_FLOATING_BUTTON);
+            startService(intent);
+        }
         Notification notification = createServiceNotification();
         startForeground(NOTIFICATION_ID, notification);
     }
@@ -178,6 +340,7 @@ public class GameWatchService extends Service {
         String accountName = prefs.getString(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, null);
 
         Intent overlayIntent = new Intent(this, OverlayService.class);
+        overlayIntent.setAction(OverlayService.ACTION_SHOW_PANEL);
         if (accountName != null) {
             overlayIntent.putExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, accountName);
         }
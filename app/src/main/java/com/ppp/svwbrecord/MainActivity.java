@@ -4,10 +4,13 @@ import android.Manifest;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.app.AppOpsManager;
+import android.content.ClipData;
+import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.database.SQLException;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -17,6 +20,7 @@ import android.util.Log;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -25,6 +29,7 @@ import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
@@ -37,19 +42,23 @@ import com.google.android.gms.common.api.ApiException;
 import com.google.android.gms.tasks.Task;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
 import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.SheetsScopes;
-import com.google.api.services.sheets.v4.model.ValueRange;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Date;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -58,18 +67,11 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     public static final String PREFS_NAME = "AppPrefs";
     public static final String KEY_USERNAME = "username";
-    public static final String KEY_PLAYER_NAMES_LIST = "player_names_list";
-    public static final String KEY_DECK_NAMES_LIST = "deck_names_list";
     public static final String KEY_DISPLAY_MODE = "display_mode";
     public static final String MODE_NOTIFICATION = "notification";
     public static final String MODE_FLOATING_BUTTON = "floating_button";
     public static final String KEY_SIGNED_IN_ACCOUNT_NAME = "signed_in_account_name";
 
-    public static final String KEY_DECK_SORT_ORDER_LIST = "deck_sort_order_list";
-
-    private static final String SHEET_NAME_FOR_SORTING = "デッキ別戦績";
-    private static final String SORTING_COLUMN = "A";
-
     private Spinner playerNameSpinner;
     private ArrayAdapter<String> playerNameAdapter;
     private List<String> playerNamesList = new ArrayList<>();
@@ -80,13 +82,21 @@ public class MainActivity extends AppCompatActivity {
     private TextView signedInStatusText;
 
     private Button forceStopButton;
+    private Button importHistoryButton;
+    private TextView importProgressText;
+    private Button exportHistoryButton;
+    private Button diagnosticsButton;
+
+    // エクスポート先の選択中に保持する条件
+    private MatchQuery pendingExportQuery;
+    private MatchHistoryExporter.Format pendingExportFormat;
+    private static final String EXPORT_ALL_DECKS = "すべて";
+    private static final String[] EXPORT_PERIOD_LABELS = {"全期間", "過去7日", "過去30日", "過去90日"};
+    private static final int[] EXPORT_PERIOD_DAYS = {0, 7, 30, 90};
 
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
     private static final String SPREADSHEET_ID = BuildConfig.SPREADSHEET_ID;
-    private static final String SHEET_NAME_FOR_LISTS = "デッキリスト一覧";
-    private static final String PLAYER_NAME_COLUMN = "C";
-    private static final String DECK_NAME_COLUMN = "A";
     protected static final String DEFAULT_PLAYER_PROMPT = "（プレイヤーを選択）";
 
     private GoogleSignInClient mGoogleSignInClient;
@@ -95,6 +105,7 @@ public class MainActivity extends AppCompatActivity {
     private ActivityResultLauncher<Intent> overlayPermissionLauncher;
     private ActivityResultLauncher<String> requestPermissionLauncher;
     private ActivityResultLauncher<Intent> userRecoverableAuthLauncher;
+    private ActivityResultLauncher<Intent> exportDocumentLauncher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -109,6 +120,10 @@ public class MainActivity extends AppCompatActivity {
         displayModeRadioGroup = findViewById(R.id.display_mode_radio_group);
         saveButton = findViewById(R.id.save_button);
         forceStopButton = findViewById(R.id.force_stop_button);
+        importHistoryButton = findViewById(R.id.import_history_button);
+        importProgressText = findViewById(R.id.import_progress_text);
+        exportHistoryButton = findViewById(R.id.export_history_button);
+        diagnosticsButton = findViewById(R.id.diagnostics_button);
 
         playerNamesList = new ArrayList<>();
         playerNameAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, playerNamesList);
@@ -170,7 +185,7 @@ public class MainActivity extends AppCompatActivity {
                     if (result.getResultCode() == Activity.RESULT_OK) {
                         // ユーザーが承認した場合、再度データ読み込みを試みる
                         Log.d(TAG, "User recovered from auth exception. Retrying to load data.");
-                        loadSpreadsheetData();
+                        loadSpreadsheetData(true);
                     } else {
                         // ユーザーがキャンセルした場合
                         Log.w(TAG, "User did not recover from auth exception.");
@@ -179,8 +194,23 @@ public class MainActivity extends AppCompatActivity {
                 }
         );
 
+        exportDocumentLauncher = registerForActivityResult(
+                new ActivityResultContracts.StartActivityForResult(),
+                result -> {
+                    if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null
+                            && result.getData().getData() != null) {
+                        exportHistory(result.getData().getData());
+                    } else {
+                        Log.d(TAG, "Export cancelled.");
+                    }
+                }
+        );
+
         signInButton.setOnClickListener(v -> signIn());
         signOutButton.setOnClickListener(v -> signOut());
+        importHistoryButton.setOnClickListener(v -> importHistory());
+        exportHistoryButton.setOnClickListener(v -> showExportDialog());
+        diagnosticsButton.setOnClickListener(v -> showDiagnostics());
 
         loadSettings();
 
@@ -234,6 +264,11 @@ public class MainActivity extends AppCompatActivity {
                 credential.setSelectedAccount(account.getAccount());
                 updateUI(account);
                 loadSpreadsheetData();
+                // 未送信の記録があれば送信する
+                RecordPipeline.getInstance(this).requestSync();
+                // 他の端末から追加された記録があれば取り込む
+                RemoteHistorySync.getInstance(this).requestTailSync(
+                        getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_USERNAME, null), null);
             } else {
                  Log.w(TAG, "GoogleSignInAccount.getAccount() is null, cannot set credential. Attempting sign out.");
                  signOut();
@@ -245,6 +280,177 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 選択中のプレイヤーのシートから、まだ取り込んでいない記録を端末の対戦履歴に取り込む
+     */
+    private void importHistory() {
+        if (GoogleSignIn.getLastSignedInAccount(this) == null) {
+            Toast.makeText(this, "Googleアカウントでサインインしてください", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Object selected = playerNameSpinner.getSelectedItem();
+        if (selected == null || DEFAULT_PLAYER_PROMPT.equals(selected.toString())) {
+            Toast.makeText(this, "プレイヤーを選択してください", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String sheetName = selected.toString();
+        boolean started = RemoteHistorySync.getInstance(this).startImport(sheetName, new RemoteHistorySync.Listener() {
+            @Override
+            public void onProgress(String sheet, int importedRows, int nextRow) {
+                importProgressText.setText(sheet + ": " + (nextRow - 1) + "行目まで読み込み（" + importedRows + "件）");
+            }
+
+            @Override
+            public void onFinished(String sheet, int importedRows) {
+                importHistoryButton.setEnabled(true);
+                importProgressText.setText(sheet + ": 取り込み完了（新規 " + importedRows + "件）");
+            }
+
+            @Override
+            public void onFailed(String sheet, Exception cause) {
+                importHistoryButton.setEnabled(true);
+                importProgressText.setText(sheet + ": 取り込みを中断しました（次回は続きから再開します）");
+                Toast.makeText(MainActivity.this, "記録の取り込みエラー: " + cause.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
+        if (!started) {
+            Toast.makeText(this, "記録を取り込み中です", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        importHistoryButton.setEnabled(false);
+        importProgressText.setVisibility(View.VISIBLE);
+        importProgressText.setText(sheetName + ": 取り込みを開始しました");
+    }
+
+    /**
+     * エクスポートの形式と絞り込み条件を選ばせ、保存先の選択画面を開く。
+     * プレイヤーが選択されている場合はそのプレイヤーの記録だけを対象にする。
+     */
+    private void showExportDialog() {
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_export, null);
+        Spinner periodSpinner = dialogView.findViewById(R.id.export_period_spinner);
+        Spinner myDeckSpinner = dialogView.findViewById(R.id.export_my_deck_spinner);
+        Spinner opponentDeckSpinner = dialogView.findViewById(R.id.export_opponent_deck_spinner);
+        RadioButton jsonRadio = dialogView.findViewById(R.id.radio_export_json);
+
+        List<String> deckOptions = new ArrayList<>();
+        deckOptions.add(EXPORT_ALL_DECKS);
+        deckOptions.addAll(MasterCatalogRepository.getInstance(this).getSortedDeckNames());
+        periodSpinner.setAdapter(newDropDownAdapter(Arrays.asList(EXPORT_PERIOD_LABELS)));
+        myDeckSpinner.setAdapter(newDropDownAdapter(deckOptions));
+        opponentDeckSpinner.setAdapter(newDropDownAdapter(deckOptions));
+
+        new AlertDialog.Builder(this)
+                .setTitle("対戦履歴をエクスポート")
+                .setView(dialogView)
+                .setPositiveButton("保存先を選択", (dialog, which) -> {
+                    MatchQuery query = new MatchQuery();
+                    Object player = playerNameSpinner.getSelectedItem();
+                    if (player != null && !DEFAULT_PLAYER_PROMPT.equals(player.toString())) {
+                        query.sheetName(player.toString());
+                    }
+                    int days = EXPORT_PERIOD_DAYS[periodSpinner.getSelectedItemPosition()];
+                    if (days > 0) {
+                        long now = System.currentTimeMillis();
+                        query.recordedBetween(now - TimeUnit.DAYS.toMillis(days), Long.MAX_VALUE);
+                    }
+                    if (myDeckSpinner.getSelectedItemPosition() > 0) {
+                        query.myDeck(myDeckSpinner.getSelectedItem().toString());
+                    }
+                    if (opponentDeckSpinner.getSelectedItemPosition() > 0) {
+                        query.opponentDeck(opponentDeckSpinner.getSelectedItem().toString());
+                    }
+                    pendingExportQuery = query;
+                    pendingExportFormat = jsonRadio.isChecked()
+                            ? MatchHistoryExporter.Format.JSON : MatchHistoryExporter.Format.CSV;
+
+                    Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType(pendingExportFormat.getMimeType());
+                    intent.putExtra(Intent.EXTRA_TITLE, "svwb_history_"
+                            + new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date())
+                            + "." + pendingExportFormat.getExtension());
+                    exportDocumentLauncher.launch(intent);
+                })
+                .setNegativeButton("キャンセル", null)
+                .show();
+    }
+
+    private ArrayAdapter<String> newDropDownAdapter(List<String> items) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, items);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        return adapter;
+    }
+
+    /**
+     * 選択された保存先に、端末の対戦履歴を1件ずつ書き出す
+     */
+    private void exportHistory(Uri uri) {
+        final MatchQuery query = pendingExportQuery;
+        final MatchHistoryExporter.Format format = pendingExportFormat;
+        if (query == null || format == null) {
+            return;
+        }
+        pendingExportQuery = null;
+        pendingExportFormat = null;
+        exportHistoryButton.setEnabled(false);
+        executorService.execute(() -> {
+            long started = System.currentTimeMillis();
+            try (OutputStream stream = getContentResolver().openOutputStream(uri)) {
+                if (stream == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                long count = MatchHistoryExporter.export(
+                        MatchHistoryDatabase.getInstance(getApplicationContext()), query, writer, format);
+                Log.i(TAG, "Exported " + count + " record(s) in " + (System.currentTimeMillis() - started) + " ms.");
+                mainThreadHandler.post(() -> {
+                    exportHistoryButton.setEnabled(true);
+                    Toast.makeText(MainActivity.this, count + "件の記録をエクスポートしました", Toast.LENGTH_SHORT).show();
+                });
+            } catch (IOException | SQLException e) {
+                Log.e(TAG, "Failed to export match history.", e);
+                mainThreadHandler.post(() -> {
+                    exportHistoryButton.setEnabled(true);
+                    Toast.makeText(MainActivity.this, "エクスポートに失敗しました: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+            }
+        });
+    }
+
+    /**
+     * 記録処理の所要時間・再試行回数・送信待ちの件数を表示する。テキストはコピーして共有できる。
+     */
+    private void showDiagnostics() {
+        RecordPipeline pipeline = RecordPipeline.getInstance(getApplicationContext());
+        executorService.execute(() -> {
+            String report = pipeline.dumpMetrics();
+            mainThreadHandler.post(() -> {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                View dialogView = getLayoutInflater().inflate(R.layout.dialog_diagnostics, null);
+                TextView reportText = dialogView.findViewById(R.id.diagnostics_report_text);
+                reportText.setText(report);
+                new AlertDialog.Builder(this)
+                        .setTitle("記録処理の診断情報")
+                        .setView(dialogView)
+                        .setPositiveButton("コピー", (dialog, which) -> {
+                            ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+                            if (clipboard != null) {
+                                clipboard.setPrimaryClip(ClipData.newPlainText("svwbrecord diagnostics", report));
+                            }
+                        })
+                        .setNeutralButton("リセット", (dialog, which) -> {
+                            pipeline.getMetrics().reset(System.currentTimeMillis());
+                            Toast.makeText(this, "計測値をリセットしました", Toast.LENGTH_SHORT).show();
+                        })
+                        .setNegativeButton("閉じる", null)
+                        .show();
+            });
+        });
+    }
+
     private void signIn() {
         Log.d(TAG, "Attempting to sign in.");
         Intent signInIntent = mGoogleSignInClient.getSignInIntent();
@@ -287,11 +493,25 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadSpreadsheetData() {
+        loadSpreadsheetData(false);
+    }
+
+    /**
+     * マスターデータを読み込む。前回の取得から TTL が経過していない場合は通信しない。
+     * @param forceRefresh TTL に関係なく再取得する場合は true
+     */
+    private void loadSpreadsheetData(boolean forceRefresh) {
         if (credential.getSelectedAccountName() == null && credential.getSelectedAccount() == null) {
             Log.w(TAG, "Not signed in or credential account not set. Cannot load spreadsheet data.");
             return;
         }
 
+        final MasterCatalogRepository catalogRepository = MasterCatalogRepository.getInstance(this);
+        if (!forceRefresh && !catalogRepository.isRefreshDue(System.currentTimeMillis())) {
+            Log.d(TAG, "Master data is still fresh. Skipping refresh.");
+            return;
+        }
+
         Log.d(TAG, "Attempting to load spreadsheet data with OAuth...");
 
         if (SPREADSHEET_ID.isEmpty() || SPREADSHEET_ID.equals("YOUR_SPREADSHEET_ID")) {
@@ -302,34 +522,22 @@ public class MainActivity extends AppCompatActivity {
 
         executorService.execute(() -> {
             try {
-                HttpTransport httpTransport = new NetHttpTransport(); // MODIFIED HERE
-                Sheets sheetsService = new Sheets.Builder(httpTransport, GsonFactory.getDefaultInstance(), credential)
-                        .setApplicationName(getApplicationInfo().loadLabel(getPackageManager()).toString())
-                        .build();
+                Sheets sheetsService = SheetsClientHolder.getInstance(getApplicationContext())
+                        .getSheets(credential.getSelectedAccountName(), RateLimiter.Lane.BACKGROUND);
 
-                Log.d(TAG, "Fetching player names...");
-                List<String> fetchedPlayerNames = fetchSpreadsheetColumn(sheetsService, SPREADSHEET_ID, SHEET_NAME_FOR_LISTS, PLAYER_NAME_COLUMN);
-                Log.d(TAG, "Fetching deck names...");
-                List<String> fetchedDeckNames = fetchSpreadsheetColumn(sheetsService, SPREADSHEET_ID, SHEET_NAME_FOR_LISTS, DECK_NAME_COLUMN);
+                Log.d(TAG, "Fetching master data with a single batchGet...");
+                MasterCatalog catalog = new MasterCatalogLoader(sheetsService, SPREADSHEET_ID).load();
+                Log.d(TAG, "Spreadsheet data fetched. Player names count: " + catalog.getPlayerNames().size() +
+                        ", Deck names count: " + catalog.getDeckNames().size());
 
-                List<String> fetchedSortOrder = fetchSpreadsheetColumn(sheetsService, SPREADSHEET_ID, SHEET_NAME_FOR_SORTING, SORTING_COLUMN);
+                // 内容が前回と同じなら保存も画面の更新もしない
+                if (!catalogRepository.applyFetched(catalog, System.currentTimeMillis())) {
+                    return;
+                }
 
                 mainThreadHandler.post(() -> {
-                    Log.d(TAG, "Spreadsheet data fetched. Player names count: " + (fetchedPlayerNames != null ? fetchedPlayerNames.size() : 0) +
-                            ", Deck names count: " + (fetchedDeckNames != null ? fetchedDeckNames.size() : 0));
-                    if (fetchedPlayerNames != null) {
-                        savePlayerNamesToPrefs(fetchedPlayerNames);
-                        updatePlayerNameSpinnerAndSelection(fetchedPlayerNames);
-                    }
-                    if (fetchedDeckNames != null) {
-                        saveDeckNamesToPrefs(fetchedDeckNames);
-                    }
-                    if (fetchedSortOrder != null) {
-                        saveDeckSortOrderToPrefs(fetchedSortOrder);
-                    }
-                    if (fetchedPlayerNames != null || fetchedDeckNames != null) {
-                        Toast.makeText(MainActivity.this, "スプレッドシートからデータを更新しました", Toast.LENGTH_SHORT).show();
-                    }
+                    updatePlayerNameSpinnerAndSelection(catalog.getPlayerNames());
+                    Toast.makeText(MainActivity.this, "スプレッドシートからデータを更新しました", Toast.LENGTH_SHORT).show();
                 });
 
             } catch (Exception e) {
@@ -346,61 +554,15 @@ public class MainActivity extends AppCompatActivity {
             }
         });
     }
-    private void saveDeckSortOrderToPrefs(List<String> sortOrder) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        // Listは直接保存できないため、カンマ区切りの文字列に変換して保存
-        String sortOrderString = String.join(",", sortOrder);
-        prefs.edit().putString(KEY_DECK_SORT_ORDER_LIST, sortOrderString).apply();
-        Log.d(TAG, "Deck sort order saved to SharedPreferences.");
-    }
-    private List<String> fetchSpreadsheetColumn(Sheets sheetsService, String spreadsheetId, String sheetName, String columnName) throws IOException {
-        Log.d(TAG, "fetchSpreadsheetColumn (OAuth): sheet=" + sheetName + ", col=" + columnName);
-        String range = sheetName + "!" + columnName + "1:" + columnName;
-        Log.d(TAG, "Fetching range: " + range);
-
-        ValueRange response = sheetsService.spreadsheets().values()
-                .get(spreadsheetId, range)
-                .execute();
-
-        List<List<Object>> values = response.getValues();
-        List<String> columnData = new ArrayList<>();
-        if (values != null) {
-            for (List<Object> row : values) {
-                if (row != null && !row.isEmpty() && row.get(0) != null && !row.get(0).toString().trim().isEmpty()) {
-                    columnData.add(row.get(0).toString().trim());
-                }
-            }
-        }
-        Log.d(TAG, "Fetched " + columnData.size() + " items for " + columnName + " from " + sheetName);
-        return columnData;
-    }
-
-    private void savePlayerNamesToPrefs(List<String> playerNames) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putStringSet(KEY_PLAYER_NAMES_LIST, new HashSet<>(playerNames));
-        editor.apply();
-        Log.d(TAG, "Player names saved to SharedPreferences.");
-    }
-
-    private void saveDeckNamesToPrefs(List<String> deckNames) {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putStringSet(KEY_DECK_NAMES_LIST, new HashSet<>(deckNames));
-        editor.apply();
-        Log.d(TAG, "Deck names saved to SharedPreferences.");
-    }
 
     private List<String> loadPlayerNamesFromPrefs() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        Set<String> playerNamesSet = prefs.getStringSet(KEY_PLAYER_NAMES_LIST, new HashSet<>());
-        List<String> loadedPlayerNames = new ArrayList<>(playerNamesSet);
+        List<String> loadedPlayerNames = new ArrayList<>(MasterCatalogRepository.getInstance(this).getPlayerNames());
         if (!loadedPlayerNames.contains(DEFAULT_PLAYER_PROMPT) && !loadedPlayerNames.isEmpty()) {
             loadedPlayerNames.add(0,DEFAULT_PLAYER_PROMPT);
         } else if (loadedPlayerNames.isEmpty()){
             loadedPlayerNames.add(DEFAULT_PLAYER_PROMPT);
         }
-        Log.d(TAG, "Player names loaded from SharedPreferences: " + loadedPlayerNames.size() + " items");
+        Log.d(TAG, "Player names loaded from catalog store: " + loadedPlayerNames.size() + " items");
         return loadedPlayerNames;
     }
 
@@ -515,7 +677,7 @@ public class MainActivity extends AppCompatActivity {
             if (account != null && account.getAccount() != null) {
                 credential.setSelectedAccount(account.getAccount());
                 updateUI(account);
-                loadSpreadsheetData();
+                loadSpreadsheetData(true);
             } else {
                  Log.w(TAG, "signInResult:success but GoogleSignInAccount or its internal account is null.");
                  updateUI(null);
@@ -0,0 +1,77 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.BatchGetValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * マスターデータの全ての列を1回の batchGet で読み込み、{@link MasterCatalog} にまとめる。
+ * 相手ランクの一覧はスプレッドシートにないので、既定値（MasterCatalog.DEFAULT_OPPONENT_RANKS）を使う。
+ */
+public class MasterCatalogLoader {
+
+    static final String SHEET_NAME_FOR_LISTS = "デッキリスト一覧";
+    static final String SHEET_NAME_FOR_SORTING = "デッキ別戦績";
+    static final String PLAYER_NAME_COLUMN = "C";
+    static final String DECK_NAME_COLUMN = "A";
+    static final String SORTING_COLUMN = "A";
+
+    // batchGet のレスポンスはこの順番で返る
+    static final List<String> RANGES = Arrays.asList(
+            columnRange(SHEET_NAME_FOR_LISTS, PLAYER_NAME_COLUMN),
+            columnRange(SHEET_NAME_FOR_LISTS, DECK_NAME_COLUMN),
+            columnRange(SHEET_NAME_FOR_SORTING, SORTING_COLUMN));
+
+    private final Sheets sheetsService;
+    private final String spreadsheetId;
+
+    public MasterCatalogLoader(Sheets sheetsService, String spreadsheetId) {
+        this.sheetsService = sheetsService;
+        this.spreadsheetId = spreadsheetId;
+    }
+
+    public MasterCatalog load() throws IOException {
+        BatchGetValuesResponse response = sheetsService.spreadsheets().values()
+                .batchGet(spreadsheetId)
+                .setRanges(RANGES)
+                .setMajorDimension("COLUMNS")
+                .setFields("valueRanges/values")
+                .execute();
+
+        List<ValueRange> valueRanges = response.getValueRanges();
+        return new MasterCatalog(
+                parseColumn(valueRanges, 0),
+                parseColumn(valueRanges, 1),
+                parseColumn(valueRanges, 2),
+                null);
+    }
+
+    /**
+     * 列方向で取得した範囲から、空白を除いた値の一覧を取り出す
+     */
+    static List<String> parseColumn(List<ValueRange> valueRanges, int index) {
+        List<String> columnData = new ArrayList<>();
+        if (valueRanges == null || valueRanges.size() <= index) {
+            return columnData;
+        }
+        List<List<Object>> values = valueRanges.get(index).getValues();
+        if (values == null || values.isEmpty() || values.get(0) == null) {
+            return columnData;
+        }
+        for (Object cell : values.get(0)) {
+            if (cell != null && !cell.toString().trim().isEmpty()) {
+                columnData.add(cell.toString().trim());
+            }
+        }
+        return columnData;
+    }
+
+    private static String columnRange(String sheetName, String column) {
+        return sheetName + "!" + column + "1:" + column;
+    }
+}
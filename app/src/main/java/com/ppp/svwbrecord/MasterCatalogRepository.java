@@ -0,0 +1,202 @@
+package com.ppp.svwbrecord;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 端末に保存したマスターデータの管理。
+ * 内容は {@link CatalogStore} の専用ファイルに、取得時刻とバージョン（内容のハッシュ）と一緒に保存し、
+ * TTL が切れるまでは再取得しない。再取得した内容が前回と同じ場合は一覧を書き換えない。
+ */
+public class MasterCatalogRepository {
+
+    private static final String TAG = "MasterCatalogRepository";
+
+    private static final String STORE_FILE_NAME = "master_catalog.bin";
+
+    // TTL はこのキーで上書きできる（ミリ秒）
+    public static final String KEY_CATALOG_TTL_MS = "catalog_ttl_ms";
+    public static final long DEFAULT_CATALOG_TTL_MS = 6 * 60 * 60 * 1000L; // 6時間
+
+    // 以前 AppPrefs に保存していたキー。初回読み込み時に CatalogStore へ移行して削除する
+    private static final String LEGACY_KEY_PLAYER_NAMES_LIST = "player_names_list";
+    private static final String LEGACY_KEY_DECK_NAMES_LIST = "deck_names_list";
+    private static final String LEGACY_KEY_DECK_SORT_ORDER_LIST = "deck_sort_order_list";
+    private static final String LEGACY_KEY_OPPONENT_RANKS_LIST = "opponent_ranks_list";
+    private static final String LEGACY_KEY_CATALOG_VERSION = "catalog_version";
+    private static final String LEGACY_KEY_CATALOG_FETCHED_AT = "catalog_fetched_at";
+
+    private static MasterCatalogRepository instance;
+
+    private final Context appContext;
+    private final CatalogStore store;
+
+    // 読み込み済みの内容と、そこから作った名前の一覧。保存し直すまで使い回す
+    private CatalogStore.Snapshot snapshot;
+    private List<String> playerNames;
+    private List<String> sortedDeckNames;
+    private List<String> opponentRanks;
+
+    public static synchronized MasterCatalogRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new MasterCatalogRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MasterCatalogRepository(Context appContext) {
+        this.appContext = appContext;
+        this.store = new CatalogStore(new File(appContext.getFilesDir(), STORE_FILE_NAME));
+    }
+
+    /**
+     * 前回の取得から TTL が経過していれば true
+     */
+    public synchronized boolean isRefreshDue(long nowMillis) {
+        long fetchedAt = getSnapshot().getFetchedAtMillis();
+        long ttl = appContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(KEY_CATALOG_TTL_MS, DEFAULT_CATALOG_TTL_MS);
+        return fetchedAt <= 0 || nowMillis - fetchedAt >= ttl || nowMillis < fetchedAt;
+    }
+
+    /**
+     * 取得したマスターデータを反映する。
+     * @return 内容が変わって保存し直した場合は true、前回と同じ場合は false
+     */
+    public synchronized boolean applyFetched(MasterCatalog catalog, long nowMillis) throws IOException {
+        CatalogStore.Snapshot current = getSnapshot();
+        if (store.exists() && current.getCatalogVersion() == catalog.getVersion()) {
+            // 内容は同じなので取得時刻だけ更新する
+            store.updateFetchedAt(nowMillis);
+            snapshot = current.withFetchedAt(nowMillis);
+            Log.d(TAG, "Catalog unchanged (version " + Long.toHexString(catalog.getVersion()) + ").");
+            return false;
+        }
+
+        save(catalog, nowMillis);
+        Log.d(TAG, "Catalog saved (version " + Long.toHexString(catalog.getVersion()) + ").");
+        return true;
+    }
+
+    /**
+     * スプレッドシートの並び順のプレイヤー名一覧
+     */
+    public synchronized List<String> getPlayerNames() {
+        getSnapshot();
+        return playerNames;
+    }
+
+    /**
+     * 並び順に従って並べ替えたデッキ一覧を返す。
+     * 並べ替えは保存時に済ませてあるので、読み込み時には並べ替えない。
+     */
+    public synchronized List<String> getSortedDeckNames() {
+        getSnapshot();
+        return sortedDeckNames;
+    }
+
+    /**
+     * 相手ランクの一覧（上位ランクから順に）。未取得の場合は既定値
+     */
+    public synchronized List<String> getOpponentRanks() {
+        getSnapshot();
+        return opponentRanks;
+    }
+
+    /**
+     * 端末に保存されているマスターデータのバージョン。未取得の場合は 0。
+     * メインスレッドから呼ばれるため、一覧をまだ読み込んでいなければファイルのヘッダーだけを読む。
+     */
+    public synchronized long getSavedVersion() {
+        if (snapshot != null) {
+            return snapshot.getCatalogVersion();
+        }
+        if (!store.exists()) {
+            // 旧形式からの移行が必要な場合は一覧ごと読み込む
+            return getSnapshot().getCatalogVersion();
+        }
+        return store.readCatalogVersion();
+    }
+
+    private CatalogStore.Snapshot getSnapshot() {
+        if (snapshot == null) {
+            if (!store.exists()) {
+                migrateLegacyPrefs();
+            }
+            CatalogStore.Snapshot loaded;
+            try {
+                loaded = store.read();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read catalog store. Treating it as empty.", e);
+                loaded = CatalogStore.Snapshot.EMPTY;
+            }
+            setSnapshot(loaded);
+        }
+        return snapshot;
+    }
+
+    private void save(MasterCatalog catalog, long fetchedAtMillis) throws IOException {
+        // 並べ替えは保存時に1回だけ行う
+        List<String> sortOrder = catalog.getDeckSortOrder();
+        if (sortOrder.isEmpty()) {
+            Log.w(TAG, "Custom sort order not found. Sorting alphabetically as a fallback.");
+        }
+        List<String> sorted = DeckOrdering.compile(sortOrder).sort(catalog.getDeckNames());
+        setSnapshot(store.write(catalog, sorted, fetchedAtMillis));
+    }
+
+    private void setSnapshot(CatalogStore.Snapshot loaded) {
+        snapshot = loaded;
+        playerNames = CatalogStore.Snapshot.namesOf(loaded.getPlayers());
+        sortedDeckNames = CatalogStore.Snapshot.namesOf(loaded.getDecks());
+        opponentRanks = loaded.getOpponentRanks().isEmpty()
+                ? MasterCatalog.DEFAULT_OPPONENT_RANKS
+                : CatalogStore.Snapshot.namesOf(loaded.getOpponentRanks());
+    }
+
+    /**
+     * AppPrefs に保存されていた旧形式の一覧を CatalogStore に移す。
+     * 旧形式では順序が失われているため、取得時刻は 0 として次回の読み込みで再取得させる。
+     */
+    private void migrateLegacyPrefs() {
+        SharedPreferences prefs = appContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(LEGACY_KEY_DECK_NAMES_LIST) && !prefs.contains(LEGACY_KEY_PLAYER_NAMES_LIST)) {
+            return;
+        }
+
+        List<String> players = new ArrayList<>(prefs.getStringSet(LEGACY_KEY_PLAYER_NAMES_LIST, new HashSet<>()));
+        Collections.sort(players);
+        List<String> decks = new ArrayList<>(prefs.getStringSet(LEGACY_KEY_DECK_NAMES_LIST, new HashSet<>()));
+        String sortOrderString = prefs.getString(LEGACY_KEY_DECK_SORT_ORDER_LIST, "");
+        List<String> sortOrder = sortOrderString.isEmpty()
+                ? Collections.<String>emptyList() : Arrays.asList(sortOrderString.split(","));
+        String ranksString = prefs.getString(LEGACY_KEY_OPPONENT_RANKS_LIST, "");
+        List<String> ranks = ranksString.isEmpty()
+                ? Collections.<String>emptyList() : Arrays.asList(ranksString.split("\n"));
+
+        try {
+            save(new MasterCatalog(players, decks, sortOrder, ranks), 0);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to migrate catalog from preferences.", e);
+            return;
+        }
+        prefs.edit()
+                .remove(LEGACY_KEY_PLAYER_NAMES_LIST)
+                .remove(LEGACY_KEY_DECK_NAMES_LIST)
+                .remove(LEGACY_KEY_DECK_SORT_ORDER_LIST)
+                .remove(LEGACY_KEY_OPPONENT_RANKS_LIST)
+                .remove(LEGACY_KEY_CATALOG_VERSION)
+                .remove(LEGACY_KEY_CATALOG_FETCHED_AT)
+                .apply();
+        Log.i(TAG, "Migrated catalog from preferences (" + players.size() + " players, " + decks.size() + " decks).");
+    }
+}
@@ -0,0 +1,261 @@
+package com.ppp.svwbrecord;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 端末に保存する対戦履歴。
+ * スプレッドシートに送る記録をすべてここにも保存し、通信なしで絞り込み検索できるようにする。
+ * 検索に使う列にはそれぞれ記録日時と組み合わせたインデックスを張ってある。
+ * スプレッドシートから取り込んだ位置（次に読み込む行番号）もシートごとにここに保存する。
+ */
+public class MatchHistoryDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "match_history.db";
+    private static final int DATABASE_VERSION = 2;
+
+    static final String TABLE_MATCHES = "matches";
+    static final String COLUMN_ID = "_id";
+    static final String COLUMN_OUTBOX_ID = "outbox_id";
+    static final String COLUMN_SHEET_NAME = "sheet_name";
+    static final String COLUMN_RECORDED_AT = "recorded_at";
+    static final String COLUMN_DATE = "record_date";
+    static final String COLUMN_OPPONENT_RANK = "opponent_rank";
+    static final String COLUMN_MY_DECK = "my_deck";
+    static final String COLUMN_TURN = "turn";
+    static final String COLUMN_OPPONENT_DECK = "opponent_deck";
+    static final String COLUMN_RESULT = "result";
+    static final String COLUMN_REMOTE_ROW = "remote_row";
+
+    static final String TABLE_SHEET_CURSORS = "sheet_cursors";
+    static final String COLUMN_NEXT_ROW = "next_row";
+    static final String COLUMN_UPDATED_AT = "updated_at";
+
+    private static final String[] ALL_COLUMNS = {
+            COLUMN_ID, COLUMN_OUTBOX_ID, COLUMN_SHEET_NAME, COLUMN_RECORDED_AT, COLUMN_DATE,
+            COLUMN_OPPONENT_RANK, COLUMN_MY_DECK, COLUMN_TURN, COLUMN_OPPONENT_DECK, COLUMN_RESULT,
+            COLUMN_REMOTE_ROW
+    };
+
+    private static MatchHistoryDatabase instance;
+
+    public static synchronized MatchHistoryDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new MatchHistoryDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MatchHistoryDatabase(Context appContext) {
+        super(appContext, DATABASE_NAME, null, DATABASE_VERSION);
+        // 書き込み中も読み込みをブロックしない
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // outbox_id と remote_row は不明な場合 NULL（UNIQUE 制約の対象外）
+        db.execSQL("CREATE TABLE " + TABLE_MATCHES + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_OUTBOX_ID + " INTEGER UNIQUE, "
+                + COLUMN_SHEET_NAME + " TEXT NOT NULL, "
+                + COLUMN_RECORDED_AT + " INTEGER NOT NULL, "
+                + COLUMN_DATE + " TEXT NOT NULL, "
+                + COLUMN_OPPONENT_RANK + " TEXT NOT NULL, "
+                + COLUMN_MY_DECK + " TEXT NOT NULL, "
+                + COLUMN_TURN + " TEXT NOT NULL, "
+                + COLUMN_OPPONENT_DECK + " TEXT NOT NULL, "
+                + COLUMN_RESULT + " TEXT NOT NULL, "
+                + COLUMN_REMOTE_ROW + " INTEGER, "
+                + "UNIQUE (" + COLUMN_SHEET_NAME + ", " + COLUMN_REMOTE_ROW + "))");
+        createIndex(db, "idx_matches_recorded_at", COLUMN_RECORDED_AT);
+        createIndex(db, "idx_matches_sheet", COLUMN_SHEET_NAME, COLUMN_RECORDED_AT);
+        createIndex(db, "idx_matches_my_deck", COLUMN_MY_DECK, COLUMN_RECORDED_AT);
+        createIndex(db, "idx_matches_opponent_deck", COLUMN_OPPONENT_DECK, COLUMN_RECORDED_AT);
+        createIndex(db, "idx_matches_opponent_rank", COLUMN_OPPONENT_RANK, COLUMN_RECORDED_AT);
+        createIndex(db, "idx_matches_turn", COLUMN_TURN, COLUMN_RECORDED_AT);
+        createSheetCursorsTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createSheetCursorsTable(db);
+        }
+    }
+
+    private static void createSheetCursorsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SHEET_CURSORS + " ("
+                + COLUMN_SHEET_NAME + " TEXT PRIMARY KEY, "
+                + COLUMN_NEXT_ROW + " INTEGER NOT NULL, "
+                + COLUMN_UPDATED_AT + " INTEGER NOT NULL)");
+    }
+
+    private static void createIndex(SQLiteDatabase db, String name, String... columns) {
+        db.execSQL("CREATE INDEX " + name + " ON " + TABLE_MATCHES + " (" + String.join(", ", columns) + ")");
+    }
+
+    /**
+     * 記録を追加する。同じ送信待ちキュー ID、または同じシートの同じ行の記録が既にある場合は追加しない。
+     * @return 追加した記録の ID。追加しなかった場合は -1
+     */
+    public long insert(MatchRecord record) {
+        return getWritableDatabase().insertWithOnConflict(
+                TABLE_MATCHES, null, toContentValues(record), SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * 送信済みの記録にスプレッドシート上の行番号を設定する。既に設定済みの場合は変更しない。
+     */
+    public void setRemoteRow(long outboxId, int remoteRow) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_REMOTE_ROW, remoteRow);
+        getWritableDatabase().updateWithOnConflict(TABLE_MATCHES, values,
+                COLUMN_OUTBOX_ID + " = ? AND " + COLUMN_REMOTE_ROW + " IS NULL",
+                new String[] {String.valueOf(outboxId)}, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    /**
+     * 指定したシートを一度でも取り込んだことがあるか
+     */
+    public boolean hasImportCursor(String sheetName) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_SHEET_CURSORS,
+                COLUMN_SHEET_NAME + " = ?", new String[] {sheetName}) > 0;
+    }
+
+    /**
+     * スプレッドシートの次に読み込む行番号。まだ取り込んでいないシートは記録の開始行
+     */
+    public int getImportCursor(String sheetName) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SHEET_CURSORS, new String[] {COLUMN_NEXT_ROW},
+                COLUMN_SHEET_NAME + " = ?", new String[] {sheetName}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : SheetsApiRowWriter.FIRST_DATA_ROW;
+        }
+    }
+
+    /**
+     * スプレッドシートから読み込んだ記録と次に読み込む行番号を1つのトランザクションで保存する。
+     * 同じシートの同じ行の記録が既にある場合は追加しない。
+     * この端末から送信したが行番号がまだ分からない記録と内容が一致する場合は、新しく追加せずにその記録に行番号を設定する。
+     * @return 新しく追加した記録
+     */
+    public List<MatchRecord> commitImportedWindow(String sheetName, List<MatchRecord> records, int nextRow) {
+        SQLiteDatabase db = getWritableDatabase();
+        List<MatchRecord> inserted = new ArrayList<>();
+        db.beginTransaction();
+        try (SQLiteStatement exists = db.compileStatement("SELECT COUNT(*) FROM " + TABLE_MATCHES
+                     + " WHERE " + COLUMN_SHEET_NAME + " = ? AND " + COLUMN_REMOTE_ROW + " = ?");
+             SQLiteStatement claim = db.compileStatement("UPDATE " + TABLE_MATCHES
+                     + " SET " + COLUMN_REMOTE_ROW + " = ? WHERE " + COLUMN_ID + " = (SELECT " + COLUMN_ID
+                     + " FROM " + TABLE_MATCHES + " WHERE " + COLUMN_OUTBOX_ID + " IS NOT NULL AND "
+                     + COLUMN_REMOTE_ROW + " IS NULL AND " + COLUMN_SHEET_NAME + " = ? AND "
+                     + COLUMN_DATE + " = ? AND " + COLUMN_OPPONENT_RANK + " = ? AND " + COLUMN_MY_DECK + " = ? AND "
+                     + COLUMN_TURN + " = ? AND " + COLUMN_OPPONENT_DECK + " = ? AND " + COLUMN_RESULT + " = ?"
+                     + " ORDER BY " + COLUMN_ID + " LIMIT 1)")) {
+            for (MatchRecord record : records) {
+                exists.bindString(1, sheetName);
+                exists.bindLong(2, record.getRemoteRow());
+                if (exists.simpleQueryForLong() > 0) {
+                    continue;
+                }
+                claim.bindLong(1, record.getRemoteRow());
+                claim.bindString(2, sheetName);
+                claim.bindString(3, record.getDate());
+                claim.bindString(4, record.getOpponentRank());
+                claim.bindString(5, record.getMyDeck());
+                claim.bindString(6, record.getTurn());
+                claim.bindString(7, record.getOpponentDeck());
+                claim.bindString(8, record.getResult());
+                if (claim.executeUpdateDelete() > 0) {
+                    continue;
+                }
+                if (db.insertWithOnConflict(TABLE_MATCHES, null, toContentValues(record),
+                        SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    inserted.add(record);
+                }
+            }
+            ContentValues cursorValues = new ContentValues();
+            cursorValues.put(COLUMN_SHEET_NAME, sheetName);
+            cursorValues.put(COLUMN_NEXT_ROW, nextRow);
+            cursorValues.put(COLUMN_UPDATED_AT, System.currentTimeMillis());
+            db.insertWithOnConflict(TABLE_SHEET_CURSORS, null, cursorValues, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return inserted;
+    }
+
+    /**
+     * 条件に一致する記録を返す（既定では新しい順）
+     */
+    public List<MatchRecord> query(MatchQuery query) {
+        List<MatchRecord> records = new ArrayList<>();
+        forEach(query, records::add);
+        return records;
+    }
+
+    /**
+     * 条件に一致する記録を1件ずつ渡す。全件をメモリに載せずに走査する場合に使う。
+     */
+    public void forEach(MatchQuery query, Consumer<MatchRecord> consumer) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MATCHES, ALL_COLUMNS,
+                query.buildSelection(), query.buildSelectionArgs(),
+                null, null, query.buildOrderBy(), query.buildLimit())) {
+            while (cursor.moveToNext()) {
+                consumer.accept(fromCursor(cursor));
+            }
+        }
+    }
+
+    /**
+     * 条件に一致する記録の件数
+     */
+    public long count(MatchQuery query) {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_MATCHES,
+                query.buildSelection(), query.buildSelectionArgs());
+    }
+
+    private static ContentValues toContentValues(MatchRecord record) {
+        ContentValues values = new ContentValues();
+        if (record.getOutboxId() > 0) {
+            values.put(COLUMN_OUTBOX_ID, record.getOutboxId());
+        }
+        values.put(COLUMN_SHEET_NAME, record.getSheetName());
+        values.put(COLUMN_RECORDED_AT, record.getRecordedAtMillis());
+        values.put(COLUMN_DATE, record.getDate());
+        values.put(COLUMN_OPPONENT_RANK, record.getOpponentRank());
+        values.put(COLUMN_MY_DECK, record.getMyDeck());
+        values.put(COLUMN_TURN, record.getTurn());
+        values.put(COLUMN_OPPONENT_DECK, record.getOpponentDeck());
+        values.put(COLUMN_RESULT, record.getResult());
+        if (record.getRemoteRow() != MatchRecord.NO_REMOTE_ROW) {
+            values.put(COLUMN_REMOTE_ROW, record.getRemoteRow());
+        }
+        return values;
+    }
+
+    private static MatchRecord fromCursor(Cursor cursor) {
+        return new MatchRecord(
+                cursor.getLong(0),
+                cursor.isNull(1) ? 0 : cursor.getLong(1),
+                cursor.getString(2),
+                cursor.getLong(3),
+                cursor.getString(4),
+                cursor.getString(5),
+                cursor.getString(6),
+                cursor.getString(7),
+                cursor.getString(8),
+                cursor.getString(9),
+                cursor.isNull(10) ? MatchRecord.NO_REMOTE_ROW : cursor.getInt(10));
+    }
+}
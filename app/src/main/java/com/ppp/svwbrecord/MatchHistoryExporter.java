@@ -0,0 +1,177 @@
+package com.ppp.svwbrecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * 対戦履歴を CSV または JSON で書き出す。
+ * 記録は1件ずつ受け取ってそのまま書き込むので、履歴の件数に関係なくメモリ使用量は一定になる。
+ * 項目はスプレッドシートに書き込む行と同じ（日付、相手ランク、自分のデッキ、先攻/後攻、相手のデッキ、勝敗）。
+ */
+public class MatchHistoryExporter {
+
+    public enum Format {
+        /** 1行目に見出しを持つ CSV（RFC 4180）。表計算ソフトで文字化けしないよう先頭に BOM を付ける */
+        CSV("text/csv", "csv"),
+        /** 記録ごとのオブジェクトを並べた JSON 配列 */
+        JSON("application/json", "json");
+
+        private final String mimeType;
+        private final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    static final String[] CSV_HEADER = {"日付", "相手ランク", "自分のデッキ", "先攻/後攻", "相手のデッキ", "勝敗"};
+    static final String[] JSON_KEYS = {"date", "opponentRank", "myDeck", "turn", "opponentDeck", "result"};
+
+    private final Writer out;
+    private final Format format;
+    private long count = 0;
+
+    /**
+     * @param out 書き込み先。呼び出し側でバッファリングし、書き出し後に閉じること
+     */
+    public MatchHistoryExporter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * 条件に一致する記録を古い順にすべて書き出す。絞り込みはデータベースへの検索条件として渡す。
+     * @return 書き出した記録の件数
+     */
+    public static long export(MatchHistoryDatabase history, MatchQuery query, Writer out, Format format)
+            throws IOException {
+        MatchHistoryExporter exporter = new MatchHistoryExporter(out, format);
+        exporter.begin();
+        try {
+            history.forEach(query.oldestFirst(), record -> {
+                try {
+                    exporter.write(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        exporter.end();
+        return exporter.getCount();
+    }
+
+    public void begin() throws IOException {
+        if (format == Format.CSV) {
+            out.write('\uFEFF');
+            writeCsvLine(CSV_HEADER);
+        } else {
+            out.write('[');
+        }
+    }
+
+    public void write(MatchRecord record) throws IOException {
+        String[] values = {
+                record.getDate(), record.getOpponentRank(), record.getMyDeck(),
+                record.getTurn(), record.getOpponentDeck(), record.getResult()
+        };
+        if (format == Format.CSV) {
+            writeCsvLine(values);
+        } else {
+            writeJsonObject(values);
+        }
+        count++;
+    }
+
+    public void end() throws IOException {
+        if (format == Format.JSON) {
+            out.write(count == 0 ? "]\n" : "\n]\n");
+        }
+        out.flush();
+    }
+
+    /** {@link #write} で書き出した記録の件数 */
+    public long getCount() {
+        return count;
+    }
+
+    private void writeCsvLine(String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeCsvField(values[i]);
+        }
+        out.write("\r\n");
+    }
+
+    private void writeCsvField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    private void writeJsonObject(String[] values) throws IOException {
+        out.write(count == 0 ? "\n  {" : ",\n  {");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeJsonString(JSON_KEYS[i]);
+            out.write(':');
+            writeJsonString(values[i]);
+        }
+        out.write('}');
+    }
+
+    private void writeJsonString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
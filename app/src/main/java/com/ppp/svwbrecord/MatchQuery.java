@@ -0,0 +1,136 @@
+package com.ppp.svwbrecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 対戦履歴の検索条件。指定した条件はすべて AND で結合する。
+ * 各条件はインデックスのある列に対する一致・範囲条件になるようにしてある。
+ */
+public class MatchQuery {
+
+    private String sheetName;
+    private String myDeck;
+    private String opponentDeck;
+    private String opponentRank;
+    private String turn;
+    private String result;
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+    private int limit = 0;
+    private boolean newestFirst = true;
+
+    public MatchQuery sheetName(String sheetName) {
+        this.sheetName = sheetName;
+        return this;
+    }
+
+    public MatchQuery myDeck(String myDeck) {
+        this.myDeck = myDeck;
+        return this;
+    }
+
+    public MatchQuery opponentDeck(String opponentDeck) {
+        this.opponentDeck = opponentDeck;
+        return this;
+    }
+
+    public MatchQuery opponentRank(String opponentRank) {
+        this.opponentRank = opponentRank;
+        return this;
+    }
+
+    /** {@link MatchRecord#TURN_FIRST} または {@link MatchRecord#TURN_SECOND} */
+    public MatchQuery turn(String turn) {
+        this.turn = turn;
+        return this;
+    }
+
+    /** {@link MatchRecord#RESULT_WIN} または {@link MatchRecord#RESULT_LOSS} */
+    public MatchQuery result(String result) {
+        this.result = result;
+        return this;
+    }
+
+    /**
+     * 記録日時の範囲（開始を含み、終了を含まない）
+     */
+    public MatchQuery recordedBetween(long fromMillis, long toMillis) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+
+    /** 最大件数。0 の場合は制限しない */
+    public MatchQuery limit(int limit) {
+        this.limit = Math.max(0, limit);
+        return this;
+    }
+
+    public MatchQuery oldestFirst() {
+        this.newestFirst = false;
+        return this;
+    }
+
+    /**
+     * SQL の WHERE 句（"WHERE" は含まない）。条件がない場合は null
+     */
+    String buildSelection() {
+        StringBuilder sb = new StringBuilder();
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_SHEET_NAME, sheetName);
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_MY_DECK, myDeck);
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_OPPONENT_DECK, opponentDeck);
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_OPPONENT_RANK, opponentRank);
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_TURN, turn);
+        appendEquals(sb, MatchHistoryDatabase.COLUMN_RESULT, result);
+        if (fromMillis != Long.MIN_VALUE) {
+            appendCondition(sb, MatchHistoryDatabase.COLUMN_RECORDED_AT + " >= ?");
+        }
+        if (toMillis != Long.MAX_VALUE) {
+            appendCondition(sb, MatchHistoryDatabase.COLUMN_RECORDED_AT + " < ?");
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * {@link #buildSelection()} のプレースホルダに対応する値
+     */
+    String[] buildSelectionArgs() {
+        List<String> args = new ArrayList<>();
+        for (String value : new String[]{sheetName, myDeck, opponentDeck, opponentRank, turn, result}) {
+            if (value != null) {
+                args.add(value);
+            }
+        }
+        if (fromMillis != Long.MIN_VALUE) {
+            args.add(String.valueOf(fromMillis));
+        }
+        if (toMillis != Long.MAX_VALUE) {
+            args.add(String.valueOf(toMillis));
+        }
+        return args.toArray(new String[0]);
+    }
+
+    String buildOrderBy() {
+        String direction = newestFirst ? " DESC" : " ASC";
+        return MatchHistoryDatabase.COLUMN_RECORDED_AT + direction + ", " + MatchHistoryDatabase.COLUMN_ID + direction;
+    }
+
+    /** LIMIT 句の値。制限しない場合は null */
+    String buildLimit() {
+        return limit > 0 ? String.valueOf(limit) : null;
+    }
+
+    private static void appendEquals(StringBuilder sb, String column, String value) {
+        if (value != null) {
+            appendCondition(sb, column + " = ?");
+        }
+    }
+
+    private static void appendCondition(StringBuilder sb, String condition) {
+        if (sb.length() > 0) {
+            sb.append(" AND ");
+        }
+        sb.append(condition);
+    }
+}
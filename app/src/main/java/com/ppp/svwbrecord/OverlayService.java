@@ -1,5 +1,9 @@
 package com.ppp.svwbrecord;
 
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
@@ -17,50 +21,63 @@ import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.RadioGroup;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.core.app.NotificationCompat;
+
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
-import com.google.api.client.googleapis.extensions.android.gms.auth.UserRecoverableAuthIOException;
-import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport; // Ensure this is imported
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.SheetsScopes;
-import com.google.api.services.sheets.v4.model.ValueRange;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+/**
+ * ゲーム中に表示するフローティングボタンと記録パネルをまとめて保持するサービス。
+ * どちらのビューも一度だけ作成し、対戦ごとに表示/非表示を切り替える。
+ */
 public class OverlayService extends Service {
 
     private static final String TAG = "OverlayService";
 
+    public static final String ACTION_SHOW_PANEL = "com.ppp.svwbrecord.ACTION_SHOW_PANEL";
+    public static final String ACTION_SHOW_FLOATING_BUTTON = "com.ppp.svwbrecord.ACTION_SHOW_FLOATING_BUTTON";
+    public static final String ACTION_HIDE_FLOATING_BUTTON = "com.ppp.svwbrecord.ACTION_HIDE_FLOATING_BUTTON";
+
+    public static boolean isRunning = false;
+
+    private static final int OVERLAY_NOTIFICATION_ID = 3;
+    private static final String OVERLAY_CHANNEL_ID = "FloatingButtonChannel";
+
     public static final String KEY_LAST_USED_DECK = "last_used_deck";
     // 一時的な入力状態を保存するためのキー
     private static final String PREFS_DRAFT_NAME = "OverlayDraftPrefs";
-    private static final String KEY_DRAFT_MY_DECK_POS = "draft_my_deck_pos";
-    private static final String KEY_DRAFT_OPPONENT_DECK_POS = "draft_opponent_deck_pos";
+    // デッキは並び順が変わるため、位置ではなく名前で保存する
+    private static final String KEY_DRAFT_MY_DECK = "draft_my_deck";
+    private static final String KEY_DRAFT_OPPONENT_DECK = "draft_opponent_deck";
     private static final String KEY_DRAFT_OPPONENT_RANK_POS = "draft_opponent_rank_pos";
     private static final String KEY_DRAFT_TURN_ID = "draft_turn_id";
     private static final String KEY_DRAFT_WIN_LOSS_ID = "draft_win_loss_id";
 
-    private static final int MAX_RETRIES = 3;
-    private static final long IMMEDIATE_RETRY_DELAY_MS = 2000; // 2秒
-    private static final long DELAYED_RETRY_DELAY_MS = 3 * 60 * 1000; // 3分
+    private static final String RANK_PROMPT = "(ランク選択)";
+    private static final String OPPONENT_DECK_PROMPT = "（相手のデッキを選択）";
+    // 相手のデッキ一覧の先頭に並べる、最近よく対戦しているデッキの数
+    private static final int RECENT_OPPONENT_DECK_COUNT = 5;
 
     private WindowManager windowManager;
     private View overlayView;
+    private WindowManager.LayoutParams panelParams;
+    private FloatingButtonController floatingButton;
+    private boolean isForeground = false;
+    // 一覧を読み込んだときのマスターデータのバージョン
+    private long loadedCatalogVersion = -1;
 
     private Spinner myDeckSpinner;
     private Spinner opponentDeckSpinner;
@@ -69,6 +86,11 @@ public class OverlayService extends Service {
     private RadioGroup winLossRadioGroup;
 
     private Button recordButton;
+    private TextView matchupStatsText;
+    private DeckSearchController myDeckSearch;
+    private DeckSearchController opponentDeckSearch;
+    // 最後に依頼した戦績の読み込み。古い結果で表示を上書きしないために使う
+    private int matchupStatsRequestId = 0;
 
     private ArrayAdapter<String> myDeckAdapter;
     private ArrayAdapter<String> opponentDeckAdapter;
@@ -77,6 +99,9 @@ public class OverlayService extends Service {
     private List<String> myDeckNamesList = new ArrayList<>();
     private List<String> opponentDeckNamesList = new ArrayList<>();
     private List<String> opponentRankList = new ArrayList<>();
+    // マスターデータの並び順のデッキ一覧と、相手のデッキ一覧の先頭に並べているデッキ（メインスレッドでのみ操作する）
+    private List<String> catalogDeckNames = new ArrayList<>();
+    private List<String> recentOpponentDecks = new ArrayList<>();
 
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
@@ -89,12 +114,17 @@ public class OverlayService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        isRunning = true;
         Log.d(TAG, "onCreate called");
+        createNotificationChannel();
 
         credential = GoogleAccountCredential.usingOAuth2(
                 getApplicationContext(), Collections.singleton(SheetsScopes.SPREADSHEETS));
         Log.d(TAG, "GoogleAccountCredential initialized.");
 
+        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
+        floatingButton = new FloatingButtonController(this, windowManager, this::showPanel);
+
         myDeckAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, myDeckNamesList);
         myDeckAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
 
@@ -109,42 +139,132 @@ public class OverlayService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "onStartCommand called");
 
-        if (intent != null && intent.hasExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME)) {
-            signedInAccountName = intent.getStringExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME);
-            if (signedInAccountName != null && !signedInAccountName.isEmpty()) {
-                credential.setSelectedAccountName(signedInAccountName);
-                Log.d(TAG, "Using Google Account for Sheets API: " + signedInAccountName);
-            } else {
-                Log.e(TAG, "Signed-in account name from intent is null or empty.");
-                Toast.makeText(this, "認証アカウント情報がありません。", Toast.LENGTH_LONG).show();
+        if (!updateAccount(intent)) {
+            if (!isPanelShowing() && !floatingButton.isShowing()) {
                 stopSelf();
-                return START_NOT_STICKY;
             }
-        } else {
-            Log.e(TAG, "Intent or signed-in account name extra is missing.");
-            Toast.makeText(this, "認証情報がサービスに渡されませんでした。", Toast.LENGTH_LONG).show();
-            stopSelf();
             return START_NOT_STICKY;
         }
 
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_SHOW_FLOATING_BUTTON.equals(action)) {
+            if (!isPanelShowing()) {
+                showFloatingButton();
+            }
+        } else if (ACTION_HIDE_FLOATING_BUTTON.equals(action)) {
+            floatingButton.hide();
+            if (!isPanelShowing()) {
+                // ゲームから離れたので、ウィンドウを片付けてサービスを終了する
+                stopSelf();
+            }
+        } else {
+            showPanel();
+        }
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Intent で渡されたアカウント名を反映する。
+     * 渡されなかった場合は保持しているアカウント名をそのまま使う。
+     * @return 使用できるアカウントがある場合は true
+     */
+    private boolean updateAccount(Intent intent) {
+        if (intent != null && intent.hasExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME)) {
+            String accountName = intent.getStringExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME);
+            if (accountName != null && !accountName.isEmpty()) {
+                if (!accountName.equals(signedInAccountName)) {
+                    signedInAccountName = accountName;
+                    credential.setSelectedAccountName(signedInAccountName);
+                    Log.d(TAG, "Using Google Account for Sheets API: " + signedInAccountName);
+                }
+                return true;
+            }
+            Log.e(TAG, "Signed-in account name from intent is null or empty.");
+            Toast.makeText(this, "認証アカウント情報がありません。", Toast.LENGTH_LONG).show();
+            return false;
+        }
+        if (signedInAccountName != null) {
+            return true;
+        }
+        Log.e(TAG, "Intent or signed-in account name extra is missing.");
+        Toast.makeText(this, "認証情報がサービスに渡されませんでした。", Toast.LENGTH_LONG).show();
+        return false;
+    }
+
+    /**
+     * 記録パネルを表示する。ビューは初回だけ作成し、以降は変更のあったデータだけ反映して表示を切り替える。
+     */
+    private void showPanel() {
+        if (overlayView == null && !attachPanel()) {
+            if (!floatingButton.isShowing()) {
+                stopSelf();
+            }
+            return;
+        }
+        floatingButton.hide();
+        refreshPanelData();
+        updateMatchupStats();
+        // 他の端末から追加された記録があれば取り込み、対戦成績を更新する
+        SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        RemoteHistorySync.getInstance(this).requestTailSync(
+                prefs.getString(MainActivity.KEY_USERNAME, null), () -> {
+                    if (overlayView == null) return;
+                    updateMatchupStats();
+                    loadRecentOpponentDecks();
+                });
+        overlayView.setVisibility(View.VISIBLE);
+        Log.d(TAG, "Recording panel shown.");
+    }
+
+    /**
+     * 記録パネルを隠し、表示モードに応じてフローティングボタンか通知に戻す
+     */
+    private void hidePanel() {
         if (overlayView != null) {
-            Log.d(TAG, "OverlayView already exists.");
-            return START_NOT_STICKY;
+            myDeckSearch.clear();
+            opponentDeckSearch.clear();
+            overlayView.setVisibility(View.GONE);
+        }
+
+        SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        String displayMode = prefs.getString(MainActivity.KEY_DISPLAY_MODE, MainActivity.MODE_NOTIFICATION);
+        if (MainActivity.MODE_FLOATING_BUTTON.equals(displayMode)) {
+            Log.d(TAG, "Floating button mode detected. Showing floating button again.");
+            showFloatingButton();
+        } else {
+            Log.d(TAG, "Notification mode detected. Requesting GameWatchService to refresh UI state.");
+            // GameWatchServiceに通知の再表示を依頼する
+            Intent refreshIntent = new Intent(this, GameWatchService.class);
+            refreshIntent.setAction(GameWatchService.ACTION_REFRESH_UI);
+            startService(refreshIntent);
         }
+    }
+
+    private boolean isPanelShowing() {
+        return overlayView != null && overlayView.getVisibility() == View.VISIBLE;
+    }
 
+    private void showFloatingButton() {
+        if (!isForeground) {
+            startForeground(OVERLAY_NOTIFICATION_ID, createServiceNotification());
+            isForeground = true;
+        }
+        if (!floatingButton.show()) {
+            Log.e(TAG, "Failed to show floating button.");
+        }
+    }
+
+    private boolean attachPanel() {
         Log.d(TAG, "Creating new OverlayView");
-        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
         if (windowManager == null) {
             Log.e(TAG, "WindowManager is null");
-            stopSelf();
-            return START_NOT_STICKY;
+            return false;
         }
 
         overlayView = LayoutInflater.from(this).inflate(R.layout.overlay_layout, null);
         if (overlayView == null) {
             Log.e(TAG, "Failed to inflate overlay_layout.");
-            stopSelf();
-            return START_NOT_STICKY;
+            return false;
         }
 
         myDeckSpinner = overlayView.findViewById(R.id.my_deck_spinner);
@@ -153,10 +273,15 @@ public class OverlayService extends Service {
         turnRadioGroup = overlayView.findViewById(R.id.turn_radio_group);
         winLossRadioGroup = overlayView.findViewById(R.id.win_loss_radio_group);
         recordButton = overlayView.findViewById(R.id.record_button);
+        matchupStatsText = overlayView.findViewById(R.id.matchup_stats_text);
+        myDeckSearch = new DeckSearchController(overlayView.findViewById(R.id.my_deck_search),
+                overlayView.findViewById(R.id.my_deck_search_results), myDeckSpinner, this::setPanelFocusable);
+        opponentDeckSearch = new DeckSearchController(overlayView.findViewById(R.id.opponent_deck_search),
+                overlayView.findViewById(R.id.opponent_deck_search_results), opponentDeckSpinner, this::setPanelFocusable);
 
         setupUIElements();
 
-        WindowManager.LayoutParams params = new WindowManager.LayoutParams(
+        panelParams = new WindowManager.LayoutParams(
                 WindowManager.LayoutParams.WRAP_CONTENT,
                 WindowManager.LayoutParams.WRAP_CONTENT,
                 WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY,
@@ -165,16 +290,14 @@ public class OverlayService extends Service {
         );
 
         try {
-            windowManager.addView(overlayView, params);
+            windowManager.addView(overlayView, panelParams);
             Log.d(TAG, "OverlayView added.");
         } catch (Exception e) {
             Log.e(TAG, "Error adding overlayView: " + e.getMessage(), e);
-            overlayView = null; 
-            stopSelf();
-            return START_NOT_STICKY;
+            overlayView = null;
+            return false;
         }
 
-        Button recordButton = overlayView.findViewById(R.id.record_button);
         if (recordButton != null) {
             recordButton.setOnClickListener(v -> {
                 Log.d(TAG, "Record button clicked.");
@@ -189,21 +312,65 @@ public class OverlayService extends Service {
             closeButton.setOnClickListener(v -> {
                 Log.d(TAG, "Close button clicked.");
                 saveDraftState();
-                stopSelf();
+                hidePanel();
             });
         } else {
             Log.e(TAG, "Close button not found!");
         }
+        return true;
+    }
 
-        return START_NOT_STICKY;
+    /**
+     * 記録パネルがフォーカス（キーボード入力）を受け取れるかを切り替える。
+     * 受け取れる間は背後のゲームにキー入力が渡らないので、検索欄を使うときだけ有効にする。
+     */
+    private void setPanelFocusable(boolean focusable) {
+        if (overlayView == null || panelParams == null) return;
+        int flags = focusable
+                ? panelParams.flags & ~WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE
+                : panelParams.flags | WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE;
+        if (flags == panelParams.flags) return;
+        panelParams.flags = flags;
+        try {
+            windowManager.updateViewLayout(overlayView, panelParams);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Failed to update overlay focusability: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * マスターデータが更新されていればデッキ一覧とランク一覧を読み直す。
+     * 選択中の項目は名前で選び直す。
+     */
+    private void refreshPanelData() {
+        long catalogVersion = MasterCatalogRepository.getInstance(this).getSavedVersion();
+        if (catalogVersion != loadedCatalogVersion) {
+            Log.d(TAG, "Catalog version changed. Reloading lists.");
+            Object myDeck = myDeckSpinner.getSelectedItem();
+            Object opponentDeck = opponentDeckSpinner.getSelectedItem();
+            Object opponentRank = opponentRankSpinner.getSelectedItem();
+
+            loadDeckNames();
+            loadOpponentRanks();
+
+            reselect(myDeckSpinner, myDeckAdapter, myDeck, 0);
+            reselect(opponentDeckSpinner, opponentDeckAdapter, opponentDeck, 0);
+            reselect(opponentRankSpinner, opponentRankAdapter, opponentRank, opponentRankAdapter.getCount() - 1);
+        }
+        validateInputs();
+    }
+
+    private static void reselect(Spinner spinner, ArrayAdapter<String> adapter, Object selected, int fallback) {
+        int position = selected != null ? adapter.getPosition(selected.toString()) : -1;
+        spinner.setSelection(position >= 0 ? position : fallback);
     }
 
     private void saveDraftState() {
         SharedPreferences draftPrefs = getSharedPreferences(PREFS_DRAFT_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = draftPrefs.edit();
 
-        editor.putInt(KEY_DRAFT_MY_DECK_POS, myDeckSpinner.getSelectedItemPosition());
-        editor.putInt(KEY_DRAFT_OPPONENT_DECK_POS, opponentDeckSpinner.getSelectedItemPosition());
+        putSelectedDeck(editor, KEY_DRAFT_MY_DECK, myDeckSpinner);
+        putSelectedDeck(editor, KEY_DRAFT_OPPONENT_DECK, opponentDeckSpinner);
         editor.putInt(KEY_DRAFT_OPPONENT_RANK_POS, opponentRankSpinner.getSelectedItemPosition());
         editor.putInt(KEY_DRAFT_TURN_ID, turnRadioGroup.getCheckedRadioButtonId());
         editor.putInt(KEY_DRAFT_WIN_LOSS_ID, winLossRadioGroup.getCheckedRadioButtonId());
@@ -212,6 +379,14 @@ public class OverlayService extends Service {
         Log.d(TAG, "Draft state saved.");
     }
 
+    private static void putSelectedDeck(SharedPreferences.Editor editor, String key, Spinner spinner) {
+        if (spinner.getSelectedItemPosition() > 0) {
+            editor.putString(key, spinner.getSelectedItem().toString());
+        } else {
+            editor.remove(key);
+        }
+    }
+
     private void setupUIElements() {
         Log.d(TAG, "Setting up UI elements...");
         loadDeckNames();
@@ -250,6 +425,9 @@ public class OverlayService extends Service {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 validateInputs();
+                if (parent == myDeckSpinner || parent == opponentDeckSpinner) {
+                    updateMatchupStats();
+                }
             }
             @Override
             public void onNothingSelected(AdapterView<?> parent) {
@@ -262,6 +440,8 @@ public class OverlayService extends Service {
 
         // ★追加：初期状態をチェック
         validateInputs();
+        // 集計値を先に読み込んでおき、デッキを選んだときにすぐ表示できるようにする
+        loadRecentOpponentDecks();
         Log.d(TAG, "UI elements setup complete.");
     }
 
@@ -269,11 +449,13 @@ public class OverlayService extends Service {
         SharedPreferences draftPrefs = getSharedPreferences(PREFS_DRAFT_NAME, Context.MODE_PRIVATE);
 
         // 各スピナーの選択位置を復元
-        if (draftPrefs.contains(KEY_DRAFT_MY_DECK_POS)) {
-            myDeckSpinner.setSelection(draftPrefs.getInt(KEY_DRAFT_MY_DECK_POS, 0));
+        String draftMyDeck = draftPrefs.getString(KEY_DRAFT_MY_DECK, null);
+        if (draftMyDeck != null) {
+            reselect(myDeckSpinner, myDeckAdapter, draftMyDeck, myDeckSpinner.getSelectedItemPosition());
         }
-        if (draftPrefs.contains(KEY_DRAFT_OPPONENT_DECK_POS)) {
-            opponentDeckSpinner.setSelection(draftPrefs.getInt(KEY_DRAFT_OPPONENT_DECK_POS, 0));
+        String draftOpponentDeck = draftPrefs.getString(KEY_DRAFT_OPPONENT_DECK, null);
+        if (draftOpponentDeck != null) {
+            reselect(opponentDeckSpinner, opponentDeckAdapter, draftOpponentDeck, 0);
         }
         opponentRankSpinner.setSelection(draftPrefs.getInt(KEY_DRAFT_OPPONENT_RANK_POS, opponentRankAdapter.getCount() - 1));
 
@@ -299,74 +481,122 @@ public class OverlayService extends Service {
         recordButton.setEnabled(isTurnSelected && isWinLossSelected);
     }
 
-    private void loadDeckNames() {
-        Log.d(TAG, "--- Start Loading Deck Names ---");
-        SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
-
-        // ① 元となる全デッキリストを読み込む
-        Set<String> savedDeckNamesSet = prefs.getStringSet(MainActivity.KEY_DECK_NAMES_LIST, new HashSet<>());
-        List<String> loadedDeckNames = new ArrayList<>(savedDeckNamesSet);
-        Log.d(TAG, "Loaded " + loadedDeckNames.size() + " decks from master list.");
-
-        // ② 並び替えの基準となるリストを読み込む
-        String sortOrderString = prefs.getString(MainActivity.KEY_DECK_SORT_ORDER_LIST, "");
-
-        if (!sortOrderString.isEmpty()) {
-            List<String> sortOrderList = new ArrayList<>(Arrays.asList(sortOrderString.split(",")));
-            Log.d(TAG, "Found custom sort order list with " + sortOrderList.size() + " items.");
-            // デバッグ用に読み込んだ並び順リストの内容をログに出力
-            Log.d(TAG, "Sort Order List: " + sortOrderList.toString());
-
-            loadedDeckNames.sort((deck1, deck2) -> {
-                int index1 = sortOrderList.indexOf(deck1);
-                int index2 = sortOrderList.indexOf(deck2);
+    /**
+     * 選択中の自分のデッキと相手のデッキの対戦成績を、先攻/後攻別に表示する。
+     * 集計値は端末に保存されたものを使い、読み込みはバックグラウンドで行う。
+     */
+    private void updateMatchupStats() {
+        if (matchupStatsText == null) return;
 
-                // デバッグ用にどのデッキがどの位置にあるかログに出力
-                if (index1 == -1) {
-                    Log.w(TAG, "Deck not found in sort list (will be at end): '" + deck1 + "'");
-                }
-                if (index2 == -1) {
-                    Log.w(TAG, "Deck not found in sort list (will be at end): '" + deck2 + "'");
-                }
+        final int requestId = ++matchupStatsRequestId;
+        if (myDeckSpinner.getSelectedItemPosition() <= 0 || opponentDeckSpinner.getSelectedItemPosition() <= 0) {
+            matchupStatsText.setVisibility(View.GONE);
+            return;
+        }
+        final String myDeck = myDeckSpinner.getSelectedItem().toString();
+        final String opponentDeck = opponentDeckSpinner.getSelectedItem().toString();
 
-                if (index1 == -1) index1 = Integer.MAX_VALUE;
-                if (index2 == -1) index2 = Integer.MAX_VALUE;
-                return Integer.compare(index1, index2);
+        executorService.execute(() -> {
+            SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+            String sheetName = prefs.getString(MainActivity.KEY_USERNAME, "");
+            String text = formatMatchupStats(WinRateRepository.getInstance(getApplicationContext()), sheetName, myDeck, opponentDeck);
+            mainThreadHandler.post(() -> {
+                if (requestId != matchupStatsRequestId || matchupStatsText == null) return;
+                matchupStatsText.setText(text);
+                matchupStatsText.setVisibility(View.VISIBLE);
             });
-            Log.d(TAG, "Deck names sorted by custom order.");
+        });
+    }
 
-        } else {
-            Log.w(TAG, "Custom sort order not found. Sorting alphabetically as a fallback.");
-            Collections.sort(loadedDeckNames);
+    private static String formatMatchupStats(WinRateRepository stats, String sheetName, String myDeck, String opponentDeck) {
+        WinRateAggregator.Tally total = stats.getMatchup(sheetName, myDeck, opponentDeck);
+        if (total.getTotal() == 0) {
+            return "この対面の記録はまだありません";
         }
+        WinRateAggregator.Tally first = stats.getMatchupByTurn(sheetName, myDeck, opponentDeck, MatchRecord.TURN_FIRST);
+        WinRateAggregator.Tally second = stats.getMatchupByTurn(sheetName, myDeck, opponentDeck, MatchRecord.TURN_SECOND);
+        return "対面成績: " + formatTally(total) + "\n"
+                + MatchRecord.TURN_FIRST + ": " + formatTally(first) + " / "
+                + MatchRecord.TURN_SECOND + ": " + formatTally(second);
+    }
+
+    private static String formatTally(WinRateAggregator.Tally tally) {
+        if (tally.getTotal() == 0) {
+            return "0戦";
+        }
+        return String.format(Locale.JAPAN, "%d戦 %d勝%d敗 (%.0f%%)",
+                tally.getTotal(), tally.getWins(), tally.getLosses(), tally.getWinRate() * 100);
+    }
+
+    private void loadDeckNames() {
+        Log.d(TAG, "--- Start Loading Deck Names ---");
+        // 並べ替え済みの一覧はマスターデータが変わるまでキャッシュされている
+        MasterCatalogRepository repository = MasterCatalogRepository.getInstance(this);
+        loadedCatalogVersion = repository.getSavedVersion();
+        List<String> loadedDeckNames = repository.getSortedDeckNames();
+        Log.d(TAG, "Loaded " + loadedDeckNames.size() + " sorted decks.");
 
         // ③ UIに反映
         myDeckNamesList.clear();
-        opponentDeckNamesList.clear();
-
         myDeckNamesList.add("（自分のデッキを選択）");
-        opponentDeckNamesList.add("（相手のデッキを選択）");
+        myDeckNamesList.addAll(loadedDeckNames);
+        myDeckAdapter.notifyDataSetChanged();
 
-        if (!loadedDeckNames.isEmpty()) {
-            myDeckNamesList.addAll(loadedDeckNames);
-            opponentDeckNamesList.addAll(loadedDeckNames);
-        }
+        catalogDeckNames = new ArrayList<>(loadedDeckNames);
+        fillOpponentDeckNames();
 
-        myDeckAdapter.notifyDataSetChanged();
-        opponentDeckAdapter.notifyDataSetChanged();
+        // デッキ名の検索用索引はマスターデータのバージョンが変わったときだけ作り直す
+        DeckSearchIndex deckSearchIndex = DeckSearchIndex.build(loadedDeckNames);
+        if (myDeckSearch != null) myDeckSearch.setIndex(deckSearchIndex);
+        if (opponentDeckSearch != null) opponentDeckSearch.setIndex(deckSearchIndex);
         Log.d(TAG, "--- Finish Loading Deck Names ---");
     }
 
+    /**
+     * 相手のデッキ一覧を、最近よく対戦しているデッキ → それ以外（マスターデータの並び順）の順に並べる
+     */
+    private void fillOpponentDeckNames() {
+        opponentDeckNamesList.clear();
+        opponentDeckNamesList.add(OPPONENT_DECK_PROMPT);
+        opponentDeckNamesList.addAll(OpponentDeckRanking.orderRecentFirst(catalogDeckNames, recentOpponentDecks));
+        opponentDeckAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * 最近よく対戦している相手のデッキをバックグラウンドで読み込み、変わっていれば一覧の並びに反映する。
+     * 並び順は記録を追加したときに計算済みなので、ここでは読み出すだけになる。
+     */
+    private void loadRecentOpponentDecks() {
+        if (executorService.isShutdown()) return;
+        executorService.execute(() -> {
+            SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+            String sheetName = prefs.getString(MainActivity.KEY_USERNAME, "");
+            List<String> recent = WinRateRepository.getInstance(getApplicationContext())
+                    .getRecentOpponentDecks(sheetName, System.currentTimeMillis(), RECENT_OPPONENT_DECK_COUNT);
+            mainThreadHandler.post(() -> applyRecentOpponentDecks(recent));
+        });
+    }
+
+    private void applyRecentOpponentDecks(List<String> recent) {
+        if (overlayView == null || recent.equals(recentOpponentDecks)) return;
+        Object selected = opponentDeckSpinner.getSelectedItem();
+        recentOpponentDecks = new ArrayList<>(recent);
+        fillOpponentDeckNames();
+        reselect(opponentDeckSpinner, opponentDeckAdapter, selected, 0);
+    }
+
     private void loadOpponentRanks() {
         Log.d(TAG, "Loading opponent ranks...");
         opponentRankList.clear();
-        opponentRankList.addAll(Arrays.asList("BEYOND", "LEGEND", "ULTIMATE", "EPIC", "EPIC未満", "ダイヤモンド", "サファイア", "ルビー", "(ランク選択)"));
+        opponentRankList.addAll(MasterCatalogRepository.getInstance(this).getOpponentRanks());
+        opponentRankList.add(RANK_PROMPT);
         opponentRankAdapter.notifyDataSetChanged();
         Log.d(TAG, "Opponent ranks loaded. Adapter notified.");
     }
 
     private void collectInputDataAndRecord() {
         Log.d(TAG, "Collecting input data and attempting to record with OAuth...");
+        final long tappedAt = System.currentTimeMillis();
         
         if (recordButton != null) {
             recordButton.setEnabled(false);
@@ -384,7 +614,7 @@ public class OverlayService extends Service {
         String turn = "";
         String winLoss = "";
 
-        if (opponentRank.equals("(ランク選択)")) opponentRank = "";
+        if (opponentRank.equals(RANK_PROMPT)) opponentRank = "";
 
         if (turnRadioGroup != null) {
             int selectedTurnId = turnRadioGroup.getCheckedRadioButtonId();
@@ -409,9 +639,9 @@ public class OverlayService extends Service {
             return;
         }
 
-        String recordDate = new SimpleDateFormat("MM/dd", Locale.getDefault()).format(new Date());
+        final List<Object> rowData = MatchRecord.buildRow(tappedAt, opponentRank, myDeck, turn, opponentDeck, winLoss);
 
-        Log.i(TAG, "Collected Data: SheetName=" + playerNameForSheet + ", Date=" + recordDate +
+        Log.i(TAG, "Collected Data: SheetName=" + playerNameForSheet + ", Date=" + rowData.get(0) +
                 ", OpponentRank=" + opponentRank + ", MyDeck=" + myDeck +
                 ", Turn=" + turn + ", OpponentDeck=" + opponentDeck + ", WinLoss=" + winLoss +
                 " (Authenticated as: " + credential.getSelectedAccountName() + ")");
@@ -423,114 +653,48 @@ public class OverlayService extends Service {
         }
 
         final String sheetName = playerNameForSheet;
-        final List<Object> rowData = Arrays.asList(recordDate, opponentRank, myDeck, turn, opponentDeck, winLoss);
 
         // 最後に使ったデッキを保存
         getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE).edit()
                 .putString(KEY_LAST_USED_DECK, myDeck).apply();
 
-        // ★リトライ処理を開始
-        attemptToRecordWithRetries(sheetName, rowData, 1, false);
-    }
-
-    /**
-     * リトライロジックを管理するメソッド
-     * @param sheetName 書き込み先のシート名
-     * @param rowData 書き込むデータ
-     * @param attemptCount 現在の試行回数
-     * @param isDelayedRetry 遅延リトライフェーズかどうか
-     */
-    private void attemptToRecordWithRetries(final String sheetName, final List<Object> rowData, final int attemptCount, final boolean isDelayedRetry) {
+        // ★ローカルの送信待ちキューに保存し、送信はバックグラウンドに任せる
         executorService.execute(() -> {
             try {
-                // ★実際の書き込み処理を呼び出す
-                performSheetUpdate(sheetName, rowData);
+                RecordPipeline pipeline = RecordPipeline.getInstance(getApplicationContext());
+                OutboxEntry entry = pipeline.submit(sheetName, rowData, tappedAt);
+                pipeline.requestSync();
 
-                // 成功した場合
+                // 送信待ちキューへの保存が済んだらすぐにパネルを閉じる
                 mainThreadHandler.post(() -> {
                     Toast.makeText(getApplicationContext(), "対戦記録を保存しました！", Toast.LENGTH_SHORT).show();
-                    Log.d(TAG, "Match record successfully saved.");
+                    Log.d(TAG, "Match record committed locally.");
                     clearDraftState();
-                    stopSelf();
+                    if (overlayView == null) {
+                        return; // サービスは既に終了している
+                    }
+                    resetMatchInputs();
+                    hidePanel();
                 });
 
-            } catch (UserRecoverableAuthIOException | GoogleJsonResponseException e) {
-                // ★リトライ不可能なエラー (認証やAPI権限の問題)
-                Log.e(TAG, "Unrecoverable API error.", e);
-                mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "記録保存エラー(認証等): " + e.getMessage(), Toast.LENGTH_LONG).show());
-
+                pipeline.addToHistory(entry);
+                // 次にパネルを開いたときに並べ替え済みの一覧を表示できるよう、ここで反映しておく
+                loadRecentOpponentDecks();
             } catch (IOException e) {
-                // ★リトライ可能なネットワークエラー
-                Log.w(TAG, "Network error on attempt " + attemptCount + " (isDelayed=" + isDelayedRetry + ")", e);
-
-                if (attemptCount < MAX_RETRIES) {
-                    // --- 即時リトライまたは遅延リトライの継続 ---
-                    try {
-                        if (!isDelayedRetry) {
-                            // mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "記録に失敗、リトライします... (" + attemptCount + "/" + MAX_RETRIES + ")", Toast.LENGTH_SHORT).show());
-                            Thread.sleep(IMMEDIATE_RETRY_DELAY_MS);
-                        } else {
-                            // mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "バックグラウンドでリトライ中... (" + attemptCount + "/" + MAX_RETRIES + ")", Toast.LENGTH_SHORT).show());
-                            Thread.sleep(IMMEDIATE_RETRY_DELAY_MS);
-                        }
-                        attemptToRecordWithRetries(sheetName, rowData, attemptCount + 1, isDelayedRetry);
-                    } catch (InterruptedException interruptedException) {
-                        Thread.currentThread().interrupt();
-                    }
-                } else {
-                    if (!isDelayedRetry) {
-                        // --- 即時リトライが上限に達したので、遅延リトライへ移行 ---
-                        Log.w(TAG, "Immediate retries failed. Scheduling delayed retries.");
-                        mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "ネットワークが不安定です。3分後にバックグラウンドで再試行します。", Toast.LENGTH_LONG).show());
-
-                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                            attemptToRecordWithRetries(sheetName, rowData, 1, true);
-                        }, DELAYED_RETRY_DELAY_MS);
-
-                    } else {
-                        // --- 全てのリトライが失敗 ---
-                        Log.e(TAG, "All retry attempts failed.", e);
-                        mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "保存に失敗しました: " + e.getMessage(), Toast.LENGTH_LONG).show());
-                    }
-                }
-            } catch (Exception e) {
-                // その他の予期せぬエラー
-                Log.e(TAG, "An unexpected error occurred during record attempt.", e);
-                mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "予期せぬエラー: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                Log.e(TAG, "Failed to commit match record to the outbox.", e);
+                mainThreadHandler.post(() -> {
+                    Toast.makeText(getApplicationContext(), "記録の保存に失敗しました: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    validateInputs();
+                });
             }
         });
     }
 
-    /**
-     * 実際にGoogle Sheetsへの書き込みを行うメソッド
-     */
-    private void performSheetUpdate(String sheetName, List<Object> rowData) throws IOException {
-        HttpTransport httpTransport = new NetHttpTransport();
-        Sheets sheetsService = new Sheets.Builder(httpTransport, GsonFactory.getDefaultInstance(), credential)
-                .setApplicationName(getApplicationInfo().loadLabel(getPackageManager()).toString())
-                .build();
-
-        // 最終行を探す
-        final String searchRange = sheetName + "!A3:A";
-        ValueRange response = sheetsService.spreadsheets().values().get(SPREADSHEET_ID, searchRange).execute();
-        List<List<Object>> values = response.getValues();
-        int targetRow = 3 + (values != null ? values.size() : 0);
-        Log.d(TAG, "Target row for update is: " + targetRow);
-
-        // データ書き込み
-        final String updateRange = sheetName + "!A" + targetRow + ":G" + targetRow;
-        ValueRange body = new ValueRange().setValues(Arrays.asList(rowData));
-        sheetsService.spreadsheets().values()
-                .update(SPREADSHEET_ID, updateRange, body)
-                .setValueInputOption("USER_ENTERED")
-                .execute();
-    }
-
     private void clearDraftState() {
         SharedPreferences draftPrefs = getSharedPreferences(PREFS_DRAFT_NAME, Context.MODE_PRIVATE);
         SharedPreferences.Editor editor = draftPrefs.edit();
 
-        editor.remove(KEY_DRAFT_OPPONENT_DECK_POS);
+        editor.remove(KEY_DRAFT_OPPONENT_DECK);
         editor.remove(KEY_DRAFT_OPPONENT_RANK_POS);
         editor.remove(KEY_DRAFT_TURN_ID);
         editor.remove(KEY_DRAFT_WIN_LOSS_ID);
@@ -539,9 +703,31 @@ public class OverlayService extends Service {
         Log.d(TAG, "Draft state cleared, keeping my deck selection.");
     }
 
+    /**
+     * 次の対戦に備えて、自分のデッキ以外の入力をリセットする
+     */
+    private void resetMatchInputs() {
+        opponentDeckSpinner.setSelection(0);
+        opponentRankSpinner.setSelection(opponentRankAdapter.getCount() - 1);
+        turnRadioGroup.clearCheck();
+        winLossRadioGroup.clearCheck();
+        validateInputs();
+    }
+
+    /**
+     * `adb shell dumpsys activity service com.ppp.svwbrecord/.OverlayService` で記録処理の計測値を書き出す
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Record pipeline metrics:");
+        writer.print(RecordPipeline.getInstance(getApplicationContext()).dumpMetrics());
+        writer.flush();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        isRunning = false;
         Log.d(TAG, "onDestroy called.");
         if (overlayView != null && windowManager != null) {
             Log.d(TAG, "Removing overlayView.");
@@ -553,29 +739,41 @@ public class OverlayService extends Service {
             overlayView = null;
         }
 
-        Log.d(TAG, "Requesting GameWatchService to refresh UI state.");
-        // GameWatchServiceにUIの更新を依頼する
-        Intent refreshIntent = new Intent(this, GameWatchService.class);
-        refreshIntent.setAction(GameWatchService.ACTION_REFRESH_UI);
-        startService(refreshIntent);
-
-        // 1. 現在の設定を SharedPreferences から読み込む
-        SharedPreferences prefs = getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
-        String displayMode = prefs.getString(MainActivity.KEY_DISPLAY_MODE, MainActivity.MODE_NOTIFICATION);
+        if (floatingButton != null) {
+            floatingButton.release();
+        }
+        if (isForeground) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            isForeground = false;
+        }
+        executorService.shutdown();
+    }
 
-        // 2. フローティングボタンモードの場合のみ、サービスを再起動する
-        if (MainActivity.MODE_FLOATING_BUTTON.equals(displayMode)) {
-            Log.d(TAG, "Floating button mode detected. Requesting to restore FloatingButtonService.");
-            Intent floatingButtonIntent = new Intent(this, FloatingButtonService.class);
-            if (signedInAccountName != null) {
-                floatingButtonIntent.putExtra(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, signedInAccountName);
-            }
-            startService(floatingButtonIntent);
-        } else {
-            Log.d(TAG, "Notification mode detected. Not restoring FloatingButtonService.");
+    private void createNotificationChannel() {
+        NotificationChannel channel = new NotificationChannel(
+                OVERLAY_CHANNEL_ID,
+                "フローティングボタン サービス",
+                NotificationManager.IMPORTANCE_LOW
+        );
+        channel.setDescription("フローティングボタンの表示状態を通知します");
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.createNotificationChannel(channel);
         }
     }
 
+    private Notification createServiceNotification() {
+        Intent notificationIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, OVERLAY_CHANNEL_ID)
+                .setContentTitle("フローティングボタン")
+                .setContentText("タップして操作")
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true)
+                .build();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         Log.d(TAG, "onBind called");
@@ -0,0 +1,89 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * Sheets API への全てのリクエストを {@link RateLimiter} に通す。
+ * 送信前にトークンを取得し、429（上限超過）の応答には Retry-After の時間だけ全ての呼び出しを止めてから、同じリクエストを送り直す。
+ * Retry-After がない場合は、送り直すたびに待つ時間を伸ばす。
+ * 送り直しは呼び出し元からは1回の呼び出しに見えるので、計測値には送り直すたびに記録する。
+ */
+class RateLimitedRequestInitializer implements HttpRequestInitializer {
+
+    static final int STATUS_TOO_MANY_REQUESTS = 429;
+    // 1件のリクエストを 429 で送り直す最大回数。超えたら呼び出し元にエラーを返す
+    static final int MAX_RATE_LIMITED_RETRIES = 5;
+    private static final long RATE_LIMITED_BASE_DELAY_MS = 1000;
+    private static final long RATE_LIMITED_MAX_DELAY_MS = 32 * 1000;
+
+    private final HttpRequestInitializer delegate;
+    private final RateLimiter rateLimiter;
+    private final RateLimiter.Lane lane;
+    private final RecordMetrics metrics;
+    private final RetryPolicy backoff = new RetryPolicy(RATE_LIMITED_BASE_DELAY_MS, RATE_LIMITED_MAX_DELAY_MS,
+            MAX_RATE_LIMITED_RETRIES, new Random());
+
+    /**
+     * @param delegate 認証などの設定を行う元の初期化処理。なければ null
+     * @param lane このクライアントからの呼び出しの優先度
+     * @param metrics 429 で送り直した回数を記録する先。なければ null
+     */
+    RateLimitedRequestInitializer(HttpRequestInitializer delegate, RateLimiter rateLimiter, RateLimiter.Lane lane,
+                                  RecordMetrics metrics) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+        this.lane = lane;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void initialize(HttpRequest request) throws IOException {
+        if (delegate != null) {
+            delegate.initialize(request);
+        }
+        // 送り直すたびに呼ばれるので、送り直しもトークンを使う
+        final HttpExecuteInterceptor interceptor = request.getInterceptor();
+        request.setInterceptor(r -> {
+            try {
+                rateLimiter.acquire(lane);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the Sheets rate limiter.");
+            }
+            if (interceptor != null) {
+                interceptor.intercept(r);
+            }
+        });
+
+        final HttpUnsuccessfulResponseHandler handler = request.getUnsuccessfulResponseHandler();
+        final int[] rateLimitedCount = {0};
+        request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> {
+            if (response.getStatusCode() != STATUS_TOO_MANY_REQUESTS) {
+                return handler != null && handler.handleResponse(r, response, supportsRetry);
+            }
+            rateLimitedCount[0]++;
+            long retryAfterMs = RateLimiter.parseRetryAfterMs(
+                    response.getHeaders().getFirstHeaderStringValue("Retry-After"), System.currentTimeMillis());
+            if (retryAfterMs < 0) {
+                retryAfterMs = backoff.nextDelayMs(rateLimitedCount[0]);
+            }
+            // 送り直さない場合も、他の呼び出しが続けて上限を超えないよう止める
+            rateLimiter.pause(retryAfterMs);
+            boolean resend = supportsRetry && !backoff.isExhausted(rateLimitedCount[0]);
+            if (resend && metrics != null) {
+                metrics.onRateLimitedResend();
+            }
+            return resend;
+        });
+        if (request.getNumberOfRetries() < MAX_RATE_LIMITED_RETRIES) {
+            request.setNumberOfRetries(MAX_RATE_LIMITED_RETRIES);
+        }
+    }
+}
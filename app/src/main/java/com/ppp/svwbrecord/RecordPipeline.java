@@ -0,0 +1,183 @@
+package com.ppp.svwbrecord;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.google.api.services.sheets.v4.Sheets;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+/**
+ * 対戦記録の保存から送信までをまとめるプロセス内で1つのパイプライン。
+ * 記録はまずローカルの送信待ちキューに保存され、送信はバックグラウンドで行われる。
+ * 送信に失敗した記録は、再試行の予定時刻か、端末がネットワークに接続した時点で再送する。
+ */
+public class RecordPipeline {
+
+    private static final String TAG = "RecordPipeline";
+    private static final String OUTBOX_FILE_NAME = "record_outbox.journal";
+    private static final String SPREADSHEET_ID = BuildConfig.SPREADSHEET_ID;
+
+    private static RecordPipeline instance;
+
+    private final Context appContext;
+    private final RecordOutbox outbox;
+    private final RecordSyncEngine syncEngine;
+    private final RecordMetrics metrics = new RecordMetrics();
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+
+    public static synchronized RecordPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new RecordPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RecordPipeline(Context appContext) {
+        this.appContext = appContext;
+        this.outbox = new RecordOutbox(new File(appContext.getFilesDir(), OUTBOX_FILE_NAME));
+        this.syncEngine = new RecordSyncEngine(outbox, this::createWriter,
+                Executors.newSingleThreadScheduledExecutor(), new SyncListener(),
+                RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE, metrics);
+        // 記録の書き込みが 429 で送り直された回数も計測値に含める
+        SheetsClientHolder.getInstance(appContext).setMetrics(RateLimiter.Lane.FOREGROUND, metrics);
+        // 前回のプロセスで送信できなかった記録の再試行を引き継ぐ
+        syncEngine.resume();
+        ConnectivityManager connectivityManager = appContext.getSystemService(ConnectivityManager.class);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    syncEngine.onNetworkAvailable();
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    syncEngine.onNetworkLost();
+                }
+            });
+        }
+    }
+
+    /**
+     * 記録を送信待ちキューに保存する。ディスクへの書き込みを伴うため、メインスレッド以外から呼ぶこと。
+     * 端末の対戦履歴と勝敗数の集計には含まれないので、続けて {@link #addToHistory} を呼ぶ。
+     * @param sheetName 書き込み先のシート名
+     * @param rowData 書き込むデータ
+     * @param tappedAtMillis 記録ボタンがタップされた時刻（所要時間の計測に使う）
+     * @return 保存された記録
+     */
+    public OutboxEntry submit(String sheetName, List<Object> rowData, long tappedAtMillis) throws IOException {
+        List<String> row = new ArrayList<>();
+        for (Object value : rowData) {
+            row.add(value != null ? value.toString() : "");
+        }
+        OutboxEntry entry = outbox.append(sheetName, row);
+        metrics.onCommitted(entry, tappedAtMillis, System.currentTimeMillis(), outbox.getPendingCount());
+        Log.d(TAG, "Record " + entry.getId() + " committed to outbox.");
+        return entry;
+    }
+
+    /**
+     * 送信待ちキューに保存した記録を端末の対戦履歴に保存し、勝敗数の集計に加える。
+     * 集計の保存を伴うので、記録パネルを閉じた後に、メインスレッド以外から呼ぶこと。
+     */
+    public void addToHistory(OutboxEntry entry) {
+        // 送信待ちキューが正なので、履歴への保存に失敗しても記録自体は失敗扱いにしない
+        try {
+            MatchRecord record = MatchRecord.fromOutboxEntry(entry);
+            WinRateRepository.getInstance(appContext).insertAndRecord(record);
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to store record " + entry.getId() + " in match history.", e);
+        }
+    }
+
+    /**
+     * 未送信の記録があれば送信を開始する
+     */
+    public void requestSync() {
+        syncEngine.requestSync();
+    }
+
+    public RecordMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 送信待ちの件数を読み直したうえで、計測値のテキストを返す。ディスクを読むため、メインスレッド以外から呼ぶこと。
+     * Sheets API のリクエスト数と送信ペースの制御のカウンタ、ゲーム監視の起床回数も末尾に加える。
+     */
+    public String dumpMetrics() {
+        try {
+            metrics.onQueueDepth(outbox.getPendingCount());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read outbox for metrics.", e);
+        }
+        return metrics.formatReport(System.currentTimeMillis())
+                + '\n'
+                + "[Sheets API リクエスト]\n  " + SheetsClientHolder.getInstance(appContext).dumpCounters() + '\n'
+                + '\n'
+                + "[ゲーム監視]\n  " + String.format(Locale.US, "起床: %d回 (%.1f回/時)",
+                        GameWatchService.getWakeupCount(), GameWatchService.getWakeupsPerHour()) + '\n';
+    }
+
+    private SheetRowWriter createWriter() throws IOException {
+        SharedPreferences prefs = appContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        String accountName = prefs.getString(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, null);
+        if (SPREADSHEET_ID.isEmpty() || SPREADSHEET_ID.equals("YOUR_SPREADSHEET_ID")) {
+            throw new IOException("Spreadsheet ID is not set.");
+        }
+        Sheets sheetsService = SheetsClientHolder.getInstance(appContext).getSheets(accountName, RateLimiter.Lane.FOREGROUND);
+        return new SheetsApiRowWriter(sheetsService, SPREADSHEET_ID);
+    }
+
+    private class SyncListener implements RecordSyncEngine.Listener {
+        @Override
+        public void onRecordsSynced(List<OutboxEntry> entries, int firstRow) {
+            Log.d(TAG, entries.size() + " record(s) successfully synced to the spreadsheet (first row " + firstRow + ").");
+            if (firstRow < 0) {
+                return;
+            }
+            // 書き込まれた行番号を履歴に記録し、シートからの取り込み時に同じ記録を重複させない
+            try {
+                MatchHistoryDatabase history = MatchHistoryDatabase.getInstance(appContext);
+                for (int i = 0; i < entries.size(); i++) {
+                    history.setRemoteRow(entries.get(i).getId(), firstRow + i);
+                }
+            } catch (SQLException e) {
+                Log.e(TAG, "Failed to store remote rows in match history.", e);
+            }
+        }
+
+        @Override
+        public void onSheetFailed(String sheetName, IOException cause) {
+            Log.e(TAG, "Failed to write to sheet " + sheetName + ". Its records stay in the outbox.", cause);
+            mainThreadHandler.post(() -> Toast.makeText(appContext, "シート「" + sheetName + "」に書き込めませんでした（記録は端末に保存済み）。シート名を確認してください: " + cause.getMessage(), Toast.LENGTH_LONG).show());
+        }
+
+        @Override
+        public void onSyncDelayed(IOException cause, long delayMs) {
+            Log.w(TAG, "Sync keeps failing. Next retry in " + delayMs + " ms.", cause);
+            long delaySeconds = Math.max(1, delayMs / 1000);
+            mainThreadHandler.post(() -> Toast.makeText(appContext, "ネットワークが不安定です。" + delaySeconds + "秒後、またはネットワークに再接続したときにバックグラウンドで再試行します。", Toast.LENGTH_LONG).show());
+        }
+
+        @Override
+        public void onSyncFailed(Exception cause) {
+            Log.e(TAG, "Sync failed. Records stay in the outbox until the next sync request.", cause);
+            mainThreadHandler.post(() -> Toast.makeText(appContext, "スプレッドシートへの送信に失敗しました（記録は端末に保存済み）: " + cause.getMessage(), Toast.LENGTH_LONG).show());
+        }
+    }
+}
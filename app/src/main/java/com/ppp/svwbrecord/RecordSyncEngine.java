@@ -0,0 +1,435 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAuthIOException;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 送信待ちキュー（{@link RecordOutbox}）の記録をスプレッドシートへ送信するエンジン。
+ * 送信が完了した記録はキュー上で ACK し、ネットワークエラー時は {@link RetryPolicy} に従って再試行をスケジュールする。
+ * シートが見つからないなど1つのシートだけに起きるエラーでは、そのシートの記録を次の送信依頼まで残し、他のシートの送信を続ける。
+ * append は冪等ではないので、書き込みが反映されたか分からない記録は、再送する前にシートの ID の列を読んで書き込み済みでないか確かめる。
+ * 再試行の待機中も executor のスレッドは止めず、再試行の状態は送信待ちキューに保存して再起動後に引き継ぐ。
+ * 状態はすべて専用のシングルスレッド executor 上でのみ操作する。
+ */
+public class RecordSyncEngine {
+
+    // この回数連続して失敗したら、再試行の間隔が空くことを通知する
+    static final int DELAY_NOTICE_ATTEMPTS = 3;
+    // 1回のリクエストでまとめて書き込む最大行数
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+    // シート名の変更・削除で範囲を解釈できない場合の応答
+    static final int STATUS_BAD_REQUEST = 400;
+    static final int STATUS_NOT_FOUND = 404;
+
+    /**
+     * 送信のたびに書き込み処理を用意する（認証アカウントが変わる可能性があるため）
+     */
+    public interface WriterProvider {
+        SheetRowWriter get() throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * 記録の送信が完了した（1回の書き込みごとに呼ばれる）
+         * @param entries 同じシートに連続した行として書き込まれた記録
+         * @param firstRow 書き込まれた先頭の行番号。不明な場合は -1
+         */
+        void onRecordsSynced(List<OutboxEntry> entries, int firstRow);
+        /**
+         * 1つのシートへの書き込みが、そのシートの問題（名前の変更や削除など）で失敗した。
+         * そのシートの記録は送信待ちキューに残り、次の送信依頼で再送する。他のシートの送信は続ける
+         */
+        void onSheetFailed(String sheetName, IOException cause);
+        /** 送信が続けて失敗し、次の再試行まで時間が空くようになった（{@link #DELAY_NOTICE_ATTEMPTS} 回目の失敗で1度だけ呼ばれる） */
+        void onSyncDelayed(IOException cause, long delayMs);
+        /** リトライ不可能なエラー、または全てのリトライが失敗した */
+        void onSyncFailed(Exception cause);
+    }
+
+    private final RecordOutbox outbox;
+    private final WriterProvider writerProvider;
+    private final ScheduledExecutorService executor;
+    private final Listener listener;
+    private final int maxBatchSize;
+    private final RecordMetrics metrics;
+    private final RetryPolicy retryPolicy;
+
+    private ScheduledFuture<?> scheduledRetry;
+    private boolean networkLost = false;
+    // 書き込みを送ったが、反映されたか分からない記録のID
+    private final Set<Long> unconfirmedIds = new HashSet<>();
+    // シート名 -> このプロセスで最後に書き込みを確認した行番号
+    private final Map<String, Integer> lastWrittenRowBySheet = new HashMap<>();
+
+    public RecordSyncEngine(RecordOutbox outbox, WriterProvider writerProvider,
+                            ScheduledExecutorService executor, Listener listener) {
+        this(outbox, writerProvider, executor, listener, DEFAULT_MAX_BATCH_SIZE, new RecordMetrics());
+    }
+
+    /**
+     * @param maxBatchSize 同じシートへの記録を1回のリクエストにまとめる最大件数
+     * @param metrics 書き込みの所要時間や再試行の回数を記録する先
+     */
+    public RecordSyncEngine(RecordOutbox outbox, WriterProvider writerProvider,
+                            ScheduledExecutorService executor, Listener listener, int maxBatchSize,
+                            RecordMetrics metrics) {
+        this(outbox, writerProvider, executor, listener, maxBatchSize, metrics, RetryPolicy.createDefault());
+    }
+
+    /**
+     * @param retryPolicy 送信に失敗したときの再試行の間隔
+     */
+    public RecordSyncEngine(RecordOutbox outbox, WriterProvider writerProvider,
+                            ScheduledExecutorService executor, Listener listener, int maxBatchSize,
+                            RecordMetrics metrics, RetryPolicy retryPolicy) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.outbox = outbox;
+        this.writerProvider = writerProvider;
+        this.executor = executor;
+        this.listener = listener;
+        this.maxBatchSize = maxBatchSize;
+        this.metrics = metrics;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * 未送信の記録の送信を依頼する。リトライ待ちの場合も即座に送信を試み、失敗した場合は間隔を伸ばして再試行を続ける。
+     */
+    public void requestSync() {
+        executor.execute(this::drain);
+    }
+
+    /**
+     * 前回のプロセスで予定していた再試行を引き継ぐ。予定の時刻を過ぎていれば、すぐに送信を試みる。
+     * 前回のプロセスは書き込みの応答を待つ間に終了した可能性があるので、未送信の記録は送る前に書き込み済みでないか確かめる。
+     */
+    public void resume() {
+        executor.execute(() -> {
+            long delayMs;
+            try {
+                for (OutboxEntry entry : outbox.getPendingEntries()) {
+                    unconfirmedIds.add(entry.getId());
+                }
+                if (outbox.getFailedAttempts() == 0) {
+                    drain();
+                    return;
+                }
+                delayMs = outbox.getNextAttemptAtMillis() - System.currentTimeMillis();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            if (delayMs <= 0) {
+                drain();
+                return;
+            }
+            cancelScheduledRetry();
+            scheduledRetry = executor.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 端末がネットワークから切断された（使えるネットワークが1つもなくなった）
+     */
+    public void onNetworkLost() {
+        executor.execute(() -> networkLost = true);
+    }
+
+    /**
+     * 端末がネットワークに接続した。切断の後の再接続であれば、これまでの失敗は接続がなかったためとみなし、
+     * 再試行の間隔を最初に戻して送信を試みる。切断を挟まない通知（登録直後の通知や Wi-Fi とモバイル回線の切り替え）では何もしない。
+     */
+    public void onNetworkAvailable() {
+        executor.execute(() -> {
+            if (!networkLost) {
+                return;
+            }
+            networkLost = false;
+            try {
+                outbox.saveRetryState(0, 0);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            drain();
+        });
+    }
+
+    private void drain() {
+        cancelScheduledRetry();
+
+        List<OutboxEntry> entries;
+        SheetRowWriter writer;
+        try {
+            entries = outbox.getPendingEntries();
+            metrics.onQueueDepth(entries.size());
+            if (entries.isEmpty()) {
+                return;
+            }
+            writer = writerProvider.get();
+        } catch (IOException | RuntimeException e) {
+            metrics.onFailure(classify(e));
+            listener.onSyncFailed(e);
+            return;
+        }
+
+        // 失敗したシートの残りの記録は、シート内の順序を保つため今回は送らない
+        Set<String> failedSheets = new HashSet<>();
+        try {
+            for (List<OutboxEntry> batch : groupIntoBatches(entries)) {
+                String sheetName = batch.get(0).getSheetName();
+                if (failedSheets.contains(sheetName)) {
+                    continue;
+                }
+                if (containsUnconfirmed(batch)) {
+                    batch = acknowledgeWrittenEntries(writer, sheetName, batch);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                }
+                List<List<Object>> rows = new ArrayList<>(batch.size());
+                List<Long> ids = new ArrayList<>(batch.size());
+                for (OutboxEntry entry : batch) {
+                    rows.add(entry.toRowData());
+                    ids.add(entry.getId());
+                }
+                int firstRow;
+                try {
+                    firstRow = writeBatch(writer, sheetName, rows);
+                } catch (IOException e) {
+                    if (mayHaveBeenWritten(e)) {
+                        unconfirmedIds.addAll(ids);
+                    }
+                    if (!isSheetError(e)) {
+                        throw e;
+                    }
+                    failedSheets.add(sheetName);
+                    metrics.onFailure(classify(e));
+                    listener.onSheetFailed(sheetName, e);
+                    continue;
+                } catch (RuntimeException e) {
+                    unconfirmedIds.addAll(ids);
+                    throw e;
+                }
+                if (firstRow >= 0) {
+                    lastWrittenRowBySheet.put(sheetName, firstRow + batch.size() - 1);
+                }
+                acknowledge(batch, firstRow);
+            }
+            outbox.saveRetryState(0, 0);
+        } catch (IOException e) {
+            if (isRetryable(e)) {
+                scheduleRetry(e);
+            } else {
+                fail(e);
+            }
+        } catch (RuntimeException e) {
+            // executor に投げると何も通知されずに送信が止まるので、再試行できない失敗として通知する
+            fail(e);
+        }
+    }
+
+    private boolean containsUnconfirmed(List<OutboxEntry> batch) {
+        for (OutboxEntry entry : batch) {
+            if (unconfirmedIds.contains(entry.getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * シートの ID の列を読み、既に書き込まれていた記録を送信済みにする
+     * @return まだ書き込まれていない記録（順序は保つ）
+     */
+    private List<OutboxEntry> acknowledgeWrittenEntries(SheetRowWriter writer, String sheetName,
+                                                        List<OutboxEntry> batch) throws IOException {
+        Integer lastWrittenRow = lastWrittenRowBySheet.get(sheetName);
+        Map<Long, Integer> writtenRows = writer.readWrittenRows(sheetName, lastWrittenRow != null ? lastWrittenRow : 0);
+        List<OutboxEntry> remaining = new ArrayList<>(batch.size());
+        for (OutboxEntry entry : batch) {
+            unconfirmedIds.remove(entry.getId());
+            Integer row = writtenRows.get(entry.getId());
+            if (row == null) {
+                remaining.add(entry);
+                continue;
+            }
+            // 以前の書き込みは別のまとまりだった可能性があるので、行番号は1件ずつ通知する
+            acknowledge(Collections.singletonList(entry), row);
+            if (lastWrittenRow == null || row > lastWrittenRow) {
+                lastWrittenRow = row;
+                lastWrittenRowBySheet.put(sheetName, row);
+            }
+        }
+        return remaining;
+    }
+
+    private void acknowledge(List<OutboxEntry> batch, int firstRow) throws IOException {
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (OutboxEntry entry : batch) {
+            ids.add(entry.getId());
+        }
+        outbox.acknowledge(ids);
+        metrics.onAcknowledged(batch, System.currentTimeMillis(), outbox.getPendingCount());
+        listener.onRecordsSynced(batch, firstRow);
+    }
+
+    private int writeBatch(SheetRowWriter writer, String sheetName, List<List<Object>> rows) throws IOException {
+        long started = System.currentTimeMillis();
+        boolean succeeded = false;
+        try {
+            int firstRow = writer.writeRows(sheetName, rows);
+            succeeded = true;
+            return firstRow;
+        } finally {
+            metrics.onSheetsCall(System.currentTimeMillis() - started, succeeded);
+        }
+    }
+
+    /**
+     * 送信待ちの記録をシートごとにまとめ、最大件数ごとに分割する（シート内の順序は保つ）
+     */
+    List<List<OutboxEntry>> groupIntoBatches(List<OutboxEntry> entries) {
+        Map<String, List<OutboxEntry>> bySheet = new LinkedHashMap<>();
+        for (OutboxEntry entry : entries) {
+            List<OutboxEntry> sheetEntries = bySheet.get(entry.getSheetName());
+            if (sheetEntries == null) {
+                sheetEntries = new ArrayList<>();
+                bySheet.put(entry.getSheetName(), sheetEntries);
+            }
+            sheetEntries.add(entry);
+        }
+
+        List<List<OutboxEntry>> batches = new ArrayList<>();
+        for (List<OutboxEntry> sheetEntries : bySheet.values()) {
+            for (int from = 0; from < sheetEntries.size(); from += maxBatchSize) {
+                int to = Math.min(from + maxBatchSize, sheetEntries.size());
+                batches.add(new ArrayList<>(sheetEntries.subList(from, to)));
+            }
+        }
+        return batches;
+    }
+
+    private void scheduleRetry(IOException cause) {
+        try {
+            int failedAttempts = outbox.getFailedAttempts() + 1;
+            if (retryPolicy.isExhausted(failedAttempts)) {
+                // --- 全てのリトライが失敗。記録はキューに残り、次の送信依頼か接続の回復で再送される ---
+                fail(cause);
+                return;
+            }
+            long delayMs = retryPolicy.nextDelayMs(failedAttempts);
+            outbox.saveRetryState(failedAttempts, System.currentTimeMillis() + delayMs);
+            metrics.onRetry(classify(cause));
+            if (failedAttempts == DELAY_NOTICE_ATTEMPTS) {
+                listener.onSyncDelayed(cause, delayMs);
+            }
+            scheduledRetry = executor.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            // 再試行の状態を保存できない場合は、送信待ちキューも使えないので失敗として扱う
+            fail(e);
+        }
+    }
+
+    /**
+     * 送信を諦める。再試行の状態は消し、次の送信依頼では最初の間隔から再試行する
+     */
+    private void fail(Exception cause) {
+        try {
+            outbox.saveRetryState(0, 0);
+        } catch (IOException ignored) {
+            // 元の原因を通知する
+        }
+        metrics.onFailure(classify(cause));
+        listener.onSyncFailed(cause);
+    }
+
+    private void cancelScheduledRetry() {
+        if (scheduledRetry != null) {
+            scheduledRetry.cancel(false);
+            scheduledRetry = null;
+        }
+    }
+
+    /**
+     * 認証やAPI権限の問題はリトライしても解決しないので、ネットワークエラー・上限超過（429）・サーバー側の一時的なエラー（5xx）のみ再試行する
+     */
+    static boolean isRetryable(IOException e) {
+        if (e instanceof GoogleJsonResponseException) {
+            GoogleJsonResponseException response = (GoogleJsonResponseException) e;
+            return isRateLimited(response) || isServerError(response);
+        }
+        return !(e instanceof GoogleAuthIOException);
+    }
+
+    /**
+     * 書き込みがサーバーで反映された可能性があるか。接続できなかった場合と、リクエストを拒否する応答（4xx）が返った場合以外は、
+     * 書き込みが反映された後に応答だけが失われた可能性がある
+     */
+    static boolean mayHaveBeenWritten(Exception e) {
+        if (e instanceof GoogleJsonResponseException) {
+            return ((GoogleJsonResponseException) e).getStatusCode() >= 500;
+        }
+        return !(e instanceof GoogleAuthIOException || e instanceof UnknownHostException
+                || e instanceof ConnectException || e instanceof NoRouteToHostException);
+    }
+
+    /**
+     * 書き込み先のシートだけの問題（シート名の変更・削除で範囲を解釈できないなど）で、他のシートへの書き込みは成功し得るか
+     */
+    static boolean isSheetError(IOException e) {
+        if (!(e instanceof GoogleJsonResponseException)) {
+            return false;
+        }
+        int status = ((GoogleJsonResponseException) e).getStatusCode();
+        return status == STATUS_BAD_REQUEST || status == STATUS_NOT_FOUND;
+    }
+
+    private static boolean isServerError(GoogleJsonResponseException e) {
+        return e.getStatusCode() >= 500 && e.getStatusCode() < 600;
+    }
+
+    private static boolean isRateLimited(GoogleJsonResponseException e) {
+        return e.getStatusCode() == RateLimitedRequestInitializer.STATUS_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * 計測用に送信エラーの原因を分類する
+     */
+    static RecordMetrics.Cause classify(Exception e) {
+        if (e instanceof GoogleAuthIOException) {
+            return RecordMetrics.Cause.AUTH;
+        }
+        if (e instanceof GoogleJsonResponseException) {
+            return isRateLimited((GoogleJsonResponseException) e)
+                    ? RecordMetrics.Cause.RATE_LIMITED : RecordMetrics.Cause.API_ERROR;
+        }
+        if (e instanceof SocketTimeoutException) {
+            return RecordMetrics.Cause.TIMEOUT;
+        }
+        if (e instanceof UnknownHostException || e instanceof ConnectException
+                || e instanceof NoRouteToHostException) {
+            return RecordMetrics.Cause.NETWORK;
+        }
+        return RecordMetrics.Cause.OTHER;
+    }
+}
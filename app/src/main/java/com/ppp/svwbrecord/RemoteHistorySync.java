@@ -0,0 +1,164 @@
+package com.ppp.svwbrecord;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.api.services.sheets.v4.Sheets;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * スプレッドシートの記録を端末の対戦履歴（{@link MatchHistoryDatabase}）に取り込むプロセス内で1つの窓口。
+ * 取り込みは専用のスレッドで1件ずつ行い、前回の続き（シートごとに保存した行番号）から読み込む。
+ * 一度取り込んだシートは、他の端末から追加された行だけを読み込む差分同期（{@link #requestTailSync}）で最新に保つ。
+ * 取り込んだ記録はウィンドウごとに勝敗数の集計にも加える。
+ */
+public class RemoteHistorySync {
+
+    private static final String TAG = "RemoteHistorySync";
+    private static final String SPREADSHEET_ID = BuildConfig.SPREADSHEET_ID;
+    // 同じシートの差分同期の最短間隔
+    static final long MIN_TAIL_SYNC_INTERVAL_MS = 60 * 1000; // 1分
+
+    /**
+     * 取り込みの進捗。すべてメインスレッドで呼ばれる。
+     */
+    public interface Listener {
+        void onProgress(String sheetName, int importedRows, int nextRow);
+        void onFinished(String sheetName, int importedRows);
+        void onFailed(String sheetName, Exception cause);
+    }
+
+    private static RemoteHistorySync instance;
+
+    private final Context appContext;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Long> lastTailSyncMillis = new HashMap<>();
+    private boolean running = false;
+
+    public static synchronized RemoteHistorySync getInstance(Context context) {
+        if (instance == null) {
+            instance = new RemoteHistorySync(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private RemoteHistorySync(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 指定したシートの記録の取り込みを開始する
+     * @return 既に取り込み中の場合は false
+     */
+    public synchronized boolean startImport(String sheetName, Listener listener) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        executor.execute(() -> {
+            int[] imported = {0};
+            Exception failure = null;
+            try {
+                imported[0] = runImport(sheetName, (sheet, importedRows, next) -> mainThreadHandler.post(
+                        () -> listener.onProgress(sheet, importedRows, next)));
+            } catch (IOException | SQLException e) {
+                // 保存済みのウィンドウはそのまま残り、次回は続きから読み込む
+                Log.e(TAG, "Failed to import " + sheetName + ".", e);
+                failure = e;
+            } finally {
+                finishRun();
+            }
+            final Exception cause = failure;
+            mainThreadHandler.post(() -> {
+                if (cause == null) {
+                    listener.onFinished(sheetName, imported[0]);
+                } else {
+                    listener.onFailed(sheetName, cause);
+                }
+            });
+        });
+        return true;
+    }
+
+    /**
+     * 取り込み済みのシートについて、前回読み込んだ行より後に追加された行だけを読み込む。
+     * 追加された行がなければ空の範囲を1回読むだけで終わる。
+     * 一度も取り込んでいないシート、取り込み中、前回の差分同期から間もない場合は何もしない。
+     * @param onNewRecords 新しい記録を追加した場合にメインスレッドで呼ばれる（null 可）
+     */
+    public synchronized void requestTailSync(String sheetName, Runnable onNewRecords) {
+        if (running || sheetName == null || sheetName.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long last = lastTailSyncMillis.get(sheetName);
+        if (last != null && now - last < MIN_TAIL_SYNC_INTERVAL_MS) {
+            return;
+        }
+        lastTailSyncMillis.put(sheetName, now);
+        running = true;
+        executor.execute(() -> {
+            try {
+                if (!MatchHistoryDatabase.getInstance(appContext).hasImportCursor(sheetName)) {
+                    return;
+                }
+                if (runImport(sheetName, null) > 0 && onNewRecords != null) {
+                    mainThreadHandler.post(onNewRecords);
+                }
+            } catch (IOException | SQLException e) {
+                Log.w(TAG, "Tail sync of " + sheetName + " failed. Will retry on the next request.", e);
+            } finally {
+                finishRun();
+            }
+        });
+    }
+
+    private synchronized void finishRun() {
+        running = false;
+    }
+
+    /**
+     * 保存済みの行番号から最後の記録までを取り込み、追加した記録を集計に加える
+     * @return 新しく追加した記録の件数
+     */
+    private int runImport(String sheetName, SheetHistoryImporter.ProgressListener progressListener) throws IOException {
+        MatchHistoryDatabase history = MatchHistoryDatabase.getInstance(appContext);
+        WinRateRepository winRates = WinRateRepository.getInstance(appContext);
+        SheetHistoryImporter importer = new SheetHistoryImporter(createReader());
+        int startRow = history.getImportCursor(sheetName);
+        long started = System.currentTimeMillis();
+        int[] imported = {0};
+        int nextRow = importer.importSheet(sheetName, startRow, (sheet, records, next) -> {
+            List<MatchRecord> inserted = winRates.commitImportedWindow(sheet, records, next);
+            imported[0] += inserted.size();
+        }, progressListener);
+        Log.i(TAG, "Imported " + imported[0] + " new record(s) from " + sheetName + " rows " + startRow
+                + "-" + (nextRow - 1) + " in " + (System.currentTimeMillis() - started) + " ms.");
+        return imported[0];
+    }
+
+    private SheetRowReader createReader() throws IOException {
+        SharedPreferences prefs = appContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        String accountName = prefs.getString(MainActivity.KEY_SIGNED_IN_ACCOUNT_NAME, null);
+        if (SPREADSHEET_ID.isEmpty() || SPREADSHEET_ID.equals("YOUR_SPREADSHEET_ID")) {
+            throw new IOException("Spreadsheet ID is not set.");
+        }
+        Sheets sheetsService = SheetsClientHolder.getInstance(appContext).getSheets(accountName, RateLimiter.Lane.BACKGROUND);
+        return new SheetsApiRowReader(sheetsService, SPREADSHEET_ID);
+    }
+}
@@ -0,0 +1,139 @@
+package com.ppp.svwbrecord;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * スプレッドシートに既にある対戦記録を、決まった行数の範囲（ウィンドウ）ごとに読み込んで取り込む。
+ * 例えばウィンドウが1000行なら A3:F1002、A1003:F2002 … の順に読み込み、
+ * 1ウィンドウ分を取り込むたびに {@link Sink} に渡すので、メモリ上に載るのは常に1ウィンドウ分だけになる。
+ * 次に読む行番号（チェックポイント）も同じタイミングで {@link Sink} に渡すので、中断しても続きから再開できる。
+ */
+public class SheetHistoryImporter {
+
+    public static final int DEFAULT_WINDOW_ROWS = 1000;
+
+    /**
+     * 取り込んだ記録の保存先
+     */
+    public interface Sink {
+        /**
+         * 1ウィンドウ分の記録を保存する。記録とチェックポイントは同時に（アトミックに）保存すること。
+         * @param records 空行を除いた記録（行番号順）
+         * @param nextRow 次に読み込む行番号
+         */
+        void commitWindow(String sheetName, List<MatchRecord> records, int nextRow) throws IOException;
+    }
+
+    public interface ProgressListener {
+        /**
+         * 1ウィンドウ分の取り込みが完了した
+         * @param importedRows このシートで今回取り込んだ記録の累計
+         * @param nextRow 次に読み込む行番号
+         */
+        void onWindowImported(String sheetName, int importedRows, int nextRow);
+    }
+
+    private final SheetRowReader reader;
+    private final int windowRows;
+
+    public SheetHistoryImporter(SheetRowReader reader) {
+        this(reader, DEFAULT_WINDOW_ROWS);
+    }
+
+    public SheetHistoryImporter(SheetRowReader reader, int windowRows) {
+        if (windowRows <= 0) {
+            throw new IllegalArgumentException("windowRows must be positive: " + windowRows);
+        }
+        this.reader = reader;
+        this.windowRows = windowRows;
+    }
+
+    /**
+     * 指定した行から最後の記録までを取り込む。空のウィンドウが返った時点で終了する。
+     * @param startRow 読み込みを始める行番号（前回のチェックポイント）。記録の開始行より前なら開始行から読む
+     * @return 次に読み込む行番号（取り込んだ最後の行の次の行）
+     * @throws InterruptedIOException 取り込み中にスレッドが割り込まれた場合。それまでのウィンドウは保存済み
+     */
+    public int importSheet(String sheetName, int startRow, Sink sink, ProgressListener listener) throws IOException {
+        int row = Math.max(startRow, SheetsApiRowWriter.FIRST_DATA_ROW);
+        int importedRows = 0;
+        long now = System.currentTimeMillis();
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Import of " + sheetName + " interrupted at row " + row);
+            }
+            List<List<Object>> values = reader.readRows(sheetName, row, row + windowRows - 1);
+            if (values.isEmpty()) {
+                return row;
+            }
+            List<MatchRecord> records = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                List<Object> value = values.get(i);
+                if (isBlank(value)) {
+                    continue;
+                }
+                Object date = value.isEmpty() ? null : value.get(MatchRecord.COLUMN_DATE);
+                long recordedAt = date != null ? estimateRecordedAt(date.toString().trim(), now) : 0L;
+                records.add(MatchRecord.fromRow(0, sheetName, recordedAt, value, row + i));
+            }
+            // 末尾の空行は返らないので、次のウィンドウは最後に返った行の次から読む
+            int nextRow = row + values.size();
+            sink.commitWindow(sheetName, records, nextRow);
+            importedRows += records.size();
+            if (listener != null) {
+                listener.onWindowImported(sheetName, importedRows, nextRow);
+            }
+            row = nextRow;
+        }
+    }
+
+    private static boolean isBlank(List<Object> row) {
+        for (Object cell : row) {
+            if (cell != null && !cell.toString().trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * シートの日付（MM/dd、または yyyy/MM/dd）から記録日時を推定する。
+     * 年がない場合は現在の年とし、未来の日付になる場合は前年とみなす。
+     * @return その日の0時（端末のタイムゾーン）。日付として読めない場合は 0
+     */
+    static long estimateRecordedAt(String date, long nowMillis) {
+        String[] parts = date.split("/");
+        if (parts.length < 2 || parts.length > 3) {
+            return 0L;
+        }
+        int year;
+        int month;
+        int day;
+        try {
+            year = parts.length == 3 ? Integer.parseInt(parts[0].trim()) : -1;
+            month = Integer.parseInt(parts[parts.length - 2].trim());
+            day = Integer.parseInt(parts[parts.length - 1].trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return 0L;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(nowMillis);
+        boolean yearKnown = year > 0;
+        if (!yearKnown) {
+            year = calendar.get(Calendar.YEAR);
+        }
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        if (!yearKnown && calendar.getTimeInMillis() > nowMillis) {
+            calendar.add(Calendar.YEAR, -1);
+        }
+        return calendar.getTimeInMillis();
+    }
+}
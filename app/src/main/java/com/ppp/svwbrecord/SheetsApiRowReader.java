@@ -0,0 +1,38 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Google Sheets API を使って対戦記録を読み込む {@link SheetRowReader}。
+ * 1回のリクエストでは指定した行範囲だけを取得し、シート全体を1つの {@link ValueRange} に読み込まない。
+ */
+public class SheetsApiRowReader implements SheetRowReader {
+
+    private final Sheets sheetsService;
+    private final String spreadsheetId;
+
+    public SheetsApiRowReader(Sheets sheetsService, String spreadsheetId) {
+        this.sheetsService = sheetsService;
+        this.spreadsheetId = spreadsheetId;
+    }
+
+    @Override
+    public List<List<Object>> readRows(String sheetName, int firstRow, int lastRow) throws IOException {
+        final String range = sheetName + "!" + SheetsApiRowWriter.FIRST_COLUMN + firstRow
+                + ":" + SheetsApiRowWriter.LAST_COLUMN + lastRow;
+        ValueRange response = sheetsService.spreadsheets().values()
+                .get(spreadsheetId, range)
+                .setMajorDimension("ROWS")
+                .setFields("values")
+                .execute();
+        if (response == null || response.getValues() == null) {
+            return Collections.emptyList();
+        }
+        return response.getValues();
+    }
+}
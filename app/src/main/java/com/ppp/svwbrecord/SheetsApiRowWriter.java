@@ -0,0 +1,165 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Google Sheets API を使って対戦記録を書き込む {@link SheetRowWriter}
+ */
+public class SheetsApiRowWriter implements SheetRowWriter {
+
+    // 記録はシートの3行目から始まる
+    static final int FIRST_DATA_ROW = 3;
+    // 記録の列範囲（日付, 相手ランク, 自分のデッキ, 先攻後攻, 相手のデッキ, 勝敗）
+    static final String FIRST_COLUMN = "A";
+    static final String LAST_COLUMN = "F";
+    // 記録の列の右隣に、再送時の重複確認に使う記録のIDを書き込む
+    static final String ID_COLUMN = "G";
+
+    public enum WriteMode {
+        /** append エンドポイントで末尾に行を挿入する。シートの行数に関係なく1リクエストで済む */
+        APPEND,
+        /** A列を全件読んで最終行を求めてから update する（旧方式） */
+        READ_THEN_UPDATE
+    }
+
+    private final Sheets sheetsService;
+    private final String spreadsheetId;
+    private final WriteMode writeMode;
+
+    public SheetsApiRowWriter(Sheets sheetsService, String spreadsheetId) {
+        this(sheetsService, spreadsheetId, WriteMode.APPEND);
+    }
+
+    public SheetsApiRowWriter(Sheets sheetsService, String spreadsheetId, WriteMode writeMode) {
+        this.sheetsService = sheetsService;
+        this.spreadsheetId = spreadsheetId;
+        this.writeMode = writeMode;
+    }
+
+    @Override
+    public int writeRows(String sheetName, List<List<Object>> rows) throws IOException {
+        if (rows.isEmpty()) {
+            return -1;
+        }
+        if (writeMode == WriteMode.READ_THEN_UPDATE) {
+            return performSheetUpdate(sheetName, rows);
+        }
+        return performSheetAppend(sheetName, rows);
+    }
+
+    /**
+     * append エンドポイントで記録を末尾に挿入する。
+     * 書き込み先の行はサーバー側で決まるため、複数端末から同時に書き込んでも同じ行を上書きしない。
+     */
+    private int performSheetAppend(String sheetName, List<List<Object>> rows) throws IOException {
+        final String tableRange = sheetName + "!" + FIRST_COLUMN + FIRST_DATA_ROW + ":" + ID_COLUMN;
+        ValueRange body = new ValueRange().setValues(rows);
+        AppendValuesResponse response = sheetsService.spreadsheets().values()
+                .append(spreadsheetId, tableRange, body)
+                .setValueInputOption("USER_ENTERED")
+                .setInsertDataOption("INSERT_ROWS")
+                .setIncludeValuesInResponse(false)
+                .setFields("updates(updatedRange)")
+                .execute();
+
+        if (response == null || response.getUpdates() == null) {
+            return -1;
+        }
+        return parseFirstRow(response.getUpdates().getUpdatedRange());
+    }
+
+    /**
+     * 実際にGoogle Sheetsへの書き込みを行うメソッド。複数行を1回の update でまとめて書き込む。
+     */
+    private int performSheetUpdate(String sheetName, List<List<Object>> rows) throws IOException {
+        // 最終行を探す
+        final String searchRange = sheetName + "!A" + FIRST_DATA_ROW + ":A";
+        ValueRange response = sheetsService.spreadsheets().values().get(spreadsheetId, searchRange).execute();
+        List<List<Object>> values = response.getValues();
+        int firstRow = FIRST_DATA_ROW + (values != null ? values.size() : 0);
+        int lastRow = firstRow + rows.size() - 1;
+
+        // データ書き込み
+        final String updateRange = sheetName + "!" + FIRST_COLUMN + firstRow + ":" + ID_COLUMN + lastRow;
+        ValueRange body = new ValueRange().setValues(rows);
+        sheetsService.spreadsheets().values()
+                .update(spreadsheetId, updateRange, body)
+                .setValueInputOption("USER_ENTERED")
+                .execute();
+        return firstRow;
+    }
+
+    /**
+     * ID の列だけを読むので、通信量は記録の列をすべて読む場合より小さい。
+     * 直前に書き込んだ行が分からない場合は、シートの行数に比例した量を読む。
+     */
+    @Override
+    public Map<Long, Integer> readWrittenRows(String sheetName, int afterRow) throws IOException {
+        int firstRow = Math.max(FIRST_DATA_ROW, afterRow + 1);
+        final String idRange = sheetName + "!" + ID_COLUMN + firstRow + ":" + ID_COLUMN;
+        ValueRange response = sheetsService.spreadsheets().values().get(spreadsheetId, idRange)
+                .setMajorDimension("ROWS")
+                // 数値として書式設定されても桁が丸められないよう、書式を適用しない値を読む
+                .setValueRenderOption("UNFORMATTED_VALUE")
+                .setFields("values")
+                .execute();
+        Map<Long, Integer> rowsById = new HashMap<>();
+        List<List<Object>> values = response != null ? response.getValues() : null;
+        if (values == null) {
+            return rowsById;
+        }
+        for (int i = 0; i < values.size(); i++) {
+            long id = parseId(values.get(i));
+            if (id > 0) {
+                rowsById.put(id, firstRow + i);
+            }
+        }
+        return rowsById;
+    }
+
+    /**
+     * ID の列の値を読む。値がない、または数値として読めない場合は -1
+     */
+    static long parseId(List<Object> cells) {
+        if (cells == null || cells.isEmpty() || cells.get(0) == null) {
+            return -1;
+        }
+        try {
+            return new BigDecimal(cells.get(0).toString().trim()).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * "シート名!A12:F13" 形式の範囲から開始行番号を取り出す
+     */
+    static int parseFirstRow(String a1Range) {
+        if (a1Range == null) {
+            return -1;
+        }
+        String cells = a1Range.substring(a1Range.lastIndexOf('!') + 1);
+        int end = cells.indexOf(':');
+        String firstCell = end >= 0 ? cells.substring(0, end) : cells;
+        int digitStart = 0;
+        while (digitStart < firstCell.length() && !Character.isDigit(firstCell.charAt(digitStart))) {
+            digitStart++;
+        }
+        if (digitStart == firstCell.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(firstCell.substring(digitStart));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
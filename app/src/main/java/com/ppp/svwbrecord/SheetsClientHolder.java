@@ -0,0 +1,178 @@
+package com.ppp.svwbrecord;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.GZipEncoding;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.SheetsScopes;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * プロセス内で共有する Sheets API クライアント。
+ * HTTP トランスポートは1つだけ作り、keep-alive の接続プールを全ての呼び出し元で使い回す。
+ * 記録の送信（{@link RecordPipeline}）とマスターデータの読み込み（{@link MainActivity}）の両方から使う。
+ * 全てのリクエストは1つの {@link RateLimiter} を通し、呼び出しの優先度ごとにクライアントを分ける。
+ */
+public class SheetsClientHolder {
+
+    private static final String TAG = "SheetsClientHolder";
+
+    // アイドル状態の接続をプールに残しておく時間。これを過ぎた接続は破棄される
+    static final long KEEP_ALIVE_DURATION_MS = 60 * 1000; // 1分
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+
+    private static SheetsClientHolder instance;
+
+    private final Context appContext;
+    private final HttpTransport transport;
+    private final String applicationName;
+    private final RateLimiter rateLimiter = RateLimiter.createForSheets();
+
+    private String accountName;
+    private final Map<RateLimiter.Lane, Sheets> sheetsServices = new EnumMap<>(RateLimiter.Lane.class);
+    private final Map<RateLimiter.Lane, RecordMetrics> metricsByLane = new EnumMap<>(RateLimiter.Lane.class);
+
+    // --- リクエストの送信間隔を確認するためのカウンタ ---
+    private final AtomicLong clientBuildCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong withinKeepAliveRequestCount = new AtomicLong();
+    private final AtomicLong lastRequestElapsedMs = new AtomicLong(-1);
+
+    public static synchronized SheetsClientHolder getInstance(Context context) {
+        if (instance == null) {
+            instance = new SheetsClientHolder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private SheetsClientHolder(Context appContext) {
+        this.appContext = appContext;
+        configureConnectionPool();
+        this.transport = new NetHttpTransport();
+        this.applicationName = appContext.getApplicationInfo().loadLabel(appContext.getPackageManager()).toString();
+    }
+
+    /**
+     * 指定したアカウントで認証する Sheets クライアントを返す。
+     * アカウントが変わった場合だけクライアントを作り直し、トランスポートは共有し続ける。
+     * @param accountName サインイン中の Google アカウント名
+     * @param lane このクライアントからの呼び出しの優先度
+     */
+    public synchronized Sheets getSheets(String accountName, RateLimiter.Lane lane) throws IOException {
+        if (accountName == null || accountName.isEmpty()) {
+            throw new IOException("Google account is not signed in.");
+        }
+        if (!accountName.equals(this.accountName)) {
+            sheetsServices.clear();
+            this.accountName = accountName;
+        }
+        Sheets sheetsService = sheetsServices.get(lane);
+        if (sheetsService == null) {
+            GoogleAccountCredential credential = GoogleAccountCredential.usingOAuth2(
+                    appContext, Collections.singleton(SheetsScopes.SPREADSHEETS));
+            credential.setSelectedAccountName(accountName);
+            HttpRequestInitializer initializer = new RateLimitedRequestInitializer(
+                    new SharedRequestInitializer(credential), rateLimiter, lane, metricsByLane.get(lane));
+            sheetsService = new Sheets.Builder(transport, GsonFactory.getDefaultInstance(), initializer)
+                    .setApplicationName(applicationName)
+                    .build();
+            sheetsServices.put(lane, sheetsService);
+            clientBuildCount.incrementAndGet();
+            Log.d(TAG, "Sheets client built for " + accountName + " (" + lane + ", total builds: " + clientBuildCount.get() + ")");
+        }
+        return sheetsService;
+    }
+
+    /**
+     * 指定した優先度の呼び出しを 429 で送り直したときに、送り直しを記録する先を設定する
+     * @param metrics null の場合は記録しない
+     */
+    public synchronized void setMetrics(RateLimiter.Lane lane, RecordMetrics metrics) {
+        metricsByLane.put(lane, metrics);
+        // 作成済みのクライアントは前の設定のままなので作り直す
+        sheetsServices.remove(lane);
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public long getClientBuildCount() {
+        return clientBuildCount.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 直前のリクエストから keep-alive 時間内に送られたリクエスト数。
+     * 送信間隔だけを見た数で、実際にプール済みの接続が再利用されたかは観測していない。
+     */
+    public long getWithinKeepAliveRequestCount() {
+        return withinKeepAliveRequestCount.get();
+    }
+
+    public String dumpCounters() {
+        return "requests=" + requestCount.get()
+                + ", withinKeepAlive=" + withinKeepAliveRequestCount.get()
+                + ", clientBuilds=" + clientBuildCount.get()
+                + ", rateLimiter={" + rateLimiter.dumpCounters() + "}";
+    }
+
+    /**
+     * HttpURLConnection の接続プール設定。最初の接続より前に設定する必要がある。
+     */
+    private static void configureConnectionPool() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION_MS));
+    }
+
+    private void recordRequest() {
+        long now = SystemClock.elapsedRealtime();
+        long last = lastRequestElapsedMs.getAndSet(now);
+        requestCount.incrementAndGet();
+        if (last >= 0 && now - last < KEEP_ALIVE_DURATION_MS) {
+            withinKeepAliveRequestCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 認証情報の設定に加えて、リクエスト本文の gzip 圧縮とリクエスト数の計測を行う
+     */
+    private class SharedRequestInitializer implements HttpRequestInitializer {
+        private final HttpRequestInitializer credential;
+
+        SharedRequestInitializer(HttpRequestInitializer credential) {
+            this.credential = credential;
+        }
+
+        @Override
+        public void initialize(HttpRequest request) throws IOException {
+            credential.initialize(request);
+            request.setEncoding(new GZipEncoding());
+            final HttpExecuteInterceptor authInterceptor = request.getInterceptor();
+            request.setInterceptor(r -> {
+                if (authInterceptor != null) {
+                    authInterceptor.intercept(r);
+                }
+                recordRequest();
+            });
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.ppp.svwbrecord;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 勝敗数の集計（{@link WinRateAggregator}）と最近の相手デッキの頻度（{@link OpponentDeckRanking}）を保持し、
+ * まとめてファイルに保存する。
+ * 保存した集計値の件数が対戦履歴の件数と一致しない場合は、履歴から集計し直す。
+ * ディスクやデータベースへのアクセスを伴うので、メインスレッド以外から呼ぶこと。
+ */
+public class WinRateRepository {
+
+    private static final String TAG = "WinRateRepository";
+    private static final String SNAPSHOT_FILE_NAME = "win_rate.bin";
+
+    private static WinRateRepository instance;
+
+    private final File snapshotFile;
+    private final MatchHistoryDatabase history;
+    private WinRateAggregator aggregator;
+    private OpponentDeckRanking opponentRanking;
+
+    public static synchronized WinRateRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new WinRateRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WinRateRepository(Context appContext) {
+        this.snapshotFile = new File(appContext.getFilesDir(), SNAPSHOT_FILE_NAME);
+        this.history = MatchHistoryDatabase.getInstance(appContext);
+    }
+
+    /**
+     * 記録を対戦履歴に追加し、追加できた場合は集計に加えて保存する。
+     * 集計を読み込んでから履歴に追加し、その間ロックを持ち続けるので、
+     * 読み込み時の集計し直しに同じ記録が含まれて二重に数えられることはない。
+     * @return 履歴に追加した場合は true（同じ記録が既にある場合は false）
+     */
+    public synchronized boolean insertAndRecord(MatchRecord record) {
+        ensureLoaded();
+        if (history.insert(record) == -1) {
+            return false;
+        }
+        add(Collections.singletonList(record));
+        return true;
+    }
+
+    /**
+     * スプレッドシートから読み込んだ1ウィンドウ分の記録を対戦履歴に保存し（{@link MatchHistoryDatabase#commitImportedWindow}）、
+     * 新しく追加した記録を集計に加えて保存する。ロックの扱いは {@link #insertAndRecord} と同じ。
+     * @return 新しく追加した記録
+     */
+    public synchronized List<MatchRecord> commitImportedWindow(String sheetName, List<MatchRecord> records, int nextRow) {
+        ensureLoaded();
+        List<MatchRecord> inserted = history.commitImportedWindow(sheetName, records, nextRow);
+        add(inserted);
+        return inserted;
+    }
+
+    private void add(List<MatchRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (MatchRecord record : records) {
+            aggregator.add(record);
+            opponentRanking.add(record);
+        }
+        save();
+    }
+
+    /**
+     * 対戦履歴から集計し直す
+     */
+    public synchronized void rebuildFromHistory() {
+        WinRateAggregator rebuilt = new WinRateAggregator();
+        OpponentDeckRanking ranking = new OpponentDeckRanking();
+        long started = System.currentTimeMillis();
+        history.forEach(new MatchQuery().oldestFirst(), record -> {
+            rebuilt.add(record);
+            ranking.add(record);
+        });
+        aggregator = rebuilt;
+        opponentRanking = ranking;
+        save();
+        Log.i(TAG, "Rebuilt win rates from " + rebuilt.getRecordCount() + " records in "
+                + (System.currentTimeMillis() - started) + " ms.");
+    }
+
+    public synchronized WinRateAggregator.Tally getTotal(String sheetName) {
+        return ensureLoaded().getTotal(sheetName);
+    }
+
+    public synchronized WinRateAggregator.Tally getByMyDeck(String sheetName, String myDeck) {
+        return ensureLoaded().getByMyDeck(sheetName, myDeck);
+    }
+
+    public synchronized WinRateAggregator.Tally getMatchup(String sheetName, String myDeck, String opponentDeck) {
+        return ensureLoaded().getMatchup(sheetName, myDeck, opponentDeck);
+    }
+
+    public synchronized WinRateAggregator.Tally getMatchupByTurn(String sheetName, String myDeck,
+                                                                 String opponentDeck, String turn) {
+        return ensureLoaded().getMatchupByTurn(sheetName, myDeck, opponentDeck, turn);
+    }
+
+    public synchronized WinRateAggregator.Tally getByTurn(String sheetName, String turn) {
+        return ensureLoaded().getByTurn(sheetName, turn);
+    }
+
+    public synchronized WinRateAggregator.Tally getByOpponentRank(String sheetName, String opponentRank) {
+        return ensureLoaded().getByOpponentRank(sheetName, opponentRank);
+    }
+
+    /**
+     * 最近よく対戦している相手のデッキ（古い対戦ほど軽く数えた頻度の大きい順）
+     * @param limit 最大件数
+     */
+    public synchronized List<String> getRecentOpponentDecks(String sheetName, long nowMillis, int limit) {
+        ensureLoaded();
+        return opponentRanking.getRecentDecks(sheetName, nowMillis, limit);
+    }
+
+    private WinRateAggregator ensureLoaded() {
+        if (aggregator != null) {
+            return aggregator;
+        }
+        if (snapshotFile.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                WinRateAggregator loaded = WinRateAggregator.readFrom(in);
+                OpponentDeckRanking loadedRanking = OpponentDeckRanking.readFrom(in);
+                if (loaded.getRecordCount() == history.count(new MatchQuery())) {
+                    aggregator = loaded;
+                    opponentRanking = loadedRanking;
+                    return aggregator;
+                }
+                Log.w(TAG, "Win rate snapshot is out of date. Rebuilding from history.");
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read win rate snapshot. Rebuilding from history.", e);
+            }
+        }
+        try {
+            rebuildFromHistory();
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to rebuild win rates from history.", e);
+            aggregator = new WinRateAggregator();
+            opponentRanking = new OpponentDeckRanking();
+        }
+        return aggregator;
+    }
+
+    private void save() {
+        // 集計値は履歴から作り直せるので fsync はしない
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            aggregator.writeTo(out);
+            opponentRanking.writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write win rate snapshot.", e);
+            return;
+        }
+        if (!tempFile.renameTo(snapshotFile)) {
+            Log.e(TAG, "Failed to replace win rate snapshot.");
+            tempFile.delete();
+        }
+    }
+}
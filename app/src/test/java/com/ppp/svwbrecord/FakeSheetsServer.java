@@ -0,0 +1,673 @@
+package com.ppp.svwbrecord;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.AppendValuesResponse;
+import com.google.api.services.sheets.v4.model.BatchGetValuesResponse;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * テスト用の Sheets API v4 スタブサーバー。
+ * values.get / batchGet / update / append / batchUpdate を実装し、
+ * 受け取ったリクエストの数（エンドポイントごと）と返したレスポンスのバイト数を数える。
+ * gzip 圧縮されたリクエスト本文も受け付ける。
+ * 応答の遅延と、429・5xx・タイムアウト・応答の消失といった障害を差し込める。
+ */
+class FakeSheetsServer {
+
+    private static final String VALUES_PATH_PREFIX = "/v4/spreadsheets/";
+
+    enum Endpoint {
+        VALUES_GET,
+        VALUES_BATCH_GET,
+        VALUES_UPDATE,
+        VALUES_APPEND,
+        VALUES_BATCH_UPDATE
+    }
+
+    /**
+     * リクエストに差し込む障害
+     */
+    enum Fault {
+        /** 429 RESOURCE_EXHAUSTED を返す。書き込みは反映しない */
+        RATE_LIMITED,
+        /** 503 UNAVAILABLE を返す。書き込みは反映しない */
+        SERVER_ERROR,
+        /** 書き込みを反映せずに応答を保留し、{@link #setTimeoutHangMs} だけ待ってから接続を切る */
+        TIMEOUT,
+        /**
+         * 書き込みは反映したうえで、応答を返さずに接続を切る（クライアントには成否が分からない）。
+         * GET は JDK の HTTP クライアントが黙って1回再送することがある
+         */
+        DROP_RESPONSE
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // シート名 -> 行データ（インデックス0が1行目）
+    private final Map<String, List<List<Object>>> sheets = new HashMap<>();
+    // 削除された（名前が変わった）シート
+    private final Set<String> removedSheets = new HashSet<>();
+
+    private int requestCount;
+    private long requestBytes;
+    private long responseBytes;
+    private long maxResponseBytes;
+    private final Map<Endpoint, Integer> requestCountByEndpoint = new EnumMap<>(Endpoint.class);
+    private final Map<Fault, Integer> faultCounts = new EnumMap<>(Fault.class);
+
+    private long latencyMs = 0;
+    private long latencyJitterMs = 0;
+    private final Queue<Fault> queuedFaults = new ArrayDeque<>();
+    private final Map<Endpoint, Queue<Fault>> queuedFaultsByEndpoint = new EnumMap<>(Endpoint.class);
+    private Fault randomFault;
+    private double randomFaultProbability = 0;
+    private Random random = new Random(0);
+    private long timeoutHangMs = 1000;
+    private int retryAfterSeconds = 0;
+
+    FakeSheetsServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * このサーバーを向いた Sheets クライアントを作る（認証なし）
+     */
+    Sheets newSheetsClient() {
+        return newSheetsClient(null);
+    }
+
+    /**
+     * 接続・読み込みのタイムアウトを指定したクライアントを作る（{@link Fault#TIMEOUT} を試す場合に使う）
+     */
+    Sheets newSheetsClient(int timeoutMs) {
+        return newSheetsClient(request -> {
+            request.setConnectTimeout(timeoutMs);
+            request.setReadTimeout(timeoutMs);
+        });
+    }
+
+    /**
+     * リクエストの設定を指定したクライアントを作る
+     * @param initializer null の場合は設定しない
+     */
+    Sheets newSheetsClient(HttpRequestInitializer initializer) {
+        return new Sheets.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), initializer)
+                .setRootUrl(getRootUrl())
+                .setApplicationName("svwbrecord-test")
+                .build();
+    }
+
+    /**
+     * 全てのリクエストの処理前に待つ時間を設定する
+     * @param jitterMs 0〜この値の範囲で、シードで決まる乱数の待ち時間を加える
+     */
+    synchronized void setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = jitterMs;
+    }
+
+    /**
+     * 次のリクエストから順に、1件ずつ障害を差し込む
+     */
+    synchronized void enqueueFaults(Fault... faults) {
+        Collections.addAll(queuedFaults, faults);
+    }
+
+    /**
+     * 指定したエンドポイントへの次のリクエストから順に、1件ずつ障害を差し込む（他のエンドポイントへのリクエストには差し込まない）
+     */
+    synchronized void enqueueFaults(Endpoint endpoint, Fault... faults) {
+        Queue<Fault> queue = queuedFaultsByEndpoint.get(endpoint);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queuedFaultsByEndpoint.put(endpoint, queue);
+        }
+        Collections.addAll(queue, faults);
+    }
+
+    /**
+     * 予約された障害がないリクエストに、指定した確率で障害を差し込む（シードで再現可能）
+     * @param fault null の場合は確率による障害を止める
+     */
+    synchronized void setRandomFault(Fault fault, double probability, long seed) {
+        this.randomFault = fault;
+        this.randomFaultProbability = probability;
+        this.random = new Random(seed);
+    }
+
+    /** {@link Fault#TIMEOUT} で応答を保留する時間 */
+    synchronized void setTimeoutHangMs(long timeoutHangMs) {
+        this.timeoutHangMs = timeoutHangMs;
+    }
+
+    /** {@link Fault#RATE_LIMITED} の応答に付ける Retry-After ヘッダーの秒数。0 の場合は付けない */
+    synchronized void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * 指定した行番号から行データを配置する
+     */
+    synchronized void putRows(String sheetName, int firstRow, List<List<Object>> rows) {
+        List<List<Object>> sheet = sheet(sheetName);
+        for (int i = 0; i < rows.size(); i++) {
+            int index = firstRow - 1 + i;
+            while (sheet.size() <= index) {
+                sheet.add(new ArrayList<>());
+            }
+            sheet.set(index, new ArrayList<>(rows.get(i)));
+        }
+    }
+
+    /**
+     * シートを削除する。以降、このシートを指すリクエストには 400（範囲を解釈できない）を返す
+     */
+    synchronized void removeSheet(String sheetName) {
+        sheets.remove(sheetName);
+        removedSheets.add(sheetName);
+    }
+
+    synchronized List<List<Object>> getRows(String sheetName) {
+        return new ArrayList<>(sheet(sheetName));
+    }
+
+    synchronized int getRequestCount() {
+        return requestCount;
+    }
+
+    synchronized int getRequestCount(Endpoint endpoint) {
+        Integer count = requestCountByEndpoint.get(endpoint);
+        return count != null ? count : 0;
+    }
+
+    /** 差し込んだ障害の回数 */
+    synchronized int getFaultCount(Fault fault) {
+        Integer count = faultCounts.get(fault);
+        return count != null ? count : 0;
+    }
+
+    synchronized long getRequestBytes() {
+        return requestBytes;
+    }
+
+    synchronized long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /** 1回のレスポンスの最大バイト数 */
+    synchronized long getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    synchronized void resetCounters() {
+        requestCount = 0;
+        requestBytes = 0;
+        responseBytes = 0;
+        maxResponseBytes = 0;
+        requestCountByEndpoint.clear();
+        faultCounts.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] wireBody = readAll(exchange.getRequestBody());
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Endpoint endpoint = endpointOf(method, path);
+        Fault fault;
+        long delayMs;
+        int retryAfter;
+        long hangMs;
+        synchronized (this) {
+            requestCount++;
+            requestBytes += wireBody.length + exchange.getRequestURI().toString().length();
+            if (endpoint != null) {
+                requestCountByEndpoint.put(endpoint, getRequestCount(endpoint) + 1);
+            }
+            fault = nextFault(endpoint);
+            if (fault != null) {
+                faultCounts.put(fault, getFaultCount(fault) + 1);
+            }
+            delayMs = latencyMs + (latencyJitterMs > 0 ? (long) (random.nextDouble() * latencyJitterMs) : 0);
+            retryAfter = retryAfterSeconds;
+            hangMs = timeoutHangMs;
+        }
+        byte[] requestBody = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? readAll(new GZIPInputStream(new ByteArrayInputStream(wireBody)))
+                : wireBody;
+
+        if (!sleep(delayMs)) {
+            exchange.close();
+            return;
+        }
+        if (fault == Fault.RATE_LIMITED) {
+            if (retryAfter > 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+            }
+            send(exchange, 429, errorBody(429, "Quota exceeded", "RESOURCE_EXHAUSTED"));
+            return;
+        }
+        if (fault == Fault.SERVER_ERROR) {
+            send(exchange, 503, errorBody(503, "The service is currently unavailable.", "UNAVAILABLE"));
+            return;
+        }
+        if (fault == Fault.TIMEOUT) {
+            sleep(hangMs);
+            // 応答ヘッダーを送らずに閉じると接続ごと切断される
+            exchange.close();
+            return;
+        }
+
+        String response;
+        int status = 200;
+        try {
+            response = dispatch(endpoint, path, query, requestBody);
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            response = errorBody(400, e.getMessage(), "INVALID_ARGUMENT");
+        }
+        if (fault == Fault.DROP_RESPONSE) {
+            exchange.close();
+            return;
+        }
+        send(exchange, status, response);
+    }
+
+    private Fault nextFault(Endpoint endpoint) {
+        Queue<Fault> endpointFaults = endpoint != null ? queuedFaultsByEndpoint.get(endpoint) : null;
+        Fault fault = endpointFaults != null ? endpointFaults.poll() : null;
+        if (fault == null) {
+            fault = queuedFaults.poll();
+        }
+        if (fault == null && randomFault != null && random.nextDouble() < randomFaultProbability) {
+            fault = randomFault;
+        }
+        return fault;
+    }
+
+    /**
+     * @return 待ち終えた場合は true。サーバーの停止で中断された場合は false
+     */
+    private static boolean sleep(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Endpoint endpointOf(String method, String path) {
+        if (!path.startsWith(VALUES_PATH_PREFIX)) {
+            return null;
+        }
+        String rest = path.substring(VALUES_PATH_PREFIX.length());
+        String resource = rest.substring(rest.indexOf('/') + 1);
+        if (resource.equals("values:batchGet")) {
+            return "GET".equals(method) ? Endpoint.VALUES_BATCH_GET : null;
+        }
+        if (resource.equals("values:batchUpdate")) {
+            return "POST".equals(method) ? Endpoint.VALUES_BATCH_UPDATE : null;
+        }
+        if (!resource.startsWith("values/")) {
+            return null;
+        }
+        if ("POST".equals(method) && resource.endsWith(":append")) {
+            return Endpoint.VALUES_APPEND;
+        }
+        if ("PUT".equals(method)) {
+            return Endpoint.VALUES_UPDATE;
+        }
+        return "GET".equals(method) ? Endpoint.VALUES_GET : null;
+    }
+
+    private String dispatch(Endpoint endpoint, String path, Map<String, List<String>> query, byte[] body)
+            throws IOException {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("Unsupported request: " + path);
+        }
+        boolean columns = "COLUMNS".equals(first(query, "majorDimension"));
+        switch (endpoint) {
+            case VALUES_APPEND:
+                String appendRange = rangeOf(path);
+                return append(appendRange.substring(0, appendRange.length() - ":append".length()), parseValueRange(body));
+            case VALUES_UPDATE:
+                return update(rangeOf(path), parseValueRange(body));
+            case VALUES_GET:
+                return GsonFactory.getDefaultInstance().toString(get(rangeOf(path), columns));
+            case VALUES_BATCH_GET:
+                return batchGet(query.containsKey("ranges") ? query.get("ranges") : Collections.<String>emptyList(), columns);
+            case VALUES_BATCH_UPDATE:
+                return batchUpdate(GsonFactory.getDefaultInstance().fromString(
+                        new String(body, StandardCharsets.UTF_8), BatchUpdateValuesRequest.class));
+            default:
+                throw new IllegalArgumentException("Unsupported request: " + path);
+        }
+    }
+
+    private static String rangeOf(String path) {
+        return path.substring(path.indexOf("/values/") + "/values/".length());
+    }
+
+    private synchronized String batchGet(List<String> ranges, boolean columns) throws IOException {
+        List<ValueRange> valueRanges = new ArrayList<>();
+        for (String range : ranges) {
+            valueRanges.add(get(range, columns));
+        }
+        return GsonFactory.getDefaultInstance().toString(new BatchGetValuesResponse().setValueRanges(valueRanges));
+    }
+
+    private synchronized String batchUpdate(BatchUpdateValuesRequest request) throws IOException {
+        List<UpdateValuesResponse> responses = new ArrayList<>();
+        int totalRows = 0;
+        if (request.getData() != null) {
+            for (ValueRange data : request.getData()) {
+                A1Range range = A1Range.parse(data.getRange());
+                List<List<Object>> rows = data.getValues() != null ? data.getValues() : Collections.<List<Object>>emptyList();
+                putRows(range.sheetName, range.startRow, range.place(rows));
+                totalRows += rows.size();
+                responses.add(new UpdateValuesResponse().setUpdatedRange(data.getRange()).setUpdatedRows(rows.size()));
+            }
+        }
+        BatchUpdateValuesResponse response = new BatchUpdateValuesResponse()
+                .setTotalUpdatedRows(totalRows)
+                .setResponses(responses);
+        return GsonFactory.getDefaultInstance().toString(response);
+    }
+
+    private synchronized ValueRange get(String a1Range, boolean columns) {
+        A1Range range = A1Range.parse(a1Range);
+        List<List<Object>> sheet = sheet(range.sheetName);
+        int lastRow = range.endRow > 0 ? Math.min(range.endRow, sheet.size()) : sheet.size();
+        List<List<Object>> values = new ArrayList<>();
+        for (int row = range.startRow; row <= lastRow; row++) {
+            values.add(range.slice(sheet.get(row - 1)));
+        }
+        // 末尾の空行は返さない
+        while (!values.isEmpty() && values.get(values.size() - 1).isEmpty()) {
+            values.remove(values.size() - 1);
+        }
+        if (columns) {
+            values = transpose(values);
+        }
+        ValueRange result = new ValueRange().setRange(a1Range).setMajorDimension(columns ? "COLUMNS" : "ROWS");
+        if (!values.isEmpty()) {
+            result.setValues(values);
+        }
+        return result;
+    }
+
+    private synchronized String update(String a1Range, ValueRange body) throws IOException {
+        A1Range range = A1Range.parse(a1Range);
+        List<List<Object>> rows = body.getValues() != null ? body.getValues() : Collections.<List<Object>>emptyList();
+        putRows(range.sheetName, range.startRow, range.place(rows));
+        UpdateValuesResponse response = new UpdateValuesResponse()
+                .setUpdatedRange(a1Range)
+                .setUpdatedRows(rows.size());
+        return GsonFactory.getDefaultInstance().toString(response);
+    }
+
+    /**
+     * 範囲内の表の最終行を探し、その直後に行を挿入する（INSERT_ROWS 相当）
+     */
+    private synchronized String append(String a1Range, ValueRange body) throws IOException {
+        A1Range range = A1Range.parse(a1Range);
+        List<List<Object>> sheet = sheet(range.sheetName);
+        int tableEnd = range.startRow - 1;
+        for (int row = range.startRow; row <= sheet.size(); row++) {
+            if (!range.slice(sheet.get(row - 1)).isEmpty()) {
+                tableEnd = row;
+            }
+        }
+        List<List<Object>> rows = body.getValues() != null ? body.getValues() : Collections.<List<Object>>emptyList();
+        int firstRow = tableEnd + 1;
+        while (sheet.size() < tableEnd) {
+            sheet.add(new ArrayList<>());
+        }
+        List<List<Object>> placed = range.place(rows);
+        for (int i = 0; i < placed.size(); i++) {
+            sheet.add(tableEnd + i, new ArrayList<>(placed.get(i)));
+        }
+
+        String updatedRange = range.sheetName + "!" + range.startColumnName() + firstRow
+                + ":" + A1Range.columnName(range.startColumn + widthOf(rows) - 1) + (firstRow + rows.size() - 1);
+        AppendValuesResponse response = new AppendValuesResponse()
+                .setUpdates(new UpdateValuesResponse().setUpdatedRange(updatedRange).setUpdatedRows(rows.size()));
+        return GsonFactory.getDefaultInstance().toString(response);
+    }
+
+    private List<List<Object>> sheet(String sheetName) {
+        if (removedSheets.contains(sheetName)) {
+            throw new IllegalArgumentException("Unable to parse range: " + sheetName);
+        }
+        List<List<Object>> sheet = sheets.get(sheetName);
+        if (sheet == null) {
+            sheet = new ArrayList<>();
+            sheets.put(sheetName, sheet);
+        }
+        return sheet;
+    }
+
+    /**
+     * 行ごとの値を列ごとの値に並べ替える（各列の末尾の空セルは除く）
+     */
+    private static List<List<Object>> transpose(List<List<Object>> rows) {
+        List<List<Object>> columns = new ArrayList<>();
+        for (int row = 0; row < rows.size(); row++) {
+            List<Object> cells = rows.get(row);
+            for (int column = 0; column < cells.size(); column++) {
+                while (columns.size() <= column) {
+                    columns.add(new ArrayList<>());
+                }
+                List<Object> values = columns.get(column);
+                while (values.size() < row) {
+                    values.add("");
+                }
+                values.add(cells.get(column));
+            }
+        }
+        return columns;
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) throws IOException {
+        Map<String, List<String>> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, "UTF-8");
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), "UTF-8") : "";
+            List<String> values = query.get(key);
+            if (values == null) {
+                values = new ArrayList<>();
+                query.put(key, values);
+            }
+            values.add(value);
+        }
+        return query;
+    }
+
+    private static String first(Map<String, List<String>> query, String key) {
+        List<String> values = query.get(key);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    private static String errorBody(int code, String message, String status) {
+        return "{\"error\":{\"code\":" + code + ",\"message\":\"" + message.replace("\"", "'")
+                + "\",\"status\":\"" + status + "\"}}";
+    }
+
+    private static int widthOf(List<List<Object>> rows) {
+        int width = 1;
+        for (List<Object> row : rows) {
+            width = Math.max(width, row.size());
+        }
+        return width;
+    }
+
+    private static ValueRange parseValueRange(byte[] body) throws IOException {
+        return GsonFactory.getDefaultInstance().fromString(new String(body, StandardCharsets.UTF_8), ValueRange.class);
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            responseBytes += bytes.length;
+            maxResponseBytes = Math.max(maxResponseBytes, bytes.length);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * "シート名!A3:G1002" 形式の範囲。終了行を省略した場合は endRow = 0
+     */
+    static final class A1Range {
+        final String sheetName;
+        final int startColumn;
+        final int startRow;
+        final int endColumn;
+        final int endRow;
+
+        private A1Range(String sheetName, int startColumn, int startRow, int endColumn, int endRow) {
+            this.sheetName = sheetName;
+            this.startColumn = startColumn;
+            this.startRow = startRow;
+            this.endColumn = endColumn;
+            this.endRow = endRow;
+        }
+
+        static A1Range parse(String a1Range) {
+            int bang = a1Range.lastIndexOf('!');
+            if (bang < 0) {
+                throw new IllegalArgumentException("Range without sheet name: " + a1Range);
+            }
+            String sheetName = a1Range.substring(0, bang);
+            String[] cells = a1Range.substring(bang + 1).split(":");
+            int[] start = parseCell(cells[0]);
+            int[] end = cells.length > 1 ? parseCell(cells[1]) : start;
+            return new A1Range(sheetName, start[0], Math.max(start[1], 1), end[0], end[1]);
+        }
+
+        private static int[] parseCell(String cell) {
+            int column = 0;
+            int i = 0;
+            while (i < cell.length() && Character.isLetter(cell.charAt(i))) {
+                column = column * 26 + (Character.toUpperCase(cell.charAt(i)) - 'A' + 1);
+                i++;
+            }
+            int row = i < cell.length() ? Integer.parseInt(cell.substring(i)) : 0;
+            return new int[] {column - 1, row};
+        }
+
+        static String columnName(int column) {
+            StringBuilder sb = new StringBuilder();
+            int n = column + 1;
+            while (n > 0) {
+                int rem = (n - 1) % 26;
+                sb.insert(0, (char) ('A' + rem));
+                n = (n - 1) / 26;
+            }
+            return sb.toString();
+        }
+
+        String startColumnName() {
+            return columnName(startColumn);
+        }
+
+        /**
+         * 行データからこの範囲の列だけを取り出す（末尾の空セルは除く）
+         */
+        List<Object> slice(List<Object> row) {
+            List<Object> result = new ArrayList<>();
+            for (int column = startColumn; column <= endColumn && column < row.size(); column++) {
+                result.add(row.get(column));
+            }
+            while (!result.isEmpty() && (result.get(result.size() - 1) == null
+                    || result.get(result.size() - 1).toString().isEmpty())) {
+                result.remove(result.size() - 1);
+            }
+            return result;
+        }
+
+        /**
+         * 範囲の開始列に合わせて行データを左詰めで配置する
+         */
+        List<List<Object>> place(List<List<Object>> rows) {
+            List<List<Object>> placed = new ArrayList<>();
+            for (List<Object> row : rows) {
+                List<Object> full = new ArrayList<>();
+                for (int i = 0; i < startColumn; i++) {
+                    full.add("");
+                }
+                full.addAll(row);
+                placed.add(full);
+            }
+            return placed;
+        }
+    }
+}
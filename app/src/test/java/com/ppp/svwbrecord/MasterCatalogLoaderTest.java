@@ -0,0 +1,68 @@
+package com.ppp.svwbrecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link MasterCatalogLoader} をスタブサーバーに対して動かし、マスターデータを1回の batchGet で読めることを確認する。
+ */
+public class MasterCatalogLoaderTest {
+
+    private static final String SPREADSHEET_ID = "test-spreadsheet";
+
+    private FakeSheetsServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSheetsServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void load_readsAllColumnsWithSingleBatchGet() throws Exception {
+        // A列: デッキ名、C列: プレイヤー名（途中に空白のセルがある）。E列は相手ランクの一覧ではない
+        server.putRows(MasterCatalogLoader.SHEET_NAME_FOR_LISTS, 1, Arrays.asList(
+                row("アグロエルフ", "", "プレイヤーA", "", "LEGEND"),
+                row("進化ロイヤル", "", "", "", "EPIC"),
+                row("秘術ウィッチ", "", "プレイヤーB")));
+        server.putRows(MasterCatalogLoader.SHEET_NAME_FOR_SORTING, 1, Arrays.asList(
+                row("秘術ウィッチ"),
+                row("アグロエルフ")));
+
+        MasterCatalog catalog = new MasterCatalogLoader(server.newSheetsClient(), SPREADSHEET_ID).load();
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_BATCH_GET));
+        assertEquals(Arrays.asList("プレイヤーA", "プレイヤーB"), catalog.getPlayerNames());
+        assertEquals(Arrays.asList("アグロエルフ", "進化ロイヤル", "秘術ウィッチ"), catalog.getDeckNames());
+        assertEquals(Arrays.asList("秘術ウィッチ", "アグロエルフ"), catalog.getDeckSortOrder());
+        // 相手ランクはシートから読まない
+        assertEquals(MasterCatalog.DEFAULT_OPPONENT_RANKS, catalog.getOpponentRanks());
+    }
+
+    @Test
+    public void load_leavesSortOrderEmptyWhenSortingSheetIsEmpty() throws Exception {
+        server.putRows(MasterCatalogLoader.SHEET_NAME_FOR_LISTS, 1, Arrays.asList(
+                row("アグロエルフ", "", "プレイヤーA")));
+
+        MasterCatalog catalog = new MasterCatalogLoader(server.newSheetsClient(), SPREADSHEET_ID).load();
+
+        assertEquals(MasterCatalog.DEFAULT_OPPONENT_RANKS, catalog.getOpponentRanks());
+        assertTrue(catalog.getDeckSortOrder().isEmpty());
+    }
+
+    private static List<Object> row(Object... values) {
+        return Arrays.asList(values);
+    }
+}
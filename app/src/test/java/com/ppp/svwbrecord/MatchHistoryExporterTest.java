@@ -0,0 +1,65 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link MatchHistoryExporter} がスプレッドシートと同じ項目を CSV / JSON として正しくエスケープして書き出すことを確認する。
+ */
+public class MatchHistoryExporterTest {
+
+    @Test
+    public void csv_writesHeaderAndQuotesSpecialCharacters() throws Exception {
+        StringWriter out = new StringWriter();
+        MatchHistoryExporter exporter = new MatchHistoryExporter(out, MatchHistoryExporter.Format.CSV);
+
+        exporter.begin();
+        exporter.write(match("06/01", "LEGEND", "ロイヤル", MatchRecord.TURN_FIRST, "エルフ", MatchRecord.RESULT_WIN));
+        exporter.write(match("06/02", "", "デッキ,\"改\"", MatchRecord.TURN_SECOND, "ネメシス", MatchRecord.RESULT_LOSS));
+        exporter.end();
+
+        assertEquals("\uFEFF日付,相手ランク,自分のデッキ,先攻/後攻,相手のデッキ,勝敗\r\n"
+                + "06/01,LEGEND,ロイヤル,先攻,エルフ,勝ち\r\n"
+                + "06/02,,\"デッキ,\"\"改\"\"\",後攻,ネメシス,負け\r\n", out.toString());
+        assertEquals(2, exporter.getCount());
+    }
+
+    @Test
+    public void json_writesArrayOfObjects() throws Exception {
+        StringWriter out = new StringWriter();
+        MatchHistoryExporter exporter = new MatchHistoryExporter(out, MatchHistoryExporter.Format.JSON);
+
+        exporter.begin();
+        exporter.write(match("06/01", "LEGEND", "ロイヤル", MatchRecord.TURN_FIRST, "エルフ", MatchRecord.RESULT_WIN));
+        exporter.write(match("06/02", "EPIC", "a\"b\\c", MatchRecord.TURN_SECOND, "x\ny", MatchRecord.RESULT_LOSS));
+        exporter.end();
+
+        assertEquals("[\n"
+                + "  {\"date\":\"06/01\",\"opponentRank\":\"LEGEND\",\"myDeck\":\"ロイヤル\",\"turn\":\"先攻\","
+                + "\"opponentDeck\":\"エルフ\",\"result\":\"勝ち\"},\n"
+                + "  {\"date\":\"06/02\",\"opponentRank\":\"EPIC\",\"myDeck\":\"a\\\"b\\\\c\",\"turn\":\"後攻\","
+                + "\"opponentDeck\":\"x\\ny\",\"result\":\"負け\"}\n"
+                + "]\n", out.toString());
+    }
+
+    @Test
+    public void json_emptyHistoryIsEmptyArray() throws Exception {
+        StringWriter out = new StringWriter();
+        MatchHistoryExporter exporter = new MatchHistoryExporter(out, MatchHistoryExporter.Format.JSON);
+
+        exporter.begin();
+        exporter.end();
+
+        assertEquals("[]\n", out.toString());
+    }
+
+    private static MatchRecord match(String date, String rank, String myDeck, String turn,
+                                     String opponentDeck, String result) {
+        return MatchRecord.fromRow(0, "プレイヤーA", 0L,
+                Arrays.asList(date, rank, myDeck, turn, opponentDeck, result), MatchRecord.NO_REMOTE_ROW);
+    }
+}
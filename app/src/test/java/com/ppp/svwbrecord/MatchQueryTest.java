@@ -0,0 +1,41 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link MatchQuery} が指定した条件だけを WHERE 句とその引数に変換することを確認する。
+ */
+public class MatchQueryTest {
+
+    @Test
+    public void emptyQuery_hasNoSelection() {
+        MatchQuery query = new MatchQuery();
+
+        assertNull(query.buildSelection());
+        assertEquals(0, query.buildSelectionArgs().length);
+        assertNull(query.buildLimit());
+        assertEquals("recorded_at DESC, _id DESC", query.buildOrderBy());
+    }
+
+    @Test
+    public void conditions_areJoinedWithArgumentsInOrder() {
+        MatchQuery query = new MatchQuery()
+                .sheetName("プレイヤーA")
+                .opponentDeck("アグロエルフ")
+                .turn(MatchRecord.TURN_SECOND)
+                .recordedBetween(100L, 200L)
+                .limit(50)
+                .oldestFirst();
+
+        assertEquals("sheet_name = ? AND opponent_deck = ? AND turn = ? AND recorded_at >= ? AND recorded_at < ?",
+                query.buildSelection());
+        assertEquals(Arrays.asList("プレイヤーA", "アグロエルフ", "後攻", "100", "200"),
+                Arrays.asList(query.buildSelectionArgs()));
+        assertEquals("50", query.buildLimit());
+        assertEquals("recorded_at ASC, _id ASC", query.buildOrderBy());
+    }
+}
@@ -0,0 +1,20 @@
+package com.ppp.svwbrecord;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 再試行の待ち時間を 0 にしてすぐに実行する executor。{@link RecordSyncEngine} のテストをすぐに終わらせるために使う。
+ */
+class NoDelayScheduledExecutor extends ScheduledThreadPoolExecutor {
+
+    NoDelayScheduledExecutor() {
+        super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return super.schedule(command, 0, unit);
+    }
+}
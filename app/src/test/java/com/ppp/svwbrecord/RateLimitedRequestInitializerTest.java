@@ -0,0 +1,84 @@
+package com.ppp.svwbrecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RateLimitedRequestInitializer} を通したクライアントをスタブサーバーに対して動かし、
+ * リクエストの送信ペースと 429 の応答への対応を確認する。
+ */
+public class RateLimitedRequestInitializerTest {
+
+    private static final String SPREADSHEET_ID = "test-spreadsheet";
+    private static final String SHEET_NAME = "プレイヤーA";
+
+    private FakeSheetsServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSheetsServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void requests_arePacedByTheLimiter() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1, 0);
+        SheetsApiRowWriter writer = createWriter(limiter);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            writer.writeRows(SHEET_NAME, rows(1));
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // 最初の1件の後は 50ms ごとに1件
+        assertTrue("elapsed=" + elapsedMs, elapsedMs >= 230);
+        assertEquals(6, limiter.getAcquiredCount());
+        assertEquals(6, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+    }
+
+    @Test
+    public void rateLimited_waitsForRetryAfterAndResends() throws Exception {
+        server.setRetryAfterSeconds(1);
+        server.enqueueFaults(FakeSheetsServer.Fault.RATE_LIMITED);
+        RateLimiter limiter = new RateLimiter(100, 10, 1);
+        RecordMetrics metrics = new RecordMetrics();
+        SheetsApiRowWriter writer = new SheetsApiRowWriter(server.newSheetsClient(
+                new RateLimitedRequestInitializer(null, limiter, RateLimiter.Lane.FOREGROUND, metrics)), SPREADSHEET_ID);
+
+        long started = System.nanoTime();
+        writer.writeRows(SHEET_NAME, rows(2));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue("elapsed=" + elapsedMs, elapsedMs >= 1000);
+        assertEquals(1, limiter.getRateLimitedCount());
+        // 呼び出し元には1回の呼び出しに見える送り直しも、計測値には再試行として残る
+        assertEquals(1, metrics.getRetryCount(RecordMetrics.Cause.RATE_LIMITED));
+        assertEquals(1, metrics.getSheetsCalls());
+        assertEquals(2, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        // 429 の応答では書き込まれていないので、送り直しても1回分だけ書き込まれる
+        assertEquals(SheetsApiRowWriter.FIRST_DATA_ROW - 1 + 2, server.getRows(SHEET_NAME).size());
+    }
+
+    private SheetsApiRowWriter createWriter(RateLimiter limiter) {
+        return new SheetsApiRowWriter(server.newSheetsClient(
+                new RateLimitedRequestInitializer(null, limiter, RateLimiter.Lane.FOREGROUND, null)), SPREADSHEET_ID);
+    }
+
+    private static List<List<Object>> rows(int count) {
+        return Collections.nCopies(count, Arrays.<Object>asList("06/01", "", "自分", "先攻", "相手", "勝ち"));
+    }
+}
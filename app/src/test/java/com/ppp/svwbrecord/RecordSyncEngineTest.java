@@ -0,0 +1,378 @@
+package com.ppp.svwbrecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RecordSyncEngine} をスタブサーバーに対して動かし、送信のまとめ方・再試行・再起動や再接続時の扱い・失敗時の扱いを確認する。
+ * 送信のスループットは {@link SeasonReplayHarness} のレポートで確認する。
+ */
+public class RecordSyncEngineTest {
+
+    private static final String SPREADSHEET_ID = "test-spreadsheet";
+    private static final String SHEET_NAME = "プレイヤーA";
+    private static final int CLIENT_TIMEOUT_MS = 300;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private FakeSheetsServer server;
+    private RecordOutbox outbox;
+    private RecordMetrics metrics;
+    private NoDelayScheduledExecutor executor;
+    private RecordingListener listener;
+    private RecordSyncEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSheetsServer();
+        server.start();
+        outbox = new RecordOutbox(temporaryFolder.newFile("outbox.journal"));
+        metrics = new RecordMetrics();
+        executor = new NoDelayScheduledExecutor();
+        listener = new RecordingListener();
+        engine = createEngine(executor, RetryPolicy.createDefault());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        outbox.close();
+        server.stop();
+    }
+
+    @Test
+    public void sync_batchesRecordsIntoAppends() throws Exception {
+        int recordCount = 200;
+        server.setLatency(20, 10);
+        appendRecords(recordCount);
+
+        listener.expectRecords(recordCount);
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(recordCount / RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE,
+                server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(0, outbox.getPendingCount());
+        assertSheetHasRecordsInOrder(recordCount);
+        assertEquals(1.0 / RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE, metrics.getSheetsCallsPerRecord(), 1e-9);
+        // 書き込まれた行番号は1回の書き込みごとに連続する
+        assertEquals(Arrays.asList(3, 23, 43, 63, 83, 103, 123, 143, 163, 183), listener.firstRows);
+    }
+
+    @Test
+    public void timeout_isRetriedAndWrittenOnce() throws Exception {
+        server.setTimeoutHangMs(CLIENT_TIMEOUT_MS * 3);
+        server.enqueueFaults(FakeSheetsServer.Endpoint.VALUES_APPEND,
+                FakeSheetsServer.Fault.TIMEOUT, FakeSheetsServer.Fault.TIMEOUT);
+        appendRecords(3);
+
+        listener.expectRecords(3);
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(3, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(2, metrics.getRetryCount(RecordMetrics.Cause.TIMEOUT));
+        assertEquals(0, outbox.getPendingCount());
+        assertSheetHasRecordsInOrder(3);
+    }
+
+    @Test
+    public void droppedResponse_isNotWrittenTwice() throws Exception {
+        server.enqueueFaults(FakeSheetsServer.Fault.DROP_RESPONSE);
+        appendRecords(3);
+
+        listener.expectRecords(3);
+        engine.requestSync();
+        listener.await();
+
+        // 応答が失われた書き込みは反映済みなので、ID の列を読んで再送しない
+        assertEquals(1, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(1, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_GET));
+        assertEquals(0, outbox.getPendingCount());
+        assertSheetHasRecordsInOrder(3);
+        assertEquals(Arrays.asList(3, 4, 5), listener.firstRows);
+    }
+
+    @Test
+    public void resume_skipsRecordsWrittenBeforeRestart() throws Exception {
+        appendRecords(2);
+        // 前回のプロセスが書き込んだ後、ACK する前に終了した
+        List<List<Object>> written = new ArrayList<>();
+        for (OutboxEntry entry : outbox.getPendingEntries()) {
+            written.add(entry.toRowData());
+        }
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, written);
+        outbox.append(SHEET_NAME, Arrays.asList("06/01", "", "自分2", "先攻", "相手", "勝ち"));
+
+        listener.expectRecords(3);
+        engine.resume();
+        listener.await();
+
+        assertEquals(1, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(0, outbox.getPendingCount());
+        assertSheetHasRecordsInOrder(3);
+    }
+
+    @Test
+    public void retriesExhausted_failAndResetBackoff() throws Exception {
+        server.setTimeoutHangMs(CLIENT_TIMEOUT_MS * 3);
+        server.enqueueFaults(FakeSheetsServer.Endpoint.VALUES_APPEND, FakeSheetsServer.Fault.TIMEOUT,
+                FakeSheetsServer.Fault.TIMEOUT, FakeSheetsServer.Fault.TIMEOUT);
+        appendRecords(2);
+        engine = createEngine(executor, new RetryPolicy(1, 10, 2, new Random(1)));
+
+        listener.expectFailure();
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(3, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(2, metrics.getRetryCount(RecordMetrics.Cause.TIMEOUT));
+        assertEquals(1, metrics.getFailureCount(RecordMetrics.Cause.TIMEOUT));
+        assertEquals(2, outbox.getPendingCount());
+        assertEquals(0, outbox.getFailedAttempts());
+    }
+
+    @Test
+    public void resume_waitsUntilPersistedRetryTime() throws Exception {
+        ScheduledExecutorService realExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            appendRecords(1);
+            outbox.saveRetryState(3, System.currentTimeMillis() + 300);
+            engine = createEngine(realExecutor, RetryPolicy.createDefault());
+
+            long started = System.nanoTime();
+            listener.expectRecords(1);
+            engine.resume();
+            listener.await();
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 250);
+            assertEquals(0, outbox.getFailedAttempts());
+            assertSheetHasRecordsInOrder(1);
+        } finally {
+            realExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void networkAvailable_sendsImmediatelyAndResetsBackoff() throws Exception {
+        ScheduledExecutorService realExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            appendRecords(1);
+            outbox.saveRetryState(6, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            engine = createEngine(realExecutor, RetryPolicy.createDefault());
+            engine.resume();
+
+            listener.expectRecords(1);
+            engine.onNetworkLost();
+            engine.onNetworkAvailable();
+            listener.await();
+
+            assertEquals(0, outbox.getFailedAttempts());
+            assertSheetHasRecordsInOrder(1);
+        } finally {
+            realExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void networkAvailable_withoutLoss_keepsPersistedBackoff() throws Exception {
+        ScheduledExecutorService realExecutor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            appendRecords(1);
+            long retryAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+            outbox.saveRetryState(6, retryAt);
+            engine = createEngine(realExecutor, RetryPolicy.createDefault());
+
+            // 再起動直後の登録時の通知や回線の切り替えでは、保存した再試行の予定を捨てない
+            engine.resume();
+            engine.onNetworkAvailable();
+            realExecutor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+            assertEquals(6, outbox.getFailedAttempts());
+            assertEquals(retryAt, outbox.getNextAttemptAtMillis());
+            assertEquals(0, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        } finally {
+            realExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rateLimited_isRetriedWithBackoff() throws Exception {
+        server.enqueueFaults(FakeSheetsServer.Fault.RATE_LIMITED);
+        appendRecords(2);
+
+        listener.expectRecords(2);
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(2, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(1, metrics.getRetryCount(RecordMetrics.Cause.RATE_LIMITED));
+        assertEquals(0, metrics.getFailureCount(RecordMetrics.Cause.API_ERROR));
+        assertEquals(0, outbox.getPendingCount());
+        assertSheetHasRecordsInOrder(2);
+    }
+
+    @Test
+    public void serverError_isRetriedWithBackoff() throws Exception {
+        server.enqueueFaults(FakeSheetsServer.Endpoint.VALUES_APPEND,
+                FakeSheetsServer.Fault.SERVER_ERROR, FakeSheetsServer.Fault.SERVER_ERROR);
+        appendRecords(2);
+
+        listener.expectRecords(2);
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(3, server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND));
+        assertEquals(2, metrics.getRetryCount(RecordMetrics.Cause.API_ERROR));
+        assertEquals(0, metrics.getFailureCount(RecordMetrics.Cause.API_ERROR));
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(0, outbox.getFailedAttempts());
+        assertSheetHasRecordsInOrder(2);
+    }
+
+    @Test
+    public void missingSheet_doesNotBlockOtherSheets() throws Exception {
+        String missingSheet = "プレイヤーB";
+        server.removeSheet(missingSheet);
+        // 古い記録から順に送るので、先に失敗するシートの記録を保存しておく
+        outbox.append(missingSheet, Arrays.asList("06/01", "", "自分", "先攻", "相手", "勝ち"));
+        appendRecords(2);
+
+        listener.expectRecords(2);
+        engine.requestSync();
+        listener.await();
+
+        assertEquals(Collections.singletonList(missingSheet), listener.failedSheets);
+        assertEquals(1, metrics.getFailureCount(RecordMetrics.Cause.API_ERROR));
+        assertSheetHasRecordsInOrder(2);
+        // 失敗したシートの記録は次の送信依頼まで残し、再試行の予定は立てない
+        List<OutboxEntry> pending = outbox.getPendingEntries();
+        assertEquals(1, pending.size());
+        assertEquals(missingSheet, pending.get(0).getSheetName());
+        assertEquals(0, outbox.getFailedAttempts());
+    }
+
+    @Test
+    public void runtimeException_failsAndKeepsRecords() throws Exception {
+        appendRecords(2);
+        engine = new RecordSyncEngine(outbox, () -> new SheetRowWriter() {
+            @Override
+            public int writeRows(String sheetName, List<List<Object>> rows) {
+                throw new IllegalStateException("Unexpected response");
+            }
+
+            @Override
+            public Map<Long, Integer> readWrittenRows(String sheetName, int afterRow) {
+                throw new IllegalStateException("Unexpected response");
+            }
+        }, executor, listener, RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE, metrics, RetryPolicy.createDefault());
+
+        listener.expectFailure();
+        engine.requestSync();
+        listener.await();
+
+        assertTrue(listener.lastFailure instanceof IllegalStateException);
+        assertEquals(1, metrics.getFailureCount(RecordMetrics.Cause.OTHER));
+        assertEquals(2, outbox.getPendingCount());
+        assertEquals(0, outbox.getFailedAttempts());
+    }
+
+    private RecordSyncEngine createEngine(ScheduledExecutorService executor, RetryPolicy retryPolicy) {
+        return new RecordSyncEngine(outbox,
+                () -> new SheetsApiRowWriter(server.newSheetsClient(CLIENT_TIMEOUT_MS), SPREADSHEET_ID),
+                executor, listener, RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE, metrics, retryPolicy);
+    }
+
+    private void appendRecords(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            outbox.append(SHEET_NAME, Arrays.asList("06/01", "", "自分" + i, "先攻", "相手", "勝ち"));
+        }
+    }
+
+    private void assertSheetHasRecordsInOrder(int count) {
+        List<List<Object>> rows = server.getRows(SHEET_NAME);
+        assertEquals(SheetsApiRowWriter.FIRST_DATA_ROW - 1 + count, rows.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("自分" + i, rows.get(SheetsApiRowWriter.FIRST_DATA_ROW - 1 + i).get(2));
+        }
+    }
+
+    private static class RecordingListener implements RecordSyncEngine.Listener {
+        final List<Integer> firstRows = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<String> failedSheets = Collections.synchronizedList(new ArrayList<String>());
+        private CountDownLatch latch;
+        private int remainingRecords;
+        private boolean expectFailure;
+        private Exception unexpectedFailure;
+        volatile Exception lastFailure;
+
+        synchronized void expectRecords(int count) {
+            remainingRecords = count;
+            expectFailure = false;
+            latch = new CountDownLatch(1);
+        }
+
+        synchronized void expectFailure() {
+            remainingRecords = -1;
+            expectFailure = true;
+            latch = new CountDownLatch(1);
+        }
+
+        void await() throws InterruptedException {
+            CountDownLatch current;
+            synchronized (this) {
+                current = latch;
+            }
+            assertTrue("Timed out waiting for the sync engine", current.await(30, TimeUnit.SECONDS));
+            synchronized (this) {
+                assertNull("Unexpected sync failure: " + unexpectedFailure, unexpectedFailure);
+            }
+        }
+
+        @Override
+        public synchronized void onRecordsSynced(List<OutboxEntry> entries, int firstRow) {
+            firstRows.add(firstRow);
+            remainingRecords -= entries.size();
+            if (!expectFailure && remainingRecords <= 0) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void onSheetFailed(String sheetName, IOException cause) {
+            failedSheets.add(sheetName);
+        }
+
+        @Override
+        public void onSyncDelayed(IOException cause, long delayMs) {
+        }
+
+        @Override
+        public synchronized void onSyncFailed(Exception cause) {
+            lastFailure = cause;
+            if (!expectFailure) {
+                // executor のスレッドで投げても伝わらないので、待っている側で検証する
+                unexpectedFailure = cause;
+            }
+            latch.countDown();
+        }
+    }
+}
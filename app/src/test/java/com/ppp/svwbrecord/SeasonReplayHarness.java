@@ -0,0 +1,379 @@
+package com.ppp.svwbrecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 1シーズン分の対戦を記録処理に流し込み、スタブサーバーまでの結果を検証するハーネス。
+ * 記録パネルと同じ方法で行データを作り（{@link MatchRecord#buildRow}）、
+ * 送信待ちキューへの保存・{@link RecordSyncEngine} による送信・{@link FakeSheetsServer} への書き込みまでを実際に動かす。
+ * 端末の対戦履歴（SQLite）への保存は Android が必要なので含めない。
+ *
+ * 対戦は連続した対戦のまとまり（セッション）ごとに記録し、一部のセッションでは通信できない状態にする。
+ * 同じ日に同じデッキ同士で続けて対戦し同じ結果になった場合のように、内容が同じ記録を続けて保存することもある。
+ * 保存した記録がそれぞれシートに1回ずつ（内容が同じ記録も別々に）、シートごとに保存した順で書き込まれたかを確認する。
+ * 記録ボタンの二重タップは記録パネルが保存の完了までボタンを無効にして防ぐので、ここでは扱わない。
+ */
+class SeasonReplayHarness {
+
+    private static final String SPREADSHEET_ID = "soak-spreadsheet";
+    private static final long SEASON_DAYS = 90;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final String[] DECKS = {
+            "アグロエルフ", "コントロールエルフ", "進化ロイヤル", "連携ロイヤル", "秘術ウィッチ", "ランプドラゴン",
+            "ナイトメア", "アミュレットビショップ", "機械ネメシス", "財宝ロイヤル", "自然エルフ", "土の印ウィッチ"
+    };
+
+    /**
+     * 流し込む対戦の規模と、通信障害の起こし方
+     */
+    static final class Scenario {
+        int matches = 20_000;
+        int players = 10;
+        long seed = 42;
+        // 1セッションの対戦数の上限。セッション内の対戦は間を空けずに記録する
+        int maxSessionMatches = 30;
+        // セッション間の待ち時間の上限
+        long maxSessionGapMs = 3;
+        // 通信できない状態で記録するセッションの割合と、その状態を続ける時間
+        double offlineSessionRate = 0.01;
+        long offlineMs = 1000;
+        // 直前と同じ内容の対戦を続けて記録する割合
+        double identicalMatchRate = 0.01;
+        long serverLatencyMs = 2;
+        long serverJitterMs = 3;
+        // 通信できる間に、応答を返さずに接続を切る割合（書き込みは反映される）
+        double droppedResponseRate = 0;
+        // 通常の応答より十分長くする（タイムアウトした書き込みが再送前の確認より後に反映されると重複するため）
+        int clientTimeoutMs = 1000;
+        long drainTimeoutMs = TimeUnit.MINUTES.toMillis(5);
+    }
+
+    /**
+     * 1回の実行結果
+     */
+    static final class Report {
+        int taps;
+        int committed;
+        int identicalMatches;
+        int offlineSessions;
+        long elapsedMs;
+        long tapToLocalP50Ms;
+        long tapToLocalP99Ms;
+        long tapToRemoteP50Ms;
+        long tapToRemoteP99Ms;
+        long peakHeapBytes;
+        int appendRequests;
+        int syncFailures;
+        int missing;
+        int duplicated;
+        boolean inOrder;
+        String metricsReport;
+
+        double throughputPerSecond() {
+            return committed * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        /** 保存した記録がすべて1回ずつ、保存した順にシートに書き込まれた */
+        boolean isExactlyOnce() {
+            return missing == 0 && duplicated == 0 && inOrder;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "season replay: %d taps (%d identical matches), %d committed, %d offline sessions%n"
+                            + "  throughput: %.0f records/s (%d ms)%n"
+                            + "  tap->local commit: p50=%dms p99=%dms%n"
+                            + "  tap->remote ack:   p50=%dms p99=%dms%n"
+                            + "  peak heap: %.1f MiB%n"
+                            + "  append requests: %d, sync failures: %d%n"
+                            + "  exactly once: %s (missing=%d, duplicated=%d, inOrder=%s)",
+                    taps, identicalMatches, committed, offlineSessions,
+                    throughputPerSecond(), elapsedMs,
+                    tapToLocalP50Ms, tapToLocalP99Ms,
+                    tapToRemoteP50Ms, tapToRemoteP99Ms,
+                    peakHeapBytes / (1024.0 * 1024.0),
+                    appendRequests, syncFailures,
+                    isExactlyOnce(), missing, duplicated, inOrder);
+        }
+    }
+
+    private final Scenario scenario;
+    private final File workDir;
+
+    SeasonReplayHarness(Scenario scenario, File workDir) {
+        this.scenario = scenario;
+        this.workDir = workDir;
+    }
+
+    Report run() throws Exception {
+        FakeSheetsServer server = new FakeSheetsServer();
+        server.start();
+        RecordOutbox outbox = new RecordOutbox(new File(workDir, "soak_outbox.journal"));
+        NoDelayScheduledExecutor executor = new NoDelayScheduledExecutor();
+        HeapSampler heapSampler = new HeapSampler();
+        try {
+            return replay(server, outbox, executor, heapSampler);
+        } finally {
+            heapSampler.stop();
+            executor.shutdownNow();
+            outbox.close();
+            server.stop();
+        }
+    }
+
+    private Report replay(FakeSheetsServer server, RecordOutbox outbox, NoDelayScheduledExecutor executor,
+                          HeapSampler heapSampler) throws Exception {
+        Random random = new Random(scenario.seed);
+        RecordMetrics metrics = new RecordMetrics();
+        AtomicInteger syncFailures = new AtomicInteger();
+        RecordSyncEngine engine = new RecordSyncEngine(outbox,
+                () -> new SheetsApiRowWriter(server.newSheetsClient(scenario.clientTimeoutMs), SPREADSHEET_ID),
+                executor, new RecordSyncEngine.Listener() {
+                    @Override
+                    public void onRecordsSynced(List<OutboxEntry> entries, int firstRow) {
+                    }
+
+                    @Override
+                    public void onSheetFailed(String sheetName, IOException cause) {
+                        syncFailures.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onSyncDelayed(IOException cause, long delayMs) {
+                    }
+
+                    @Override
+                    public void onSyncFailed(Exception cause) {
+                        syncFailures.incrementAndGet();
+                    }
+                }, RecordSyncEngine.DEFAULT_MAX_BATCH_SIZE, metrics);
+        server.setLatency(scenario.serverLatencyMs, scenario.serverJitterMs);
+        server.setTimeoutHangMs(scenario.clientTimeoutMs * 3 / 2);
+        setOnline(server, true);
+
+        Report report = new Report();
+        // シート名 -> 保存した記録（保存順）
+        Map<String, List<OutboxEntry>> committed = new HashMap<>();
+        long seasonStart = System.currentTimeMillis() - SEASON_DAYS * DAY_MS;
+        heapSampler.start();
+        long started = System.currentTimeMillis();
+
+        int match = 0;
+        while (match < scenario.matches) {
+            String sheet = "プレイヤー" + (1 + random.nextInt(scenario.players));
+            String myDeck = DECKS[random.nextInt(3)];
+            int sessionMatches = Math.min(scenario.matches - match, 1 + random.nextInt(scenario.maxSessionMatches));
+            boolean offline = random.nextDouble() < scenario.offlineSessionRate;
+            if (offline) {
+                report.offlineSessions++;
+                setOnline(server, false);
+                engine.onNetworkLost();
+            }
+            for (int i = 0; i < sessionMatches; i++, match++) {
+                long playedAt = seasonStart + (long) match * SEASON_DAYS * DAY_MS / scenario.matches;
+                List<Object> row = MatchRecord.buildRow(playedAt,
+                        MasterCatalog.DEFAULT_OPPONENT_RANKS.get(random.nextInt(4)),
+                        myDeck,
+                        random.nextBoolean() ? MatchRecord.TURN_FIRST : MatchRecord.TURN_SECOND,
+                        DECKS[random.nextInt(DECKS.length)],
+                        random.nextBoolean() ? MatchRecord.RESULT_WIN : MatchRecord.RESULT_LOSS);
+                long tappedAt = System.currentTimeMillis();
+                commit(outbox, metrics, engine, committed, sheet, row, tappedAt);
+                report.taps++;
+                if (random.nextDouble() < scenario.identicalMatchRate) {
+                    commit(outbox, metrics, engine, committed, sheet, row, System.currentTimeMillis());
+                    report.taps++;
+                    report.identicalMatches++;
+                }
+            }
+            if (offline) {
+                Thread.sleep(scenario.offlineMs);
+                setOnline(server, true);
+                // 端末がネットワークに再接続したときと同じく、待機中の再試行を待たずに送信する
+                engine.onNetworkAvailable();
+            }
+            if (scenario.maxSessionGapMs > 0) {
+                Thread.sleep(random.nextInt((int) scenario.maxSessionGapMs + 1));
+            }
+        }
+
+        awaitDrained(outbox, engine, executor);
+        report.elapsedMs = System.currentTimeMillis() - started;
+        report.peakHeapBytes = heapSampler.stop();
+
+        for (List<OutboxEntry> entries : committed.values()) {
+            report.committed += entries.size();
+        }
+        report.tapToLocalP50Ms = metrics.getTapToLocalCommitPercentileMs(50);
+        report.tapToLocalP99Ms = metrics.getTapToLocalCommitPercentileMs(99);
+        report.tapToRemoteP50Ms = metrics.getTapToRemoteAckPercentileMs(50);
+        report.tapToRemoteP99Ms = metrics.getTapToRemoteAckPercentileMs(99);
+        report.appendRequests = server.getRequestCount(FakeSheetsServer.Endpoint.VALUES_APPEND);
+        report.syncFailures = syncFailures.get();
+        report.metricsReport = metrics.formatReport(System.currentTimeMillis());
+        verify(server, committed, report);
+        return report;
+    }
+
+    /**
+     * RecordPipeline.submit() と同じ手順で送信待ちキューに保存し、送信を依頼する
+     */
+    private static void commit(RecordOutbox outbox, RecordMetrics metrics, RecordSyncEngine engine,
+                               Map<String, List<OutboxEntry>> committed, String sheet, List<Object> rowData,
+                               long tappedAt) throws IOException {
+        List<String> row = new ArrayList<>();
+        for (Object value : rowData) {
+            row.add(value != null ? value.toString() : "");
+        }
+        OutboxEntry entry = outbox.append(sheet, row);
+        metrics.onCommitted(entry, tappedAt, System.currentTimeMillis(), outbox.getPendingCount());
+        engine.requestSync();
+
+        List<OutboxEntry> sheetEntries = committed.get(sheet);
+        if (sheetEntries == null) {
+            sheetEntries = new ArrayList<>();
+            committed.put(sheet, sheetEntries);
+        }
+        sheetEntries.add(entry);
+    }
+
+    /**
+     * 通信できない間は全てのリクエストをタイムアウトさせる（書き込みは反映されない）
+     */
+    private void setOnline(FakeSheetsServer server, boolean online) {
+        if (!online) {
+            server.setRandomFault(FakeSheetsServer.Fault.TIMEOUT, 1.0, scenario.seed);
+        } else if (scenario.droppedResponseRate > 0) {
+            server.setRandomFault(FakeSheetsServer.Fault.DROP_RESPONSE, scenario.droppedResponseRate, scenario.seed);
+        } else {
+            server.setRandomFault(null, 0, scenario.seed);
+        }
+    }
+
+    /**
+     * 送信待ちがなくなるまで送信を依頼し続ける（全ての再試行に失敗した記録は次の依頼で再送される）
+     */
+    private void awaitDrained(RecordOutbox outbox, RecordSyncEngine engine, NoDelayScheduledExecutor executor)
+            throws Exception {
+        long deadline = System.currentTimeMillis() + scenario.drainTimeoutMs;
+        while (outbox.getPendingCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Outbox did not drain: " + outbox.getPendingCount() + " record(s) left");
+            }
+            engine.requestSync();
+            Thread.sleep(50);
+        }
+        // 実行中の送信が終わるのを待つ
+        executor.submit(() -> { }).get(scenario.drainTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * シートの内容を保存した記録と突き合わせる。
+     * 同じ内容の記録を区別できるよう、記録の列の後ろに書き込まれた ID で数え、順序は ID と記録の列の両方で比べる
+     */
+    private static void verify(FakeSheetsServer server, Map<String, List<OutboxEntry>> committed, Report report) {
+        report.inOrder = true;
+        for (Map.Entry<String, List<OutboxEntry>> sheet : committed.entrySet()) {
+            List<Long> expectedIds = new ArrayList<>();
+            List<List<String>> expectedRows = new ArrayList<>();
+            for (OutboxEntry entry : sheet.getValue()) {
+                expectedIds.add(entry.getId());
+                expectedRows.add(entry.getRow());
+            }
+            List<Long> actualIds = new ArrayList<>();
+            List<List<String>> actualRows = new ArrayList<>();
+            List<List<Object>> rows = server.getRows(sheet.getKey());
+            for (int i = SheetsApiRowWriter.FIRST_DATA_ROW - 1; i < rows.size(); i++) {
+                List<Object> values = rows.get(i);
+                List<String> row = new ArrayList<>();
+                for (int column = 0; column < MatchRecord.COLUMN_COUNT && column < values.size(); column++) {
+                    row.add(values.get(column).toString());
+                }
+                actualRows.add(row);
+                actualIds.add(values.size() > MatchRecord.COLUMN_COUNT
+                        ? SheetsApiRowWriter.parseId(values.subList(MatchRecord.COLUMN_COUNT, values.size())) : -1L);
+            }
+
+            Map<Long, Integer> balance = new HashMap<>();
+            for (long id : expectedIds) {
+                Integer count = balance.get(id);
+                balance.put(id, count != null ? count + 1 : 1);
+            }
+            for (long id : actualIds) {
+                Integer count = balance.get(id);
+                balance.put(id, count != null ? count - 1 : -1);
+            }
+            for (int count : balance.values()) {
+                if (count > 0) {
+                    report.missing += count;
+                } else {
+                    report.duplicated -= count;
+                }
+            }
+            report.inOrder &= expectedIds.equals(actualIds) && expectedRows.equals(actualRows);
+        }
+    }
+
+    /**
+     * ヒープの使用量を一定間隔で読み、最大値を記録する
+     */
+    private static final class HeapSampler implements Runnable {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicLong peakBytes = new AtomicLong();
+        private Thread thread;
+
+        void start() {
+            System.gc();
+            running.set(true);
+            thread = new Thread(this, "soak-heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                sample();
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 計測を止め、それまでの最大値を返す
+         */
+        long stop() {
+            if (running.getAndSet(false)) {
+                sample();
+                thread.interrupt();
+            }
+            return peakBytes.get();
+        }
+
+        private void sample() {
+            long used = memory.getHeapMemoryUsage().getUsed();
+            long peak;
+            do {
+                peak = peakBytes.get();
+            } while (used > peak && !peakBytes.compareAndSet(peak, used));
+        }
+    }
+}
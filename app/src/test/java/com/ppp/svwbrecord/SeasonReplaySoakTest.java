@@ -0,0 +1,70 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SeasonReplayHarness} で対戦を記録処理に流し込む。
+ * 通常の単体テストでは少ない件数で確認だけを行い、1シーズン分（既定で2万件、10人）の長時間テストは
+ * -Dsoak=true（Gradle では -Psoak）を付けたときだけ実行する。件数は -Dsoak.matches=N で変えられる。
+ * 送信処理を変更したときは、長時間テストが出力するスループット・遅延・ヒープを前後で比べる。
+ */
+public class SeasonReplaySoakTest {
+
+    private static final boolean SOAK = Boolean.getBoolean("soak");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shortReplay_deliversEveryRecordExactlyOnce() throws Exception {
+        SeasonReplayHarness.Scenario scenario = new SeasonReplayHarness.Scenario();
+        scenario.matches = 300;
+        scenario.offlineSessionRate = 0.1;
+        scenario.identicalMatchRate = 0.05;
+
+        SeasonReplayHarness.Report report = new SeasonReplayHarness(scenario, temporaryFolder.newFolder()).run();
+
+        assertEquals(report.taps, report.committed);
+        assertTrue(report.toString(), report.isExactlyOnce());
+    }
+
+    @Test
+    public void seasonReplay_deliversEveryRecordExactlyOnce() throws Exception {
+        Assume.assumeTrue("season replay runs only with -Dsoak=true", SOAK);
+        SeasonReplayHarness.Scenario scenario = new SeasonReplayHarness.Scenario();
+        scenario.matches = Integer.getInteger("soak.matches", scenario.matches);
+
+        SeasonReplayHarness.Report report = new SeasonReplayHarness(scenario, temporaryFolder.newFolder()).run();
+
+        System.out.println(report);
+        System.out.println(report.metricsReport);
+        assertTrue("expected offline periods in the replay", report.offlineSessions > 0);
+        assertTrue("expected identical matches in the replay", report.identicalMatches > 0);
+        assertEquals(report.taps, report.committed);
+        assertTrue(report.toString(), report.isExactlyOnce());
+    }
+
+    /**
+     * 書き込みが反映された後に応答が失われると、送信側には成否が分からない。
+     * 再送の前にシートの ID の列を読んで確かめるので、記録は失われず、重複もしない。
+     */
+    @Test
+    public void droppedResponses_deliverEveryRecordExactlyOnce() throws Exception {
+        Assume.assumeTrue("season replay runs only with -Dsoak=true", SOAK);
+        SeasonReplayHarness.Scenario scenario = new SeasonReplayHarness.Scenario();
+        scenario.matches = 2_000;
+        scenario.offlineSessionRate = 0;
+        scenario.droppedResponseRate = 0.02;
+
+        SeasonReplayHarness.Report report = new SeasonReplayHarness(scenario, temporaryFolder.newFolder()).run();
+
+        System.out.println(report);
+        assertEquals(0, report.missing);
+        assertTrue(report.toString(), report.isExactlyOnce());
+    }
+}
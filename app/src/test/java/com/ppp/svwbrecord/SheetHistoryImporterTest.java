@@ -0,0 +1,186 @@
+package com.ppp.svwbrecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SheetHistoryImporter} をスタブサーバーに対して動かし、
+ * シートの行数に関係なく1回のリクエストと1回の保存で扱う行数が一定であること、
+ * 中断してもチェックポイントから重複なく再開できることを確認する。
+ */
+public class SheetHistoryImporterTest {
+
+    private static final String SPREADSHEET_ID = "test-spreadsheet";
+    private static final String SHEET_NAME = "プレイヤーA";
+    private static final int WINDOW_ROWS = 1000;
+
+    private FakeSheetsServer server;
+    private SheetHistoryImporter importer;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSheetsServer();
+        server.start();
+        importer = new SheetHistoryImporter(new SheetsApiRowReader(server.newSheetsClient(), SPREADSHEET_ID), WINDOW_ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void importSheet_readsFixedWindowsWithConstantPeak() throws Exception {
+        RecordingSink small = importRows(5_000);
+        long smallSheetPeakBytes = server.getMaxResponseBytes();
+        RecordingSink large = importRows(50_000);
+        long largeSheetPeakBytes = server.getMaxResponseBytes();
+
+        assertEquals(50_000, large.remoteRows.size());
+        assertEquals(SheetsApiRowWriter.FIRST_DATA_ROW + 50_000, large.lastNextRow);
+        // 50ウィンドウ + 終端を確認する空のウィンドウ
+        assertEquals(51, server.getRequestCount());
+        // 1回の保存で渡される行数と1回のレスポンスのサイズは、シートの行数が10倍でも変わらない
+        assertEquals(WINDOW_ROWS, small.maxWindowSize);
+        assertEquals(WINDOW_ROWS, large.maxWindowSize);
+        assertTrue("small=" + smallSheetPeakBytes + " large=" + largeSheetPeakBytes,
+                Math.abs(largeSheetPeakBytes - smallSheetPeakBytes) <= 16);
+    }
+
+    @Test
+    public void importSheet_resumesFromCheckpointWithoutDuplicates() throws Exception {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(3_500));
+        RecordingSink sink = new RecordingSink();
+        sink.failAfterWindows = 2;
+
+        try {
+            importer.importSheet(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, sink, null);
+            fail("Expected the sink to fail");
+        } catch (IOException expected) {
+            // 2ウィンドウ分は保存済み
+        }
+        assertEquals(2 * WINDOW_ROWS, sink.remoteRows.size());
+
+        sink.failAfterWindows = -1;
+        int nextRow = importer.importSheet(SHEET_NAME, sink.lastNextRow, sink, null);
+
+        assertEquals(3_500, sink.remoteRows.size());
+        assertEquals(SheetsApiRowWriter.FIRST_DATA_ROW + 3_500, nextRow);
+    }
+
+    @Test
+    public void importSheet_fromCursorReadsOnlyNewRows() throws Exception {
+        RecordingSink sink = importRows(5_000);
+        int cursor = sink.lastNextRow;
+
+        // 追加がなければ空の範囲を1回読むだけ
+        server.resetCounters();
+        assertEquals(cursor, importer.importSheet(SHEET_NAME, cursor, sink, null));
+        assertEquals(1, server.getRequestCount());
+        long idleBytes = server.getResponseBytes();
+
+        // 他の端末が追加した行だけを読む
+        server.putRows(SHEET_NAME, cursor, generateRows(30));
+        server.resetCounters();
+        int nextRow = importer.importSheet(SHEET_NAME, cursor, sink, null);
+
+        assertEquals(cursor + 30, nextRow);
+        assertEquals(5_030, sink.remoteRows.size());
+        assertEquals(2, server.getRequestCount());
+        long perRowBytes = (server.getResponseBytes() - 2 * idleBytes) / 30;
+        assertTrue("bytes=" + server.getResponseBytes(), perRowBytes > 0 && perRowBytes < 200);
+    }
+
+    @Test
+    public void importSheet_skipsBlankRowsAndReportsProgress() throws Exception {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(10));
+        server.putRows(SHEET_NAME, 20, generateRows(5));
+        SheetHistoryImporter smallWindows = new SheetHistoryImporter(
+                new SheetsApiRowReader(server.newSheetsClient(), SPREADSHEET_ID), 8);
+        RecordingSink sink = new RecordingSink();
+        List<Integer> progress = new ArrayList<>();
+
+        int nextRow = smallWindows.importSheet(SHEET_NAME, 1, sink,
+                (sheet, importedRows, next) -> progress.add(importedRows));
+
+        assertEquals(15, sink.remoteRows.size());
+        assertFalse(sink.remoteRows.contains(13));
+        assertTrue(sink.remoteRows.contains(20));
+        assertEquals(25, nextRow);
+        assertEquals(Arrays.asList(8, 10, 11, 15), progress);
+    }
+
+    @Test
+    public void estimateRecordedAt_usesLatestPastDate() {
+        long now = millis(2026, 10, 18);
+
+        assertEquals(millis(2026, 6, 1), SheetHistoryImporter.estimateRecordedAt("06/01", now));
+        assertEquals(millis(2025, 12, 31), SheetHistoryImporter.estimateRecordedAt("12/31", now));
+        assertEquals(millis(2024, 12, 31), SheetHistoryImporter.estimateRecordedAt("2024/12/31", now));
+        assertEquals(0L, SheetHistoryImporter.estimateRecordedAt("", now));
+        assertEquals(0L, SheetHistoryImporter.estimateRecordedAt("13/01", now));
+    }
+
+    private RecordingSink importRows(int count) throws IOException {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(count));
+        server.resetCounters();
+        RecordingSink sink = new RecordingSink();
+        importer.importSheet(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, sink, null);
+        return sink;
+    }
+
+    /**
+     * 受け取った行番号だけを保持するシンク（記録そのものは保持しない）
+     */
+    private static final class RecordingSink implements SheetHistoryImporter.Sink {
+        final Set<Integer> remoteRows = new HashSet<>();
+        int maxWindowSize;
+        int lastNextRow;
+        int failAfterWindows = -1;
+        int windows;
+
+        @Override
+        public void commitWindow(String sheetName, List<MatchRecord> records, int nextRow) throws IOException {
+            if (failAfterWindows >= 0 && windows >= failAfterWindows) {
+                throw new IOException("Simulated failure");
+            }
+            windows++;
+            maxWindowSize = Math.max(maxWindowSize, records.size());
+            for (MatchRecord record : records) {
+                assertTrue("Duplicate row " + record.getRemoteRow(), remoteRows.add(record.getRemoteRow()));
+            }
+            lastNextRow = nextRow;
+        }
+    }
+
+    private static long millis(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * すべての行が同じバイト数になる行データを作る
+     */
+    private static List<List<Object>> generateRows(int count) {
+        List<List<Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new ArrayList<Object>(Arrays.asList(String.format("05/%02d", i % 28 + 1), "LEGEND",
+                    String.format("デッキ%02d", i % 30), i % 2 == 0 ? "先攻" : "後攻",
+                    String.format("デッキ%02d", i % 17), i % 3 == 0 ? "負け" : "勝ち")));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,131 @@
+package com.ppp.svwbrecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SheetsApiRowWriter} をスタブサーバーに対して動かし、
+ * 記録1件あたりのリクエスト数と通信量がシートの行数に依存しないこと、再送前の確認で記録の ID を読めることを確認する。
+ */
+public class SheetsApiRowWriterTest {
+
+    private static final String SPREADSHEET_ID = "test-spreadsheet";
+    private static final String SHEET_NAME = "プレイヤーA";
+
+    private FakeSheetsServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSheetsServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void append_usesSingleRequestWithFlatPayload() throws Exception {
+        SheetsApiRowWriter writer = new SheetsApiRowWriter(server.newSheetsClient(), SPREADSHEET_ID);
+
+        long smallSheetBytes = measureSingleWrite(writer, 10);
+        int smallSheetRequests = server.getRequestCount();
+        long largeSheetBytes = measureSingleWrite(writer, 10_000);
+        int largeSheetRequests = server.getRequestCount();
+
+        assertEquals(1, smallSheetRequests);
+        assertEquals(1, largeSheetRequests);
+        // 行番号の桁数の違い以外は同じサイズになる
+        assertTrue("small=" + smallSheetBytes + " large=" + largeSheetBytes,
+                Math.abs(largeSheetBytes - smallSheetBytes) <= 16);
+    }
+
+    @Test
+    public void readThenUpdate_payloadGrowsWithSheet() throws Exception {
+        SheetsApiRowWriter writer = new SheetsApiRowWriter(
+                server.newSheetsClient(), SPREADSHEET_ID, SheetsApiRowWriter.WriteMode.READ_THEN_UPDATE);
+
+        long smallSheetBytes = measureSingleWrite(writer, 10);
+        long largeSheetBytes = measureSingleWrite(writer, 10_000);
+
+        assertEquals(2, server.getRequestCount());
+        assertTrue("small=" + smallSheetBytes + " large=" + largeSheetBytes,
+                largeSheetBytes > smallSheetBytes * 100);
+    }
+
+    @Test
+    public void append_writesAfterExistingRowsAndReportsRow() throws Exception {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(5));
+        SheetsApiRowWriter writer = new SheetsApiRowWriter(server.newSheetsClient(), SPREADSHEET_ID);
+
+        List<List<Object>> rows = Arrays.asList(
+                row("06/01", "LEGEND", "自分", "先攻", "相手", "勝ち"),
+                row("06/01", "EPIC", "自分", "後攻", "相手", "負け"));
+        int firstRow = writer.writeRows(SHEET_NAME, rows);
+
+        List<List<Object>> sheet = server.getRows(SHEET_NAME);
+        assertEquals(8, firstRow);
+        assertEquals(9, sheet.size());
+        assertEquals("勝ち", sheet.get(7).get(5));
+        assertEquals("負け", sheet.get(8).get(5));
+    }
+
+    @Test
+    public void readWrittenRows_readsIdColumnAfterRow() throws Exception {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(5));
+        SheetsApiRowWriter writer = new SheetsApiRowWriter(server.newSheetsClient(), SPREADSHEET_ID);
+        writer.writeRows(SHEET_NAME, Arrays.asList(
+                row("06/01", "LEGEND", "自分", "先攻", "相手", "勝ち", "1001"),
+                row("06/01", "EPIC", "自分", "後攻", "相手", "負け", "1002")));
+
+        Map<Long, Integer> all = writer.readWrittenRows(SHEET_NAME, 0);
+        Map<Long, Integer> tail = writer.readWrittenRows(SHEET_NAME, 8);
+
+        // ID のない行（5行）は含まない
+        assertEquals(2, all.size());
+        assertEquals(Integer.valueOf(8), all.get(1001L));
+        assertEquals(Integer.valueOf(9), all.get(1002L));
+        assertEquals(Collections.singletonMap(1002L, 9), tail);
+    }
+
+    @Test
+    public void parseFirstRow_readsRowFromA1Range() {
+        assertEquals(12, SheetsApiRowWriter.parseFirstRow("Sheet!A12:F13"));
+        assertEquals(3, SheetsApiRowWriter.parseFirstRow("'a!b'!A3"));
+        assertEquals(-1, SheetsApiRowWriter.parseFirstRow("Sheet!A:F"));
+        assertEquals(-1, SheetsApiRowWriter.parseFirstRow(null));
+    }
+
+    /**
+     * 指定した行数のシートを用意し、1件書き込んだときの通信量を返す
+     */
+    private long measureSingleWrite(SheetsApiRowWriter writer, int existingRows) throws Exception {
+        server.putRows(SHEET_NAME, SheetsApiRowWriter.FIRST_DATA_ROW, generateRows(existingRows));
+        server.resetCounters();
+        writer.writeRows(SHEET_NAME, Collections.singletonList(row("06/01", "LEGEND", "自分", "先攻", "相手", "勝ち")));
+        return server.getRequestBytes() + server.getResponseBytes();
+    }
+
+    private static List<List<Object>> generateRows(int count) {
+        List<List<Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(row("05/" + (i % 28 + 1), "LEGEND", "デッキ" + (i % 30), i % 2 == 0 ? "先攻" : "後攻",
+                    "デッキ" + (i % 17), i % 3 == 0 ? "負け" : "勝ち"));
+        }
+        return rows;
+    }
+
+    private static List<Object> row(Object... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+}
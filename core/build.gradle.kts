@@ -0,0 +1,25 @@
+// Android に依存しないロジック（デッキの並び順、送信待ちキュー、集計など）を JVM 上でテスト・計測するモジュール
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :core:jmh で実行し、結果は core/build/results/jmh/results.json に書き出す
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+    // -Pjmh.includes=DeckOrdering のように一部のベンチマークだけを実行できる
+    project.findProperty("jmh.includes")?.let { includes.set(listOf(it.toString())) }
+}
@@ -0,0 +1,92 @@
+package com.ppp.svwbrecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ベンチマーク用の再現可能なデータ。実際のシートに近い規模（デッキ300種、対戦5万件）と偏りを持たせる。
+ */
+final class BenchmarkFixtures {
+
+    static final int DECK_COUNT = 300;
+    static final int MATCH_COUNT = 50_000;
+    static final long SEED = 42;
+
+    private static final String[] CLASSES = {"エルフ", "ロイヤル", "ウィッチ", "ドラゴン", "ナイトメア", "ビショップ", "ネメシス"};
+    private static final String[] ARCHETYPES = {
+            "アグロ", "ミッドレンジ", "コントロール", "ランプ", "進化", "秘術",
+            "機械", "自然", "財宝", "連携", "土の印", "アミュレット"
+    };
+    private static final List<String> PLAYERS = Arrays.asList("プレイヤーA", "プレイヤーB", "プレイヤーC", "プレイヤーD");
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    static final long NOW_MS = 1_760_000_000_000L;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 「アグロエルフ」「ランプドラゴン2」のような重複しないデッキ名
+     */
+    static List<String> deckNames(int count) {
+        List<String> names = new ArrayList<>(count);
+        int base = CLASSES.length * ARCHETYPES.length;
+        for (int i = 0; i < count; i++) {
+            String name = ARCHETYPES[i % ARCHETYPES.length] + CLASSES[(i / ARCHETYPES.length) % CLASSES.length];
+            names.add(i < base ? name : name + (i / base + 1));
+        }
+        return names;
+    }
+
+    /**
+     * 「デッキ別戦績」シートの並び順。新しいデッキは並び順に載っていないことがあるので、5% を除く。
+     */
+    static List<String> sortOrder(List<String> deckNames, Random random) {
+        List<String> order = new ArrayList<>(deckNames);
+        Collections.shuffle(order, random);
+        return new ArrayList<>(order.subList(0, order.size() * 95 / 100));
+    }
+
+    /**
+     * シートから読んだ形の行データ（日付、相手ランク、自分のデッキ、先攻/後攻、相手のデッキ、勝敗）。
+     * 自分のデッキは少数に偏り、相手のデッキは環境上位ほど多く当たるようにする。
+     */
+    static List<List<Object>> rows(int count, List<String> deckNames, Random random) {
+        List<String> ranks = MasterCatalog.DEFAULT_OPPONENT_RANKS;
+        List<List<Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int day = 180 - i * 180 / count;
+            String date = String.format("%02d/%02d", 1 + (day / 28) % 12, 1 + day % 28);
+            String myDeck = deckNames.get(random.nextInt(12));
+            double skew = random.nextDouble();
+            String opponentDeck = deckNames.get((int) (skew * skew * skew * deckNames.size()));
+            rows.add(Arrays.<Object>asList(
+                    date,
+                    random.nextInt(4) == 0 ? "" : ranks.get(random.nextInt(ranks.size())),
+                    myDeck,
+                    random.nextBoolean() ? MatchRecord.TURN_FIRST : MatchRecord.TURN_SECOND,
+                    opponentDeck,
+                    random.nextInt(100) < 52 ? MatchRecord.RESULT_WIN : MatchRecord.RESULT_LOSS));
+        }
+        return rows;
+    }
+
+    /**
+     * {@link #rows} を直近180日に分布させた記録にする
+     */
+    static List<MatchRecord> matches(List<List<Object>> rows, Random random) {
+        List<MatchRecord> records = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            String sheet = PLAYERS.get(random.nextInt(PLAYERS.size()));
+            long recordedAt = NOW_MS - (long) (rows.size() - i) * 180 * DAY_MS / rows.size();
+            records.add(MatchRecord.fromRow(i + 1, sheet, recordedAt, rows.get(i), MatchRecord.NO_REMOTE_ROW));
+        }
+        return records;
+    }
+
+    static String player(int index) {
+        return PLAYERS.get(index % PLAYERS.size());
+    }
+}
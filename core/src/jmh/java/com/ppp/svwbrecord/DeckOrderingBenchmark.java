@@ -0,0 +1,61 @@
+package com.ppp.svwbrecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * デッキ一覧の並べ替え（OverlayService.loadDeckNames() と MasterCatalogRepository が行う処理）。
+ * 旧方式（比較のたびに List.indexOf）を基準として並べて計測する。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DeckOrderingBenchmark {
+
+    private List<String> decks;
+    private List<String> sortOrder;
+    private DeckOrdering ordering;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        decks = new ArrayList<>(BenchmarkFixtures.deckNames(BenchmarkFixtures.DECK_COUNT));
+        sortOrder = BenchmarkFixtures.sortOrder(decks, random);
+        Collections.shuffle(decks, random);
+        ordering = DeckOrdering.compile(sortOrder);
+    }
+
+    @Benchmark
+    public List<String> compileAndSort() {
+        return DeckOrdering.compile(sortOrder).sort(decks);
+    }
+
+    @Benchmark
+    public List<String> sortWithCompiledOrdering() {
+        return ordering.sort(decks);
+    }
+
+    @Benchmark
+    public List<String> legacyIndexOfSort() {
+        List<String> sorted = new ArrayList<>(decks);
+        sorted.sort((deck1, deck2) -> {
+            int index1 = sortOrder.indexOf(deck1);
+            int index2 = sortOrder.indexOf(deck2);
+            if (index1 == -1) index1 = Integer.MAX_VALUE;
+            if (index2 == -1) index2 = Integer.MAX_VALUE;
+            return Integer.compare(index1, index2);
+        });
+        return sorted;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ppp.svwbrecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 記録パネルのデッキ名検索。索引の作成はマスターデータの更新時、検索は1文字入力するたびに行われる。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class DeckSearchIndexBenchmark {
+
+    // 記録パネルに表示する候補の最大件数（DeckSearchController.MAX_RESULTS）
+    private static final int LIMIT = 30;
+
+    /**
+     * 検索語ごとに検索だけを計測し、索引の作成は検索語の数だけ繰り返さない
+     */
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"え", "エルフ", "ランプ", "agu", "mid"})
+        public String text;
+    }
+
+    private List<String> decks;
+    private DeckSearchIndex index;
+
+    @Setup
+    public void setUp() {
+        decks = BenchmarkFixtures.deckNames(BenchmarkFixtures.DECK_COUNT);
+        index = DeckSearchIndex.build(decks);
+    }
+
+    @Benchmark
+    public DeckSearchIndex build() {
+        return DeckSearchIndex.build(decks);
+    }
+
+    @Benchmark
+    public int[] search(Query query) {
+        return index.search(query.text, LIMIT);
+    }
+}
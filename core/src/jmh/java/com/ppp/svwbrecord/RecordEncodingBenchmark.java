@@ -0,0 +1,66 @@
+package com.ppp.svwbrecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 記録1件ごとに行う変換。送信待ちキューのジャーナル行への変換と復元、
+ * シートの行データと記録の相互変換（取り込み時は5万行すべてに対して行う）。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class RecordEncodingBenchmark {
+
+    private List<List<Object>> rows;
+    private OutboxEntry entry;
+    private String journalLine;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        rows = BenchmarkFixtures.rows(BenchmarkFixtures.MATCH_COUNT,
+                BenchmarkFixtures.deckNames(BenchmarkFixtures.DECK_COUNT), random);
+        List<String> row = new ArrayList<>();
+        for (Object value : rows.get(0)) {
+            row.add(value.toString());
+        }
+        entry = new OutboxEntry(BenchmarkFixtures.NOW_MS, BenchmarkFixtures.NOW_MS, BenchmarkFixtures.player(0), row);
+        journalLine = entry.encode();
+    }
+
+    @Benchmark
+    public String encodeJournalLine() {
+        return entry.encode();
+    }
+
+    @Benchmark
+    public OutboxEntry decodeJournalLine() {
+        return OutboxEntry.decode(journalLine);
+    }
+
+    @Benchmark
+    public List<Object> toRowData() {
+        return entry.toRowData();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void rowsToRecords(Blackhole blackhole) {
+        String sheet = BenchmarkFixtures.player(0);
+        for (int i = 0; i < rows.size(); i++) {
+            blackhole.consume(MatchRecord.fromRow(0, sheet, BenchmarkFixtures.NOW_MS, rows.get(i), i + 3));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ppp.svwbrecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 勝率の集計（履歴からの作り直し・記録パネルを開いたときの参照・スナップショットの読み込み）と、
+ * 相手のデッキの並び順の計算。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class WinRateAggregatorBenchmark {
+
+    private List<String> decks;
+    private List<MatchRecord> matches;
+    private WinRateAggregator aggregator;
+    private OpponentDeckRanking ranking;
+    private byte[] snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(BenchmarkFixtures.SEED);
+        decks = BenchmarkFixtures.deckNames(BenchmarkFixtures.DECK_COUNT);
+        matches = BenchmarkFixtures.matches(
+                BenchmarkFixtures.rows(BenchmarkFixtures.MATCH_COUNT, decks, random), random);
+        aggregator = aggregateAll();
+        ranking = rankAll();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        aggregator.writeTo(new DataOutputStream(bytes));
+        snapshot = bytes.toByteArray();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WinRateAggregator aggregateAll() {
+        WinRateAggregator result = new WinRateAggregator();
+        for (MatchRecord record : matches) {
+            result.add(record);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public WinRateAggregator readSnapshot() throws IOException {
+        return WinRateAggregator.readFrom(new DataInputStream(new ByteArrayInputStream(snapshot)));
+    }
+
+    /**
+     * 記録パネルに表示する「このデッキの勝率」「この対面の勝率」「先攻/後攻別」の参照
+     */
+    @Benchmark
+    public int lookupMatchupStats() {
+        String sheet = BenchmarkFixtures.player(0);
+        String myDeck = decks.get(0);
+        String opponentDeck = decks.get(1);
+        return aggregator.getByMyDeck(sheet, myDeck).getTotal()
+                + aggregator.getMatchup(sheet, myDeck, opponentDeck).getTotal()
+                + aggregator.getMatchupByTurn(sheet, myDeck, opponentDeck, MatchRecord.TURN_FIRST).getTotal()
+                + aggregator.getMatchupByTurn(sheet, myDeck, opponentDeck, MatchRecord.TURN_SECOND).getTotal();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public OpponentDeckRanking rankAll() {
+        OpponentDeckRanking result = new OpponentDeckRanking();
+        for (MatchRecord record : matches) {
+            result.add(record);
+        }
+        return result;
+    }
+
+    /**
+     * 記録を1件追加した直後（並び順のキャッシュが無効になった状態）の上位デッキの取得
+     */
+    @Benchmark
+    public List<String> recentOpponentDecksAfterAdd() {
+        MatchRecord record = matches.get(matches.size() - 1);
+        ranking.add(record);
+        return ranking.getRecentDecks(record.getSheetName(), BenchmarkFixtures.NOW_MS, 5);
+    }
+}
@@ -0,0 +1,288 @@
+package com.ppp.svwbrecord;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * マスターデータを保存する小さなバイナリファイル。
+ * 一覧は表示順のまま保存し、各項目には再取得しても変わらない整数 ID を振る。
+ * 読み込みはファイルをメモリマップして行う。
+ *
+ * <pre>
+ * int  MAGIC
+ * int  FORMAT_VERSION
+ * long catalogVersion    （{@link MasterCatalog#getVersion()}）
+ * long fetchedAtMillis   （HEADER_FETCHED_AT_OFFSET。取得時刻だけの更新はこの位置を上書きする）
+ * int  nextId
+ * セクション × SECTION_COUNT（プレイヤー名、デッキ名（並べ替え済み）、相手ランク）:
+ *   int count
+ *   count × (int id, int byteLength, UTF-8 bytes)
+ * </pre>
+ */
+public class CatalogStore {
+
+    private static final int MAGIC = 0x53564354; // "SVCT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_FETCHED_AT_OFFSET = 16;
+    private static final int HEADER_SIZE = 28;
+
+    static final int SECTION_PLAYERS = 0;
+    static final int SECTION_DECKS = 1;
+    static final int SECTION_RANKS = 2;
+    private static final int SECTION_COUNT = 3;
+
+    /**
+     * ID 付きの項目
+     */
+    public static final class Entry {
+        private final int id;
+        private final String name;
+
+        Entry(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * ファイルから読み込んだ内容
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, 0, 1, emptySections());
+
+        private final long catalogVersion;
+        private final long fetchedAtMillis;
+        private final int nextId;
+        private final List<List<Entry>> sections;
+
+        Snapshot(long catalogVersion, long fetchedAtMillis, int nextId, List<List<Entry>> sections) {
+            this.catalogVersion = catalogVersion;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.nextId = nextId;
+            this.sections = sections;
+        }
+
+        public long getCatalogVersion() {
+            return catalogVersion;
+        }
+
+        public long getFetchedAtMillis() {
+            return fetchedAtMillis;
+        }
+
+        Snapshot withFetchedAt(long fetchedAtMillis) {
+            return new Snapshot(catalogVersion, fetchedAtMillis, nextId, sections);
+        }
+
+        public List<Entry> getPlayers() {
+            return sections.get(SECTION_PLAYERS);
+        }
+
+        /** 並び順に従って並べ替え済みのデッキ一覧 */
+        public List<Entry> getDecks() {
+            return sections.get(SECTION_DECKS);
+        }
+
+        public List<Entry> getOpponentRanks() {
+            return sections.get(SECTION_RANKS);
+        }
+
+        public static List<String> namesOf(List<Entry> entries) {
+            List<String> names = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                names.add(entry.getName());
+            }
+            return Collections.unmodifiableList(names);
+        }
+
+        private static List<List<Entry>> emptySections() {
+            List<List<Entry>> sections = new ArrayList<>(SECTION_COUNT);
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                sections.add(Collections.<Entry>emptyList());
+            }
+            return Collections.unmodifiableList(sections);
+        }
+    }
+
+    private final File storeFile;
+
+    public CatalogStore(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    public synchronized boolean exists() {
+        return storeFile.isFile();
+    }
+
+    /**
+     * ファイル全体を読み込む。ファイルがない場合は空の内容を返す。
+     * @throws IOException ファイルが壊れている場合
+     */
+    public synchronized Snapshot read() throws IOException {
+        if (!storeFile.isFile()) {
+            return Snapshot.EMPTY;
+        }
+        try (FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return parse(buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt catalog store: " + storeFile, e);
+            }
+        }
+    }
+
+    /**
+     * 保存されているマスターデータのバージョンだけを読む。ファイルがない、または壊れている場合は 0
+     */
+    public synchronized long readCatalogVersion() {
+        if (!storeFile.isFile()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // ヘッダーを読み切るまで繰り返す
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            return header.getLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * マスターデータを保存する。前回保存した内容と同じ名前の項目には同じ ID を使う。
+     * @param sortedDeckNames 並び順に従って並べ替え済みのデッキ一覧
+     */
+    public synchronized Snapshot write(MasterCatalog catalog, List<String> sortedDeckNames,
+                                       long fetchedAtMillis) throws IOException {
+        Snapshot previous;
+        try {
+            previous = read();
+        } catch (IOException e) {
+            previous = Snapshot.EMPTY; // 壊れたファイルは作り直す
+        }
+
+        int[] nextId = {Math.max(previous.nextId, 1)};
+        List<List<Entry>> sections = new ArrayList<>(SECTION_COUNT);
+        sections.add(assignIds(catalog.getPlayerNames(), previous.getPlayers(), nextId));
+        sections.add(assignIds(sortedDeckNames, previous.getDecks(), nextId));
+        sections.add(assignIds(catalog.getOpponentRanks(), previous.getOpponentRanks(), nextId));
+        Snapshot snapshot = new Snapshot(catalog.getVersion(), fetchedAtMillis, nextId[0],
+                Collections.unmodifiableList(sections));
+
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(FORMAT_VERSION);
+            data.writeLong(snapshot.catalogVersion);
+            data.writeLong(snapshot.fetchedAtMillis);
+            data.writeInt(snapshot.nextId);
+            for (List<Entry> section : snapshot.sections) {
+                data.writeInt(section.size());
+                for (Entry entry : section) {
+                    byte[] bytes = entry.name.getBytes(StandardCharsets.UTF_8);
+                    data.writeInt(entry.id);
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                }
+            }
+            data.flush();
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(storeFile)) {
+            tempFile.delete();
+            throw new IOException("Failed to replace catalog store: " + storeFile);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 内容は変えずに取得時刻だけを更新する
+     */
+    public synchronized void updateFetchedAt(long fetchedAtMillis) throws IOException {
+        if (!storeFile.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(8);
+            value.putLong(fetchedAtMillis).flip();
+            channel.write(value, HEADER_FETCHED_AT_OFFSET);
+            channel.force(false);
+        }
+    }
+
+    private static List<Entry> assignIds(List<String> names, List<Entry> previous, int[] nextId) {
+        Map<String, Integer> previousIds = new HashMap<>();
+        for (Entry entry : previous) {
+            previousIds.put(entry.name, entry.id);
+        }
+        List<Entry> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            Integer id = previousIds.get(name);
+            entries.add(new Entry(id != null ? id : nextId[0]++, name));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static Snapshot parse(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a catalog store");
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported catalog store format: " + formatVersion);
+        }
+        long catalogVersion = buffer.getLong();
+        long fetchedAtMillis = buffer.getLong();
+        int nextId = buffer.getInt();
+
+        List<List<Entry>> sections = new ArrayList<>(SECTION_COUNT);
+        for (int s = 0; s < SECTION_COUNT; s++) {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / 8) {
+                throw new IOException("Invalid entry count: " + count);
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getInt();
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Invalid entry length: " + length);
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                entries.add(new Entry(id, new String(bytes, StandardCharsets.UTF_8)));
+            }
+            sections.add(Collections.unmodifiableList(entries));
+        }
+        return new Snapshot(catalogVersion, fetchedAtMillis, nextId, Collections.unmodifiableList(sections));
+    }
+}
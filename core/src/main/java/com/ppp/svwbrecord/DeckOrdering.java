@@ -0,0 +1,61 @@
+package com.ppp.svwbrecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * デッキの並び順（「デッキ別戦績」シートの順番）をハッシュ表にまとめた順位表。
+ * 比較のたびに List.indexOf で探す代わりに、一度だけ作って O(1) で順位を引く。
+ */
+public final class DeckOrdering {
+
+    // 並び順リストにないデッキは末尾に回す
+    static final int UNRANKED = Integer.MAX_VALUE;
+
+    private final Map<String, Integer> rankIndex;
+
+    private DeckOrdering(Map<String, Integer> rankIndex) {
+        this.rankIndex = rankIndex;
+    }
+
+    /**
+     * 並び順リストから順位表を作る。同じデッキが複数回出てくる場合は最初の位置を使う。
+     */
+    public static DeckOrdering compile(List<String> sortOrder) {
+        Map<String, Integer> rankIndex = new HashMap<>(Math.max(16, sortOrder.size() * 2));
+        for (int i = 0; i < sortOrder.size(); i++) {
+            String deck = sortOrder.get(i);
+            if (!rankIndex.containsKey(deck)) {
+                rankIndex.put(deck, i);
+            }
+        }
+        return new DeckOrdering(rankIndex);
+    }
+
+    public boolean isEmpty() {
+        return rankIndex.isEmpty();
+    }
+
+    public int rankOf(String deck) {
+        Integer rank = rankIndex.get(deck);
+        return rank != null ? rank : UNRANKED;
+    }
+
+    /**
+     * デッキ名を並び順に従って並べ替えた新しいリストを返す。
+     * 並び順がない場合は名前順、並び順にないデッキは元の順番のまま末尾に並べる。
+     */
+    public List<String> sort(Collection<String> deckNames) {
+        List<String> sorted = new ArrayList<>(deckNames);
+        if (rankIndex.isEmpty()) {
+            Collections.sort(sorted);
+            return sorted;
+        }
+        sorted.sort((deck1, deck2) -> Integer.compare(rankOf(deck1), rankOf(deck2)));
+        return sorted;
+    }
+}
@@ -0,0 +1,336 @@
+package com.ppp.svwbrecord;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * デッキ名のインクリメンタル検索用の索引。マスターデータのバージョンごとに1回だけ作る。
+ * 名前は正規化（全角/半角の統一、小文字化、カタカナ→ひらがな）してから 1文字と2文字（bigram）の
+ * 出現位置リストを作っておき、検索時はリストの積集合を取った候補だけを照合する。
+ * ローマ字で入力された検索語はひらがなに変換したものでも検索する。
+ * 作成後は変更しないので、複数スレッドから参照してよい。
+ */
+public final class DeckSearchIndex {
+
+    public static final DeckSearchIndex EMPTY = build(new ArrayList<String>());
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final List<String> names;
+    private final String[] normalizedNames;
+    // 文字（または2文字を int にまとめたもの） -> その文字を含む名前のインデックス（昇順）
+    private final Map<Integer, int[]> unigrams;
+    private final Map<Integer, int[]> bigrams;
+
+    private DeckSearchIndex(List<String> names, String[] normalizedNames,
+                            Map<Integer, int[]> unigrams, Map<Integer, int[]> bigrams) {
+        this.names = names;
+        this.normalizedNames = normalizedNames;
+        this.unigrams = unigrams;
+        this.bigrams = bigrams;
+    }
+
+    /**
+     * @param names 検索対象の名前（表示順）。検索結果はこのリスト上のインデックスで返す
+     */
+    public static DeckSearchIndex build(List<String> names) {
+        List<String> copy = new ArrayList<>(names);
+        String[] normalized = new String[copy.size()];
+        Map<Integer, List<Integer>> unigramLists = new HashMap<>();
+        Map<Integer, List<Integer>> bigramLists = new HashMap<>();
+        for (int i = 0; i < copy.size(); i++) {
+            String name = normalize(copy.get(i));
+            normalized[i] = name;
+            for (int j = 0; j < name.length(); j++) {
+                addPosting(unigramLists, (int) name.charAt(j), i);
+                if (j + 1 < name.length()) {
+                    addPosting(bigramLists, bigramKey(name.charAt(j), name.charAt(j + 1)), i);
+                }
+            }
+        }
+        return new DeckSearchIndex(copy, normalized, toArrays(unigramLists), toArrays(bigramLists));
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * 検索語を含む名前を探す。前方一致する名前を先に、それ以外は元の並び順で返す。
+     * 検索語が空の場合はすべての名前を返す。
+     * @param limit 最大件数
+     * @return 一致した名前のインデックス
+     */
+    public int[] search(String query, int limit) {
+        String text = normalize(query);
+        if (text.isEmpty()) {
+            int[] all = new int[Math.min(limit, names.size())];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        String kana = containsLatin(text) ? romajiToHiragana(text) : null;
+        if (kana != null && (kana.isEmpty() || kana.equals(text))) {
+            kana = null;
+        }
+
+        // 優先度: 0 = 前方一致, 1 = 部分一致。ローマ字変換した検索語での一致はそれぞれの後ろに並べる
+        int[] rank = new int[names.size()];
+        Arrays.fill(rank, Integer.MAX_VALUE);
+        collect(text, 0, rank);
+        if (kana != null) {
+            collect(kana, 1, rank);
+        }
+
+        int[] counts = new int[4];
+        for (int r : rank) {
+            if (r != Integer.MAX_VALUE) {
+                counts[r]++;
+            }
+        }
+        int total = counts[0] + counts[1] + counts[2] + counts[3];
+        int[] starts = new int[4];
+        for (int r = 1; r < 4; r++) {
+            starts[r] = starts[r - 1] + counts[r - 1];
+        }
+        int[] sorted = new int[total];
+        for (int i = 0; i < rank.length; i++) {
+            if (rank[i] != Integer.MAX_VALUE) {
+                sorted[starts[rank[i]]++] = i;
+            }
+        }
+        return total <= limit ? sorted : Arrays.copyOf(sorted, limit);
+    }
+
+    /**
+     * 検索語を含む名前に優先度を付ける（既に高い優先度が付いている名前はそのまま）
+     * @param variant 0 = 入力そのまま, 1 = ローマ字から変換した検索語
+     */
+    private void collect(String text, int variant, int[] rank) {
+        for (int index : candidates(text)) {
+            String name = normalizedNames[index];
+            int position = name.indexOf(text);
+            if (position < 0) {
+                continue;
+            }
+            int r = (position == 0 ? 0 : 2) + variant;
+            if (r < rank[index]) {
+                rank[index] = r;
+            }
+        }
+    }
+
+    /**
+     * 検索語のすべての文字（2文字以上なら bigram）を含む名前のインデックス
+     */
+    private int[] candidates(String text) {
+        if (text.length() == 1) {
+            int[] postings = unigrams.get((int) text.charAt(0));
+            return postings != null ? postings : NO_POSTINGS;
+        }
+        int[] result = null;
+        for (int j = 0; j + 1 < text.length(); j++) {
+            int[] postings = bigrams.get(bigramKey(text.charAt(j), text.charAt(j + 1)));
+            if (postings == null) {
+                return NO_POSTINGS;
+            }
+            result = result == null ? postings : intersect(result, postings);
+            if (result.length == 0) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static int bigramKey(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    private static void addPosting(Map<Integer, List<Integer>> lists, int key, int index) {
+        List<Integer> list = lists.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            lists.put(key, list);
+        }
+        // 同じ名前に同じ文字が複数回出てきても1回だけ登録する
+        if (list.isEmpty() || list.get(list.size() - 1) != index) {
+            list.add(index);
+        }
+    }
+
+    private static Map<Integer, int[]> toArrays(Map<Integer, List<Integer>> lists) {
+        Map<Integer, int[]> arrays = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Integer, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            arrays.put(entry.getKey(), array);
+        }
+        return arrays;
+    }
+
+    /**
+     * 全角英数字・半角カナを統一し、小文字化してカタカナをひらがなにする。空白と中黒は取り除く。
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String nfkc = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        for (int i = 0; i < nfkc.length(); i++) {
+            char c = nfkc.charAt(i);
+            if (Character.isWhitespace(c) || c == '・') {
+                continue;
+            }
+            if (c >= 'ァ' && c <= 'ヶ') {
+                c = (char) (c - 0x60);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean containsLatin(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ローマ字 -> ひらがな（ヘボン式と訓令式の両方）
+    private static final Map<String, String> ROMAJI = new HashMap<>();
+
+    static {
+        String[][] table = {
+                {"a", "あ"}, {"i", "い"}, {"u", "う"}, {"e", "え"}, {"o", "お"},
+                {"ka", "か"}, {"ki", "き"}, {"ku", "く"}, {"ke", "け"}, {"ko", "こ"},
+                {"ga", "が"}, {"gi", "ぎ"}, {"gu", "ぐ"}, {"ge", "げ"}, {"go", "ご"},
+                {"sa", "さ"}, {"si", "し"}, {"shi", "し"}, {"su", "す"}, {"se", "せ"}, {"so", "そ"},
+                {"za", "ざ"}, {"zi", "じ"}, {"ji", "じ"}, {"zu", "ず"}, {"ze", "ぜ"}, {"zo", "ぞ"},
+                {"ta", "た"}, {"ti", "ち"}, {"chi", "ち"}, {"tu", "つ"}, {"tsu", "つ"}, {"te", "て"}, {"to", "と"},
+                {"da", "だ"}, {"di", "ぢ"}, {"du", "づ"}, {"de", "で"}, {"do", "ど"},
+                {"na", "な"}, {"ni", "に"}, {"nu", "ぬ"}, {"ne", "ね"}, {"no", "の"},
+                {"ha", "は"}, {"hi", "ひ"}, {"hu", "ふ"}, {"fu", "ふ"}, {"he", "へ"}, {"ho", "ほ"},
+                {"ba", "ば"}, {"bi", "び"}, {"bu", "ぶ"}, {"be", "べ"}, {"bo", "ぼ"},
+                {"pa", "ぱ"}, {"pi", "ぴ"}, {"pu", "ぷ"}, {"pe", "ぺ"}, {"po", "ぽ"},
+                {"ma", "ま"}, {"mi", "み"}, {"mu", "む"}, {"me", "め"}, {"mo", "も"},
+                {"ya", "や"}, {"yu", "ゆ"}, {"yo", "よ"},
+                {"ra", "ら"}, {"ri", "り"}, {"ru", "る"}, {"re", "れ"}, {"ro", "ろ"},
+                {"la", "ら"}, {"li", "り"}, {"lu", "る"}, {"le", "れ"}, {"lo", "ろ"},
+                {"wa", "わ"}, {"wo", "を"}, {"nn", "ん"}, {"n'", "ん"},
+                {"va", "ゔぁ"}, {"vi", "ゔぃ"}, {"vu", "ゔ"}, {"ve", "ゔぇ"}, {"vo", "ゔぉ"},
+                {"fa", "ふぁ"}, {"fi", "ふぃ"}, {"fe", "ふぇ"}, {"fo", "ふぉ"},
+                {"thi", "てぃ"}, {"dhi", "でぃ"}, {"twu", "とぅ"}, {"dwu", "どぅ"},
+                {"she", "しぇ"}, {"je", "じぇ"}, {"che", "ちぇ"},
+                {"kya", "きゃ"}, {"kyu", "きゅ"}, {"kyo", "きょ"},
+                {"gya", "ぎゃ"}, {"gyu", "ぎゅ"}, {"gyo", "ぎょ"},
+                {"sha", "しゃ"}, {"shu", "しゅ"}, {"sho", "しょ"}, {"sya", "しゃ"}, {"syu", "しゅ"}, {"syo", "しょ"},
+                {"ja", "じゃ"}, {"ju", "じゅ"}, {"jo", "じょ"}, {"zya", "じゃ"}, {"zyu", "じゅ"}, {"zyo", "じょ"},
+                {"cha", "ちゃ"}, {"chu", "ちゅ"}, {"cho", "ちょ"}, {"tya", "ちゃ"}, {"tyu", "ちゅ"}, {"tyo", "ちょ"},
+                {"nya", "にゃ"}, {"nyu", "にゅ"}, {"nyo", "にょ"},
+                {"hya", "ひゃ"}, {"hyu", "ひゅ"}, {"hyo", "ひょ"},
+                {"bya", "びゃ"}, {"byu", "びゅ"}, {"byo", "びょ"},
+                {"pya", "ぴゃ"}, {"pyu", "ぴゅ"}, {"pyo", "ぴょ"},
+                {"mya", "みゃ"}, {"myu", "みゅ"}, {"myo", "みょ"},
+                {"rya", "りゃ"}, {"ryu", "りゅ"}, {"ryo", "りょ"},
+                {"xa", "ぁ"}, {"xi", "ぃ"}, {"xu", "ぅ"}, {"xe", "ぇ"}, {"xo", "ぉ"},
+                {"xya", "ゃ"}, {"xyu", "ゅ"}, {"xyo", "ょ"}, {"xtu", "っ"}, {"xtsu", "っ"},
+                {"-", "ー"},
+        };
+        for (String[] entry : table) {
+            ROMAJI.put(entry[0], entry[1]);
+        }
+    }
+
+    /**
+     * ローマ字をひらがなに変換する。変換できない文字はそのまま残す。
+     * 入力途中の末尾の子音（"roiy" の "y" など）は取り除き、変換できた部分だけで検索できるようにする。
+     */
+    static String romajiToHiragana(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            // 促音（"kk" など同じ子音の連続）
+            if (i + 1 < text.length() && c == text.charAt(i + 1) && isConsonant(c) && c != 'n') {
+                sb.append('っ');
+                i++;
+                continue;
+            }
+            // 子音の前の n は「ん」
+            if (c == 'n' && i + 1 < text.length() && isConsonant(text.charAt(i + 1))
+                    && text.charAt(i + 1) != 'n' && text.charAt(i + 1) != 'y') {
+                sb.append('ん');
+                i++;
+                continue;
+            }
+            String kana = null;
+            int length = Math.min(4, text.length() - i);
+            for (; length > 0; length--) {
+                kana = ROMAJI.get(text.substring(i, i + length));
+                if (kana != null) {
+                    break;
+                }
+            }
+            if (kana != null) {
+                sb.append(kana);
+                i += length;
+            } else if (isConsonant(c) && isPendingConsonants(text, i)) {
+                // 入力途中
+                break;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isConsonant(char c) {
+        return c >= 'a' && c <= 'z' && "aiueo".indexOf(c) < 0;
+    }
+
+    private static boolean isPendingConsonants(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (!isConsonant(text.charAt(i)) && text.charAt(i) != '\'') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
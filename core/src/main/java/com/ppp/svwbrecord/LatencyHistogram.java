@@ -0,0 +1,103 @@
+package com.ppp.svwbrecord;
+
+/**
+ * 所要時間（ミリ秒）の分布を固定の区間ごとの件数で持つヒストグラム。
+ * 記録件数に関係なくメモリ使用量は一定で、パーセンタイルは該当する区間の上限値で近似する。
+ * スレッドセーフではないので、呼び出し側で排他すること。
+ */
+public class LatencyHistogram {
+
+    // 各区間の上限（この値以下が含まれる）。最後の区間より大きい値は「それ以上」の区間に入る
+    static final long[] BUCKET_UPPER_BOUNDS_MS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1000, 2000, 5000, 10000, 30000, 60000, 300000
+    };
+
+    private final long[] counts = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+    private long count = 0;
+    private long sumMs = 0;
+    private long minMs = Long.MAX_VALUE;
+    private long maxMs = 0;
+
+    /**
+     * 所要時間を1件加える。負の値は時計の巻き戻りとみなして 0 として扱う。
+     */
+    public void add(long durationMs) {
+        long value = Math.max(0L, durationMs);
+        counts[bucketOf(value)]++;
+        count++;
+        sumMs += value;
+        minMs = Math.min(minMs, value);
+        maxMs = Math.max(maxMs, value);
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sumMs = 0;
+        minMs = Long.MAX_VALUE;
+        maxMs = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMinMs() {
+        return count > 0 ? minMs : 0;
+    }
+
+    public long getMaxMs() {
+        return maxMs;
+    }
+
+    public long getMeanMs() {
+        return count > 0 ? sumMs / count : 0;
+    }
+
+    /**
+     * 指定したパーセンタイルの近似値を返す（該当する区間の上限。ただし最大値を超えない）
+     * @param percentile 0〜100
+     */
+    public long getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        rank = Math.max(1L, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BUCKET_UPPER_BOUNDS_MS.length ? Math.min(BUCKET_UPPER_BOUNDS_MS[i], maxMs) : maxMs;
+            }
+        }
+        return maxMs;
+    }
+
+    /**
+     * "件数 / 平均 / p50 / p90 / p99 / 最大" の1行の要約
+     */
+    public String summarize() {
+        if (count == 0) {
+            return "n=0";
+        }
+        return "n=" + count
+                + " mean=" + getMeanMs() + "ms"
+                + " p50=" + getPercentileMs(50) + "ms"
+                + " p90=" + getPercentileMs(90) + "ms"
+                + " p99=" + getPercentileMs(99) + "ms"
+                + " max=" + maxMs + "ms";
+    }
+
+    private static int bucketOf(long valueMs) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            if (valueMs <= BUCKET_UPPER_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MS.length;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ppp.svwbrecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * スプレッドシートから読み込んだマスターデータ（プレイヤー名、デッキ名、デッキの並び順、相手ランク）の
+ * 不変のスナップショット。
+ */
+public final class MasterCatalog {
+
+    // 相手ランクの一覧（上位ランクから順に）。スプレッドシートに一覧の範囲がないため、アプリに持つ
+    static final List<String> DEFAULT_OPPONENT_RANKS = Collections.unmodifiableList(Arrays.asList(
+            "BEYOND", "LEGEND", "ULTIMATE", "EPIC", "EPIC未満", "ダイヤモンド", "サファイア", "ルビー"));
+
+    private final List<String> playerNames;
+    private final List<String> deckNames;
+    private final List<String> deckSortOrder;
+    private final List<String> opponentRanks;
+    private final long version;
+
+    public MasterCatalog(List<String> playerNames, List<String> deckNames,
+                         List<String> deckSortOrder, List<String> opponentRanks) {
+        this.playerNames = immutableCopy(playerNames);
+        this.deckNames = immutableCopy(deckNames);
+        this.deckSortOrder = immutableCopy(deckSortOrder);
+        this.opponentRanks = opponentRanks == null || opponentRanks.isEmpty()
+                ? DEFAULT_OPPONENT_RANKS : immutableCopy(opponentRanks);
+        this.version = computeVersion();
+    }
+
+    /**
+     * 内容から計算したハッシュ値。内容が同じなら同じ値になるので、変更の検出に使う
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getPlayerNames() {
+        return playerNames;
+    }
+
+    public List<String> getDeckNames() {
+        return deckNames;
+    }
+
+    public List<String> getDeckSortOrder() {
+        return deckSortOrder;
+    }
+
+    public List<String> getOpponentRanks() {
+        return opponentRanks;
+    }
+
+    /**
+     * 全ての一覧を区切り文字付きで連結した内容の 64bit FNV-1a ハッシュ
+     */
+    private long computeVersion() {
+        long hash = 0xcbf29ce484222325L;
+        for (List<String> list : Arrays.asList(playerNames, deckNames, deckSortOrder, opponentRanks)) {
+            for (String value : list) {
+                hash = fnv1a(hash, value);
+                hash = fnv1a(hash, '\u0000');
+            }
+            hash = fnv1a(hash, '\u0001');
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = fnv1a(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long fnv1a(long hash, char c) {
+        hash ^= c;
+        return hash * 0x100000001b3L;
+    }
+
+    private static List<String> immutableCopy(List<String> values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(values));
+    }
+}
@@ -0,0 +1,151 @@
+package com.ppp.svwbrecord;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 端末の対戦履歴（アプリの MatchHistoryDatabase）に保存される1件分の対戦記録。
+ * 各項目はスプレッドシートに書き込む行（日付、相手ランク、自分のデッキ、先攻/後攻、相手のデッキ、勝敗）と同じ内容。
+ */
+public final class MatchRecord {
+
+    // スプレッドシートの行データ上の列の位置
+    static final int COLUMN_DATE = 0;
+    static final int COLUMN_OPPONENT_RANK = 1;
+    static final int COLUMN_MY_DECK = 2;
+    static final int COLUMN_TURN = 3;
+    static final int COLUMN_OPPONENT_DECK = 4;
+    static final int COLUMN_RESULT = 5;
+    static final int COLUMN_COUNT = 6;
+
+    public static final String TURN_FIRST = "先攻";
+    public static final String TURN_SECOND = "後攻";
+    public static final String RESULT_WIN = "勝ち";
+    public static final String RESULT_LOSS = "負け";
+
+    // 未送信の記録、または取り込み元の行番号が分からない記録
+    public static final int NO_REMOTE_ROW = -1;
+    // 記録パネルから書き込む日付の形式（年は書かない）
+    static final String DATE_PATTERN = "MM/dd";
+
+    private final long id;
+    private final long outboxId;
+    private final String sheetName;
+    private final long recordedAtMillis;
+    private final String date;
+    private final String opponentRank;
+    private final String myDeck;
+    private final String turn;
+    private final String opponentDeck;
+    private final String result;
+    private final int remoteRow;
+
+    public MatchRecord(long id, long outboxId, String sheetName, long recordedAtMillis,
+                       String date, String opponentRank, String myDeck, String turn,
+                       String opponentDeck, String result, int remoteRow) {
+        this.id = id;
+        this.outboxId = outboxId;
+        this.sheetName = sheetName;
+        this.recordedAtMillis = recordedAtMillis;
+        this.date = date;
+        this.opponentRank = opponentRank;
+        this.myDeck = myDeck;
+        this.turn = turn;
+        this.opponentDeck = opponentDeck;
+        this.result = result;
+        this.remoteRow = remoteRow;
+    }
+
+    /**
+     * 送信待ちキューに保存した記録から作成する
+     */
+    public static MatchRecord fromOutboxEntry(OutboxEntry entry) {
+        return fromRow(entry.getId(), entry.getSheetName(), entry.getCreatedAtMillis(), entry.getRow(), NO_REMOTE_ROW);
+    }
+
+    /**
+     * スプレッドシートの行データから作成する。足りない列は空文字として扱う。
+     * @param outboxId 送信待ちキュー上の ID。キューを経由しない記録は 0
+     */
+    public static MatchRecord fromRow(long outboxId, String sheetName, long recordedAtMillis,
+                                      List<?> row, int remoteRow) {
+        return new MatchRecord(0, outboxId, sheetName, recordedAtMillis,
+                cell(row, COLUMN_DATE), cell(row, COLUMN_OPPONENT_RANK), cell(row, COLUMN_MY_DECK),
+                cell(row, COLUMN_TURN), cell(row, COLUMN_OPPONENT_DECK), cell(row, COLUMN_RESULT),
+                remoteRow);
+    }
+
+    /**
+     * 記録パネルの入力からスプレッドシートに書き込む行データを作る
+     * @param recordedAtMillis 記録した時刻。端末のタイムゾーンで日付に変換する
+     */
+    public static List<Object> buildRow(long recordedAtMillis, String opponentRank, String myDeck,
+                                        String turn, String opponentDeck, String result) {
+        String date = new SimpleDateFormat(DATE_PATTERN, Locale.getDefault()).format(new Date(recordedAtMillis));
+        return Arrays.<Object>asList(date, opponentRank, myDeck, turn, opponentDeck, result);
+    }
+
+    private static String cell(List<?> row, int index) {
+        if (row == null || index >= row.size() || row.get(index) == null) {
+            return "";
+        }
+        return row.get(index).toString().trim();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getOutboxId() {
+        return outboxId;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public long getRecordedAtMillis() {
+        return recordedAtMillis;
+    }
+
+    /** スプレッドシートに書き込んだ日付（MM/dd） */
+    public String getDate() {
+        return date;
+    }
+
+    public String getOpponentRank() {
+        return opponentRank;
+    }
+
+    public String getMyDeck() {
+        return myDeck;
+    }
+
+    public String getTurn() {
+        return turn;
+    }
+
+    public String getOpponentDeck() {
+        return opponentDeck;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public boolean isWin() {
+        return RESULT_WIN.equals(result);
+    }
+
+    public boolean isLoss() {
+        return RESULT_LOSS.equals(result);
+    }
+
+    /** スプレッドシート上の行番号。不明な場合は {@link #NO_REMOTE_ROW} */
+    public int getRemoteRow() {
+        return remoteRow;
+    }
+}
@@ -0,0 +1,184 @@
+package com.ppp.svwbrecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 最近対戦した相手のデッキの頻度（古い対戦ほど重みが小さくなる減衰付き頻度）。
+ * 対戦1件の重みは {@link #HALF_LIFE_MS} ごとに半分になる。
+ * 重みは log2(Σ 2^(対戦日時 / 半減期)) の形で持つので、記録の追加は1回の計算で済み、
+ * 時間が経っても全デッキの重みが同じ割合で減るだけで順位は変わらない。
+ * そのため並び順は記録を追加したときだけ計算し直せばよい。
+ * スレッドセーフではないので、呼び出し側で排他すること。
+ */
+public class OpponentDeckRanking {
+
+    private static final int MAGIC = 0x53564f52; // "SVOR"
+    private static final int FORMAT_VERSION = 1;
+
+    static final long HALF_LIFE_MS = 3L * 24 * 60 * 60 * 1000; // 3日
+    // これより重みの小さいデッキ（最後の対戦から半減期の約4.3倍以上経ったもの）は「最近」に含めない
+    static final double MIN_WEIGHT = 0.05;
+
+    // シート名 -> 相手のデッキ -> log2(重み) + 半減期単位の基準時刻
+    private final Map<String, Map<String, Double>> logWeights = new HashMap<>();
+    // シート名 -> 重みの大きい順に並べたデッキ名（記録を追加するまでキャッシュする）
+    private final Map<String, List<String>> sortedCache = new HashMap<>();
+
+    /**
+     * 記録を1件加える。相手のデッキが空の記録は無視する。記録日時が不明（0以下）の記録は重みがほぼ0になる。
+     */
+    public void add(MatchRecord record) {
+        String deck = record.getOpponentDeck();
+        if (deck == null || deck.isEmpty()) {
+            return;
+        }
+        Map<String, Double> decks = logWeights.get(record.getSheetName());
+        if (decks == null) {
+            decks = new HashMap<>();
+            logWeights.put(record.getSheetName(), decks);
+        }
+        double point = (double) Math.max(0L, record.getRecordedAtMillis()) / HALF_LIFE_MS;
+        Double current = decks.get(deck);
+        decks.put(deck, current == null ? point : logAdd(current, point));
+        sortedCache.remove(record.getSheetName());
+    }
+
+    public void clear() {
+        logWeights.clear();
+        sortedCache.clear();
+    }
+
+    /**
+     * 指定した時刻での重みの大きい順に、最近対戦した相手のデッキを返す
+     * @param limit 最大件数
+     */
+    public List<String> getRecentDecks(String sheetName, long nowMillis, int limit) {
+        Map<String, Double> decks = logWeights.get(sheetName);
+        if (decks == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<String> sorted = sortedCache.get(sheetName);
+        if (sorted == null) {
+            sorted = new ArrayList<>(decks.keySet());
+            Collections.sort(sorted, (a, b) -> {
+                int byWeight = Double.compare(decks.get(b), decks.get(a));
+                return byWeight != 0 ? byWeight : a.compareTo(b);
+            });
+            sortedCache.put(sheetName, sorted);
+        }
+        double minLogWeight = (double) nowMillis / HALF_LIFE_MS + log2(MIN_WEIGHT);
+        List<String> recent = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (String deck : sorted) {
+            if (recent.size() >= limit || decks.get(deck) < minLogWeight) {
+                break;
+            }
+            recent.add(deck);
+        }
+        return recent;
+    }
+
+    /**
+     * 相手のデッキの選択肢を、最近対戦したデッキ → それ以外（マスターデータの並び順）の順に並べる。
+     * マスターデータにないデッキは含めない。並びはマスターデータと異なるので、デッキの位置は名前で探すこと。
+     * @param catalogDeckNames マスターデータの並び順のデッキ名
+     * @param recentDecks {@link #getRecentDecks} の結果
+     */
+    public static List<String> orderRecentFirst(List<String> catalogDeckNames, List<String> recentDecks) {
+        List<String> ordered = new ArrayList<>(catalogDeckNames.size());
+        Set<String> catalog = new HashSet<>(catalogDeckNames);
+        Set<String> recent = new HashSet<>();
+        for (String deck : recentDecks) {
+            if (catalog.contains(deck) && recent.add(deck)) {
+                ordered.add(deck);
+            }
+        }
+        for (String deck : catalogDeckNames) {
+            if (!recent.contains(deck)) {
+                ordered.add(deck);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * 指定した時刻での重み（その時点で対戦1件分なら 1.0）。対戦していないデッキは 0
+     */
+    public double getWeight(String sheetName, String deck, long nowMillis) {
+        Map<String, Double> decks = logWeights.get(sheetName);
+        Double logWeight = decks != null ? decks.get(deck) : null;
+        if (logWeight == null) {
+            return 0;
+        }
+        return Math.pow(2, logWeight - (double) nowMillis / HALF_LIFE_MS);
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(logWeights.size());
+        for (Map.Entry<String, Map<String, Double>> sheet : logWeights.entrySet()) {
+            out.writeUTF(sheet.getKey());
+            out.writeInt(sheet.getValue().size());
+            for (Map.Entry<String, Double> deck : sheet.getValue().entrySet()) {
+                out.writeUTF(deck.getKey());
+                out.writeDouble(deck.getValue());
+            }
+        }
+    }
+
+    /**
+     * {@link #writeTo} で書き出した値を読み込む
+     * @throws IOException 形式が不正な場合
+     */
+    public static OpponentDeckRanking readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an opponent deck ranking");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported opponent deck ranking format: " + formatVersion);
+        }
+        OpponentDeckRanking ranking = new OpponentDeckRanking();
+        int sheetCount = readCount(in);
+        for (int i = 0; i < sheetCount; i++) {
+            String sheetName = in.readUTF();
+            int deckCount = readCount(in);
+            Map<String, Double> decks = new HashMap<>();
+            for (int j = 0; j < deckCount; j++) {
+                String deck = in.readUTF();
+                decks.put(deck, in.readDouble());
+            }
+            ranking.logWeights.put(sheetName, decks);
+        }
+        return ranking;
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid entry count: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * log2(2^a + 2^b) を桁あふれせずに計算する
+     */
+    private static double logAdd(double a, double b) {
+        double max = Math.max(a, b);
+        return max + log2(1 + Math.pow(2, Math.min(a, b) - max));
+    }
+
+    private static double log2(double x) {
+        return Math.log(x) / Math.log(2);
+    }
+}
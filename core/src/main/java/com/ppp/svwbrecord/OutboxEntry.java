@@ -0,0 +1,140 @@
+package com.ppp.svwbrecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 送信待ちキュー（{@link RecordOutbox}）に保存される1件分の対戦記録。
+ * ジャーナルファイルには1行1レコードのタブ区切りテキストとして書き込まれる。
+ */
+public final class OutboxEntry {
+
+    static final String TYPE_RECORD = "R";
+    static final String TYPE_ACK = "A";
+    static final String TYPE_RETRY = "T";
+
+    private final long id;
+    private final long createdAtMillis;
+    private final String sheetName;
+    private final List<String> row;
+
+    public OutboxEntry(long id, long createdAtMillis, String sheetName, List<String> row) {
+        this.id = id;
+        this.createdAtMillis = createdAtMillis;
+        this.sheetName = sheetName;
+        this.row = Collections.unmodifiableList(new ArrayList<>(row));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public String getSheetName() {
+        return sheetName;
+    }
+
+    public List<String> getRow() {
+        return row;
+    }
+
+    /**
+     * Sheets API にそのまま渡せる形の行データを返す。
+     * 記録の列の後ろに、応答が失われた書き込みを再送する前の確認に使う記録のIDを加える。
+     */
+    public List<Object> toRowData() {
+        List<Object> rowData = new ArrayList<Object>(row.size() + 1);
+        rowData.addAll(row);
+        rowData.add(String.valueOf(id));
+        return rowData;
+    }
+
+    /**
+     * ジャーナルに書き込む1行（改行なし）を生成する
+     */
+    String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(TYPE_RECORD)
+                .append('\t').append(id)
+                .append('\t').append(createdAtMillis)
+                .append('\t');
+        escape(sheetName, sb);
+        for (String value : row) {
+            sb.append('\t');
+            escape(value, sb);
+        }
+        return sb.toString();
+    }
+
+    static String encodeAck(long id) {
+        return TYPE_ACK + "\t" + id;
+    }
+
+    static String encodeRetry(int failedAttempts, long nextAttemptAtMillis) {
+        return TYPE_RETRY + "\t" + failedAttempts + "\t" + nextAttemptAtMillis;
+    }
+
+    /**
+     * {@link #encode()} で生成した行を復元する。形式が不正な場合や、行データの列数が記録の列数と違う場合は null を返す。
+     */
+    static OutboxEntry decode(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 4 + MatchRecord.COLUMN_COUNT || !TYPE_RECORD.equals(fields[0])) {
+            return null;
+        }
+        try {
+            long id = Long.parseLong(fields[1]);
+            long createdAt = Long.parseLong(fields[2]);
+            String sheetName = unescape(fields[3]);
+            List<String> row = new ArrayList<>();
+            for (int i = 4; i < fields.length; i++) {
+                row.add(unescape(fields[i]));
+            }
+            return new OutboxEntry(id, createdAt, sheetName, row);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void escape(String value, StringBuilder sb) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 >= value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't': sb.append('\t'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                default: sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+}
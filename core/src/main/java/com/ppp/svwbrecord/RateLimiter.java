@@ -0,0 +1,190 @@
+package com.ppp.svwbrecord;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheets API へのリクエストの送信ペースを抑えるトークンバケット。
+ * 一定の速さでトークンが溜まり（上限あり）、リクエストは1件ごとにトークンを1つ使う。トークンがなければ溜まるまで待つ。
+ * 優先度の高い呼び出し（記録の書き込み）が待っている間は、優先度の低い呼び出し（取り込みや同期）はトークンを使わず、
+ * 優先度の低い呼び出しは最後の {@code reservedTokens} 個を使わずに残す。
+ * サーバーから Retry-After を指定された場合は、その時刻まで全ての呼び出しを止める。
+ */
+public final class RateLimiter {
+
+    /**
+     * 呼び出しの優先度
+     */
+    public enum Lane {
+        /** ユーザーの操作に応じた呼び出し（記録の書き込みなど） */
+        FOREGROUND,
+        /** バックグラウンドの呼び出し（履歴の取り込み・同期、マスターデータの更新など） */
+        BACKGROUND
+    }
+
+    // Sheets API の利用者ごとの上限（1分あたり60リクエスト）を1分間でも超えないよう、少し低めにする
+    static final double SHEETS_PERMITS_PER_SECOND = 0.9;
+    static final int SHEETS_BURST = 5;
+    static final int SHEETS_RESERVED_TOKENS = 1;
+
+    private static final String HTTP_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final double permitsPerNano;
+    private final double maxTokens;
+    private final double reservedTokens;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private final int[] waiting = new int[Lane.values().length];
+
+    // --- 計測用 ---
+    private long acquiredCount;
+    private long throttledCount;
+    private long waitedNanos;
+    private long rateLimitedCount;
+
+    /**
+     * @param permitsPerSecond トークンが溜まる速さ
+     * @param burst 溜めておけるトークンの上限（最初は満タン）
+     * @param reservedTokens 優先度の低い呼び出しが使わずに残すトークンの数
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int reservedTokens) {
+        if (permitsPerSecond <= 0 || burst < 1 || reservedTokens < 0 || reservedTokens >= burst) {
+            throw new IllegalArgumentException("Invalid rate limit: " + permitsPerSecond + "/s, burst=" + burst
+                    + ", reserved=" + reservedTokens);
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxTokens = burst;
+        this.reservedTokens = reservedTokens;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Sheets API の利用者ごとの上限に合わせた設定で作る
+     */
+    public static RateLimiter createForSheets() {
+        return new RateLimiter(SHEETS_PERMITS_PER_SECOND, SHEETS_BURST, SHEETS_RESERVED_TOKENS);
+    }
+
+    /**
+     * トークンを1つ使う。使えるようになるまで呼び出し元のスレッドで待つ。
+     */
+    public synchronized void acquire(Lane lane) throws InterruptedException {
+        long started = System.nanoTime();
+        boolean throttled = false;
+        waiting[lane.ordinal()]++;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                long waitNanos = pausedUntilNanos - now;
+                if (waitNanos <= 0) {
+                    if (!isBehindHigherLane(lane)) {
+                        double needed = 1 + (lane == Lane.FOREGROUND ? 0 : reservedTokens);
+                        if (tokens >= needed) {
+                            tokens -= 1;
+                            break;
+                        }
+                        waitNanos = (long) Math.ceil((needed - tokens) / permitsPerNano);
+                    } else {
+                        // 優先度の高い呼び出しがトークンを使った後に起こされる
+                        waitNanos = (long) Math.ceil(1 / permitsPerNano);
+                    }
+                }
+                throttled = true;
+                TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+            }
+        } finally {
+            waiting[lane.ordinal()]--;
+            notifyAll();
+        }
+        acquiredCount++;
+        if (throttled) {
+            throttledCount++;
+            waitedNanos += System.nanoTime() - started;
+        }
+    }
+
+    /**
+     * サーバーから上限を超えたと応答された。指定の時間が経つまで全ての呼び出しを止め、溜まっていたトークンも捨てる。
+     * @param retryAfterMs 待つ時間
+     */
+    public synchronized void pause(long retryAfterMs) {
+        long now = System.nanoTime();
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(Math.max(0, retryAfterMs)));
+        tokens = 0;
+        // 止めていた時間の分はトークンを溜めない
+        lastRefillNanos = Math.max(lastRefillNanos, pausedUntilNanos);
+        rateLimitedCount++;
+        notifyAll();
+    }
+
+    private boolean isBehindHigherLane(Lane lane) {
+        for (int i = 0; i < lane.ordinal(); i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void refill(long now) {
+        if (now <= lastRefillNanos) {
+            return;
+        }
+        tokens = Math.min(maxTokens, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+
+    public synchronized long getAcquiredCount() {
+        return acquiredCount;
+    }
+
+    /** トークンが溜まるのを待った呼び出しの数 */
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    public synchronized long getWaitedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(waitedNanos);
+    }
+
+    /** サーバーから上限を超えたと応答された回数 */
+    public synchronized long getRateLimitedCount() {
+        return rateLimitedCount;
+    }
+
+    public synchronized String dumpCounters() {
+        return "acquired=" + acquiredCount
+                + ", throttled=" + throttledCount
+                + ", waitedMs=" + getWaitedMs()
+                + ", rateLimited=" + rateLimitedCount;
+    }
+
+    /**
+     * Retry-After ヘッダーの値（秒数、または HTTP の日付）を待つ時間に変換する
+     * @param nowMillis 現在時刻
+     * @return 待つ時間。値がない、または解釈できない場合は -1
+     */
+    public static long parseRetryAfterMs(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException ignored) {
+            // 日付の形式を試す
+        }
+        try {
+            long at = new SimpleDateFormat(HTTP_DATE_PATTERN, Locale.US).parse(trimmed).getTime();
+            return Math.max(0, at - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
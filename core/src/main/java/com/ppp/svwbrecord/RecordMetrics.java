@@ -0,0 +1,210 @@
+package com.ppp.svwbrecord;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 対戦記録の保存から送信までの所要時間と信頼性の計測値。
+ * 記録ボタンのタップからローカル保存まで・スプレッドシートへの書き込み完了までの所要時間、
+ * Sheets API の呼び出し回数、原因別の再試行・失敗回数、送信待ちキューの件数を集計する。
+ * 値はプロセス内でのみ保持し、{@link #formatReport} でテキストとして書き出す。
+ */
+public class RecordMetrics {
+
+    /**
+     * 送信の再試行・失敗の原因の分類
+     */
+    public enum Cause {
+        TIMEOUT("タイムアウト"),
+        NETWORK("接続エラー"),
+        AUTH("認証エラー"),
+        RATE_LIMITED("レート制限"),
+        API_ERROR("APIエラー"),
+        OTHER("その他");
+
+        private final String label;
+
+        Cause(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final LatencyHistogram tapToLocalCommit = new LatencyHistogram();
+    private final LatencyHistogram tapToRemoteAck = new LatencyHistogram();
+    private final LatencyHistogram sheetsCallLatency = new LatencyHistogram();
+    // このプロセスで保存した未送信の記録のID -> 記録ボタンをタップした時刻
+    private final Map<Long, Long> tappedAtById = new HashMap<>();
+    private final long[] retriesByCause = new long[Cause.values().length];
+    private final long[] failuresByCause = new long[Cause.values().length];
+
+    private long startedAtMillis;
+    private long recordsCommitted = 0;
+    private long recordsAcknowledged = 0;
+    private long sheetsCalls = 0;
+    private long failedSheetsCalls = 0;
+    private int queueDepth = -1;
+    private int maxQueueDepth = 0;
+
+    public RecordMetrics() {
+        this(System.currentTimeMillis());
+    }
+
+    RecordMetrics(long startedAtMillis) {
+        this.startedAtMillis = startedAtMillis;
+    }
+
+    /**
+     * 記録が送信待ちキューに保存された
+     * @param tappedAtMillis 記録ボタンがタップされた時刻
+     * @param committedAtMillis 保存がディスクに同期されて戻った時刻（記録の作成時刻は同期の前なので使わない）
+     * @param pendingCount 保存後の送信待ちの件数
+     */
+    public synchronized void onCommitted(OutboxEntry entry, long tappedAtMillis, long committedAtMillis,
+                                         int pendingCount) {
+        recordsCommitted++;
+        tapToLocalCommit.add(committedAtMillis - tappedAtMillis);
+        tappedAtById.put(entry.getId(), tappedAtMillis);
+        onQueueDepth(pendingCount);
+    }
+
+    /**
+     * Sheets API への書き込みを1回呼び出した（成否を問わない）
+     */
+    public synchronized void onSheetsCall(long durationMs, boolean succeeded) {
+        sheetsCalls++;
+        if (!succeeded) {
+            failedSheetsCalls++;
+        }
+        sheetsCallLatency.add(durationMs);
+    }
+
+    /**
+     * 記録の書き込みが完了し、送信待ちキューから除かれた。
+     * 以前のプロセスで保存された記録は、タップした時刻の代わりにキューへの保存時刻から計る。
+     * @param pendingCount 除いた後の送信待ちの件数
+     */
+    public synchronized void onAcknowledged(List<OutboxEntry> entries, long nowMillis, int pendingCount) {
+        for (OutboxEntry entry : entries) {
+            Long tappedAt = tappedAtById.remove(entry.getId());
+            tapToRemoteAck.add(nowMillis - (tappedAt != null ? tappedAt : entry.getCreatedAtMillis()));
+            recordsAcknowledged++;
+        }
+        onQueueDepth(pendingCount);
+    }
+
+    /**
+     * Sheets API から上限超過（429）と応答され、HTTP の層で同じリクエストを送り直した。
+     * 送り直す前の呼び出しを失敗した呼び出しと再試行として数える（所要時間は送り直しを含めて {@link #onSheetsCall} で記録される）
+     */
+    public synchronized void onRateLimitedResend() {
+        sheetsCalls++;
+        failedSheetsCalls++;
+        retriesByCause[Cause.RATE_LIMITED.ordinal()]++;
+    }
+
+    public synchronized void onRetry(Cause cause) {
+        retriesByCause[cause.ordinal()]++;
+    }
+
+    /**
+     * 再試行せずに送信をあきらめた（記録はキューに残る）
+     */
+    public synchronized void onFailure(Cause cause) {
+        failuresByCause[cause.ordinal()]++;
+    }
+
+    public synchronized void onQueueDepth(int pendingCount) {
+        queueDepth = pendingCount;
+        maxQueueDepth = Math.max(maxQueueDepth, pendingCount);
+    }
+
+    public synchronized long getRetryCount(Cause cause) {
+        return retriesByCause[cause.ordinal()];
+    }
+
+    public synchronized long getFailureCount(Cause cause) {
+        return failuresByCause[cause.ordinal()];
+    }
+
+    public synchronized long getTapToLocalCommitPercentileMs(double percentile) {
+        return tapToLocalCommit.getPercentileMs(percentile);
+    }
+
+    public synchronized long getTapToRemoteAckPercentileMs(double percentile) {
+        return tapToRemoteAck.getPercentileMs(percentile);
+    }
+
+    public synchronized long getSheetsCalls() {
+        return sheetsCalls;
+    }
+
+    public synchronized long getRecordsAcknowledged() {
+        return recordsAcknowledged;
+    }
+
+    /**
+     * 書き込みが完了した記録1件あたりの Sheets API 呼び出し回数（失敗した呼び出しを含む）
+     */
+    public synchronized double getSheetsCallsPerRecord() {
+        return recordsAcknowledged > 0 ? (double) sheetsCalls / recordsAcknowledged : 0;
+    }
+
+    /**
+     * 計測値をすべて破棄し、指定した時刻から計測し直す。未送信の記録のタップ時刻は残す。
+     */
+    public synchronized void reset(long nowMillis) {
+        tapToLocalCommit.clear();
+        tapToRemoteAck.clear();
+        sheetsCallLatency.clear();
+        for (int i = 0; i < retriesByCause.length; i++) {
+            retriesByCause[i] = 0;
+            failuresByCause[i] = 0;
+        }
+        startedAtMillis = nowMillis;
+        recordsCommitted = 0;
+        recordsAcknowledged = 0;
+        sheetsCalls = 0;
+        failedSheetsCalls = 0;
+        maxQueueDepth = Math.max(0, queueDepth);
+    }
+
+    /**
+     * 計測値を人が読める複数行のテキストにする
+     */
+    public synchronized String formatReport(long nowMillis) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("計測時間: ").append(formatDuration(nowMillis - startedAtMillis)).append('\n');
+        sb.append("保存した記録: ").append(recordsCommitted)
+                .append(" / 送信した記録: ").append(recordsAcknowledged).append('\n');
+        sb.append('\n');
+        sb.append("[タップ→ローカル保存]\n  ").append(tapToLocalCommit.summarize()).append('\n');
+        sb.append("[タップ→スプレッドシート書き込み完了]\n  ").append(tapToRemoteAck.summarize()).append('\n');
+        sb.append("[Sheets API 書き込み]\n  ").append(sheetsCallLatency.summarize()).append('\n');
+        sb.append("  呼び出し: ").append(sheetsCalls)
+                .append(" (失敗 ").append(failedSheetsCalls).append(")")
+                .append(" / 記録1件あたり: ").append(String.format(Locale.US, "%.2f", getSheetsCallsPerRecord()))
+                .append('\n');
+        sb.append('\n');
+        sb.append("[再試行 / 失敗]\n");
+        for (Cause cause : Cause.values()) {
+            sb.append("  ").append(cause.getLabel()).append(": ")
+                    .append(retriesByCause[cause.ordinal()]).append(" / ")
+                    .append(failuresByCause[cause.ordinal()]).append('\n');
+        }
+        sb.append('\n');
+        sb.append("[送信待ちキュー]\n  現在: ").append(queueDepth >= 0 ? String.valueOf(queueDepth) : "-")
+                .append(" / 最大: ").append(maxQueueDepth).append('\n');
+        return sb.toString();
+    }
+
+    private static String formatDuration(long millis) {
+        long seconds = Math.max(0L, millis) / 1000;
+        return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
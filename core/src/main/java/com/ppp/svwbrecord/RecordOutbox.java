@@ -0,0 +1,277 @@
+package com.ppp.svwbrecord;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 対戦記録の送信待ちキュー。
+ * 追記専用のジャーナルファイルに1件ずつ fsync して書き込むため、
+ * サービスやプロセスが終了しても未送信の記録は失われない。
+ * 送信済みになった記録は ACK 行を追記して管理し、一定数溜まったらファイルを詰め直す。
+ * 送信の再試行の状態（連続した失敗の回数と次に送信する時刻）も同じファイルに保存し、再起動後に引き継ぐ。
+ */
+public class RecordOutbox {
+
+    // ACK済みの行がこの数を超えたらジャーナルを詰め直す
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private final File journalFile;
+    private final Map<Long, OutboxEntry> pending = new LinkedHashMap<>();
+    private FileOutputStream journalStream;
+    private Writer journalWriter;
+    private boolean loaded = false;
+    private long lastId = 0;
+    private int staleLineCount = 0;
+    private int failedAttempts = 0;
+    private long nextAttemptAtMillis = 0;
+
+    public RecordOutbox(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * 記録を1件追加し、ディスクに同期されるまで待ってから返す
+     * @param sheetName 書き込み先のシート名
+     * @param row 書き込む行データ
+     * @return 追加された記録
+     */
+    public synchronized OutboxEntry append(String sheetName, List<String> row) throws IOException {
+        ensureLoaded();
+        long now = System.currentTimeMillis();
+        // IDは作成時刻ベースで単調増加させる
+        long id = Math.max(now, lastId + 1);
+        OutboxEntry entry = new OutboxEntry(id, now, sheetName, row);
+        writeLine(entry.encode());
+        lastId = id;
+        pending.put(id, entry);
+        return entry;
+    }
+
+    /**
+     * 未送信の記録を追加順に返す
+     */
+    public synchronized List<OutboxEntry> getPendingEntries() throws IOException {
+        ensureLoaded();
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int getPendingCount() throws IOException {
+        ensureLoaded();
+        return pending.size();
+    }
+
+    /**
+     * 指定した記録を送信済みとしてマークする
+     * @param ids 送信が完了した記録のID
+     */
+    public synchronized void acknowledge(Collection<Long> ids) throws IOException {
+        ensureLoaded();
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (Long id : ids) {
+            if (pending.remove(id) != null) {
+                sb.append(OutboxEntry.encodeAck(id)).append('\n');
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        journalWriter.write(sb.toString());
+        sync();
+        // ACK行と元のレコード行の両方が不要な行になる
+        staleLineCount += count * 2;
+        if (pending.isEmpty()) {
+            // 送るものがなくなったので再試行の状態も引き継がない
+            failedAttempts = 0;
+            nextAttemptAtMillis = 0;
+        }
+        if (pending.isEmpty() || staleLineCount >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * 未送信の記録の送信が連続して失敗した回数。送信待ちが空になると 0 に戻る
+     */
+    public synchronized int getFailedAttempts() throws IOException {
+        ensureLoaded();
+        return failedAttempts;
+    }
+
+    /**
+     * 次に送信を試みる予定の時刻。予定がない場合は 0
+     */
+    public synchronized long getNextAttemptAtMillis() throws IOException {
+        ensureLoaded();
+        return nextAttemptAtMillis;
+    }
+
+    /**
+     * 再試行の状態を保存し、ディスクに同期されるまで待ってから返す
+     * @param failedAttempts 連続して失敗した回数。0 で状態を消す
+     * @param nextAttemptAtMillis 次に送信を試みる時刻。予定がない場合は 0
+     */
+    public synchronized void saveRetryState(int failedAttempts, long nextAttemptAtMillis) throws IOException {
+        ensureLoaded();
+        if (failedAttempts == this.failedAttempts && nextAttemptAtMillis == this.nextAttemptAtMillis) {
+            return;
+        }
+        writeLine(OutboxEntry.encodeRetry(failedAttempts, nextAttemptAtMillis));
+        this.failedAttempts = failedAttempts;
+        this.nextAttemptAtMillis = nextAttemptAtMillis;
+        // 前の状態の行は不要になる
+        staleLineCount++;
+    }
+
+    public synchronized void close() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+            journalStream = null;
+        }
+        loaded = false;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        pending.clear();
+        staleLineCount = 0;
+        failedAttempts = 0;
+        nextAttemptAtMillis = 0;
+        if (journalFile.exists()) {
+            dropPartialLastLine();
+            readJournal();
+        }
+        openForAppend();
+        loaded = true;
+    }
+
+    private void readJournal() throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(OutboxEntry.TYPE_ACK + "\t")) {
+                    try {
+                        pending.remove(Long.parseLong(line.substring(2)));
+                    } catch (NumberFormatException ignored) {
+                        // 書き込み途中で終了した行は無視する
+                    }
+                    staleLineCount += 2;
+                    continue;
+                }
+                if (line.startsWith(OutboxEntry.TYPE_RETRY + "\t")) {
+                    readRetryState(line);
+                    staleLineCount++;
+                    continue;
+                }
+                OutboxEntry entry = OutboxEntry.decode(line);
+                if (entry == null) {
+                    // 書き込み途中で終了した行は無視する
+                    staleLineCount++;
+                    continue;
+                }
+                pending.put(entry.getId(), entry);
+                lastId = Math.max(lastId, entry.getId());
+            }
+        }
+    }
+
+    private void readRetryState(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 3) {
+            // 書き込み途中で終了した行は無視する
+            return;
+        }
+        try {
+            int attempts = Integer.parseInt(fields[1]);
+            long nextAttemptAt = Long.parseLong(fields[2]);
+            failedAttempts = attempts;
+            nextAttemptAtMillis = nextAttemptAt;
+        } catch (NumberFormatException ignored) {
+            // 書き込み途中で終了した行は無視する
+        }
+    }
+
+    /**
+     * ファイルが改行で終わっていなければ、最後の改行より後ろ（書き込み途中で終了した行）を切り詰める。
+     * 行は改行まで同期してから追加を完了とするので、切り詰めた行はどれも追加が完了していない。
+     */
+    private void dropPartialLastLine() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long length = file.length();
+            long end = length;
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < length) {
+                file.setLength(end);
+                file.getFD().sync();
+            }
+        }
+    }
+
+    private void openForAppend() throws IOException {
+        journalStream = new FileOutputStream(journalFile, true);
+        journalWriter = new OutputStreamWriter(journalStream, StandardCharsets.UTF_8);
+    }
+
+    private void writeLine(String line) throws IOException {
+        journalWriter.write(line);
+        journalWriter.write('\n');
+        sync();
+    }
+
+    private void sync() throws IOException {
+        journalWriter.flush();
+        journalStream.getFD().sync();
+    }
+
+    /**
+     * 未送信の記録だけを一時ファイルに書き出し、rename で置き換える
+     */
+    private void compact() throws IOException {
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            for (OutboxEntry entry : pending.values()) {
+                writer.write(entry.encode());
+                writer.write('\n');
+            }
+            if (failedAttempts > 0) {
+                writer.write(OutboxEntry.encodeRetry(failedAttempts, nextAttemptAtMillis));
+                writer.write('\n');
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        journalWriter.close();
+        boolean replaced = tempFile.renameTo(journalFile);
+        openForAppend();
+        if (!replaced) {
+            // ACK行は書き込み済みなので、置き換えに失敗しても記録の状態は正しいまま
+            throw new IOException("Failed to replace outbox journal: " + journalFile);
+        }
+        staleLineCount = 0;
+    }
+}
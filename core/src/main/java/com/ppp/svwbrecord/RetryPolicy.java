@@ -0,0 +1,76 @@
+package com.ppp.svwbrecord;
+
+import java.util.Random;
+
+/**
+ * 送信に失敗したときの再試行の間隔を決める。
+ * 失敗が続くたびに間隔を2倍に伸ばし（上限あり）、複数の端末や記録が同時に再送しないよう後半半分の範囲でばらつかせる。
+ */
+public final class RetryPolicy {
+
+    static final long DEFAULT_BASE_DELAY_MS = 2000; // 2秒
+    static final long DEFAULT_MAX_DELAY_MS = 5 * 60 * 1000; // 5分
+    // 最短2秒から始めて、合計でおよそ10分間再試行する
+    static final int DEFAULT_MAX_ATTEMPTS = 8;
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final int maxAttempts;
+    private final Random random;
+
+    /**
+     * @param baseDelayMs 1回目の失敗の後に待つ間隔の上限
+     * @param maxDelayMs 間隔を伸ばす上限
+     * @param maxAttempts 連続して再試行する最大回数
+     * @param random 間隔をばらつかせる乱数
+     */
+    public RetryPolicy(long baseDelayMs, long maxDelayMs, int maxAttempts, Random random) {
+        if (baseDelayMs < 1 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Invalid delays: base=" + baseDelayMs + ", max=" + maxDelayMs);
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxAttempts = maxAttempts;
+        this.random = random;
+    }
+
+    public static RetryPolicy createDefault() {
+        return new RetryPolicy(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_ATTEMPTS, new Random());
+    }
+
+    /**
+     * 連続して失敗した後、次の送信までに待つ時間を返す
+     * @param failedAttempts 連続して失敗した回数（1以上）
+     */
+    public long nextDelayMs(int failedAttempts) {
+        long ceiling = ceilingMs(failedAttempts);
+        long half = ceiling / 2;
+        return ceiling - half + (long) (random.nextDouble() * (half + 1));
+    }
+
+    /**
+     * ばらつかせる前の間隔。失敗するたびに2倍になり、{@code maxDelayMs} で頭打ちになる
+     */
+    long ceilingMs(int failedAttempts) {
+        long delay = baseDelayMs;
+        for (int i = 1; i < failedAttempts && delay < maxDelayMs; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxDelayMs);
+    }
+
+    /**
+     * これ以上再試行せず、次の送信依頼まで待つべきか
+     * @param failedAttempts 連続して失敗した回数
+     */
+    public boolean isExhausted(int failedAttempts) {
+        return failedAttempts > maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,20 @@
+package com.ppp.svwbrecord;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * スプレッドシートから対戦記録の行を読み込む処理の抽象。
+ * 取り込み処理（{@link SheetHistoryImporter}）から Sheets API の呼び出し方を切り離すために使う。
+ */
+public interface SheetRowReader {
+
+    /**
+     * 指定したシートの行範囲を読み込む
+     * @param sheetName 読み込むシート名
+     * @param firstRow 読み込む最初の行番号（1始まり）
+     * @param lastRow 読み込む最後の行番号（この行を含む）
+     * @return firstRow から順に並んだ行データ。末尾の空行は含まれないので、要求した行数より少ない場合がある
+     */
+    List<List<Object>> readRows(String sheetName, int firstRow, int lastRow) throws IOException;
+}
@@ -0,0 +1,29 @@
+package com.ppp.svwbrecord;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 対戦記録をスプレッドシートに書き込む処理の抽象。
+ * 送信処理（アプリの RecordSyncEngine）から Sheets API の呼び出し方を切り離すために使う。
+ */
+public interface SheetRowWriter {
+
+    /**
+     * 指定したシートの末尾に行を書き込む
+     * @param sheetName 書き込み先のシート名
+     * @param rows 書き込む行データ（追加順）。各行の最後の値は記録のID（{@link OutboxEntry#toRowData()}）
+     * @return 書き込まれた最初の行の行番号（不明な場合は -1）
+     */
+    int writeRows(String sheetName, List<List<Object>> rows) throws IOException;
+
+    /**
+     * 指定した行より後ろに書き込まれている記録のIDと行番号を読み込む。
+     * 応答が失われた書き込みを再送する前に、既にシートに書き込まれていないか確認するために使う。
+     * @param sheetName 読み込むシート名
+     * @param afterRow この行より後ろを読み込む。分からない場合は 0（記録の先頭の行から読み込む）
+     * @return 記録のID -> 行番号。IDのない行（このアプリ以外で書き込まれた行など）は含まない
+     */
+    Map<Long, Integer> readWrittenRows(String sheetName, int afterRow) throws IOException;
+}
@@ -0,0 +1,207 @@
+package com.ppp.svwbrecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 勝敗数の集計。記録1件ごとに該当する集計値だけを更新するので、履歴を読み直す必要がない。
+ * プレイヤー（シート）ごとに、自分のデッキ別、対面（自分のデッキ × 相手のデッキ）別、
+ * 対面 × 先攻/後攻別、先攻/後攻別、相手ランク別の勝敗数を持つ。
+ * スレッドセーフではないので、呼び出し側で排他すること。
+ */
+public class WinRateAggregator {
+
+    private static final int MAGIC = 0x53565752; // "SVWR"
+    private static final int FORMAT_VERSION = 2;
+
+    // 複合キーの区切り文字（UI から入力される名前には含まれない）
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    enum Dimension {
+        TOTAL, MY_DECK, MATCHUP, MATCHUP_TURN, TURN, OPPONENT_RANK
+    }
+
+    /**
+     * 勝敗数
+     */
+    public static final class Tally {
+        static final Tally EMPTY = new Tally(0, 0);
+
+        private int wins;
+        private int losses;
+
+        Tally(int wins, int losses) {
+            this.wins = wins;
+            this.losses = losses;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+
+        public int getTotal() {
+            return wins + losses;
+        }
+
+        /** 勝率（0.0〜1.0）。対戦がない場合は NaN */
+        public double getWinRate() {
+            int total = getTotal();
+            return total == 0 ? Double.NaN : (double) wins / total;
+        }
+    }
+
+    private final Map<Dimension, Map<String, Tally>> tallies = new HashMap<>();
+    private long recordCount = 0;
+
+    public WinRateAggregator() {
+        for (Dimension dimension : Dimension.values()) {
+            tallies.put(dimension, new HashMap<String, Tally>());
+        }
+    }
+
+    /**
+     * 記録を1件集計に加える。勝ち/負けのどちらでもない記録は件数だけ数えて集計値には含めない。
+     * @return 集計値に加えた場合は true
+     */
+    public boolean add(MatchRecord record) {
+        recordCount++;
+        boolean win = record.isWin();
+        if (!win && !record.isLoss()) {
+            return false;
+        }
+        String sheet = record.getSheetName();
+        increment(Dimension.TOTAL, key(sheet), win);
+        increment(Dimension.MY_DECK, key(sheet, record.getMyDeck()), win);
+        increment(Dimension.MATCHUP, key(sheet, record.getMyDeck(), record.getOpponentDeck()), win);
+        increment(Dimension.MATCHUP_TURN, key(sheet, record.getMyDeck(), record.getOpponentDeck(), record.getTurn()), win);
+        increment(Dimension.TURN, key(sheet, record.getTurn()), win);
+        increment(Dimension.OPPONENT_RANK, key(sheet, record.getOpponentRank()), win);
+        return true;
+    }
+
+    public void clear() {
+        for (Map<String, Tally> map : tallies.values()) {
+            map.clear();
+        }
+        recordCount = 0;
+    }
+
+    /** {@link #add} に渡された記録の件数（集計値に含めなかった記録も数える） */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public Tally getTotal(String sheetName) {
+        return get(Dimension.TOTAL, key(sheetName));
+    }
+
+    public Tally getByMyDeck(String sheetName, String myDeck) {
+        return get(Dimension.MY_DECK, key(sheetName, myDeck));
+    }
+
+    public Tally getMatchup(String sheetName, String myDeck, String opponentDeck) {
+        return get(Dimension.MATCHUP, key(sheetName, myDeck, opponentDeck));
+    }
+
+    /** @param turn {@link MatchRecord#TURN_FIRST} または {@link MatchRecord#TURN_SECOND} */
+    public Tally getMatchupByTurn(String sheetName, String myDeck, String opponentDeck, String turn) {
+        return get(Dimension.MATCHUP_TURN, key(sheetName, myDeck, opponentDeck, turn));
+    }
+
+    /** @param turn {@link MatchRecord#TURN_FIRST} または {@link MatchRecord#TURN_SECOND} */
+    public Tally getByTurn(String sheetName, String turn) {
+        return get(Dimension.TURN, key(sheetName, turn));
+    }
+
+    public Tally getByOpponentRank(String sheetName, String opponentRank) {
+        return get(Dimension.OPPONENT_RANK, key(sheetName, opponentRank));
+    }
+
+    /**
+     * 集計値を書き出す。キーと勝敗数だけを持つので、記録件数ではなく組み合わせの数に比例したサイズになる。
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(recordCount);
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, Tally> map = tallies.get(dimension);
+            out.writeInt(map.size());
+            for (Map.Entry<String, Tally> entry : map.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().wins);
+                out.writeInt(entry.getValue().losses);
+            }
+        }
+    }
+
+    /**
+     * {@link #writeTo} で書き出した集計値を読み込む
+     * @throws IOException 形式が不正な場合
+     */
+    public static WinRateAggregator readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a win rate snapshot");
+        }
+        int formatVersion = in.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported win rate snapshot format: " + formatVersion);
+        }
+        WinRateAggregator aggregator = new WinRateAggregator();
+        aggregator.recordCount = in.readLong();
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, Tally> map = aggregator.tallies.get(dimension);
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Invalid entry count: " + size);
+            }
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                int wins = in.readInt();
+                int losses = in.readInt();
+                map.put(key, new Tally(wins, losses));
+            }
+        }
+        return aggregator;
+    }
+
+    private void increment(Dimension dimension, String key, boolean win) {
+        Map<String, Tally> map = tallies.get(dimension);
+        Tally tally = map.get(key);
+        if (tally == null) {
+            tally = new Tally(0, 0);
+            map.put(key, tally);
+        }
+        if (win) {
+            tally.wins++;
+        } else {
+            tally.losses++;
+        }
+    }
+
+    /**
+     * 集計値のコピーを返す（返した値はその後の更新の影響を受けない）
+     */
+    private Tally get(Dimension dimension, String key) {
+        Tally tally = tallies.get(dimension).get(key);
+        return tally != null ? new Tally(tally.wins, tally.losses) : Tally.EMPTY;
+    }
+
+    private static String key(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                sb.append(KEY_SEPARATOR);
+            }
+            sb.append(parts[i] != null ? parts[i] : "");
+        }
+        return sb.toString();
+    }
+}
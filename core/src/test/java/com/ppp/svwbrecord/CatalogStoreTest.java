@@ -0,0 +1,112 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link CatalogStore} が一覧の順序と ID を保って保存・読み込みできることを確認する。
+ */
+public class CatalogStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File storeFile;
+    private CatalogStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        storeFile = new File(temporaryFolder.getRoot(), "catalog.bin");
+        store = new CatalogStore(storeFile);
+    }
+
+    @Test
+    public void read_missingFileIsEmpty() throws Exception {
+        CatalogStore.Snapshot snapshot = store.read();
+
+        assertEquals(0, snapshot.getCatalogVersion());
+        assertTrue(snapshot.getDecks().isEmpty());
+        assertEquals(0, store.readCatalogVersion());
+    }
+
+    @Test
+    public void write_keepsOrderAndNamesWithCommas() throws Exception {
+        List<String> players = Arrays.asList("ぷれいやーB", "プレイヤーA");
+        List<String> decks = Arrays.asList("進化ロイヤル, 改", "アグロエルフ", "秘術ウィッチ");
+        MasterCatalog catalog = new MasterCatalog(players, decks, decks, Collections.<String>emptyList());
+
+        store.write(catalog, decks, 1000L);
+        CatalogStore.Snapshot snapshot = new CatalogStore(storeFile).read();
+
+        assertEquals(catalog.getVersion(), snapshot.getCatalogVersion());
+        assertEquals(catalog.getVersion(), store.readCatalogVersion());
+        assertEquals(1000L, snapshot.getFetchedAtMillis());
+        assertEquals(players, CatalogStore.Snapshot.namesOf(snapshot.getPlayers()));
+        assertEquals(decks, CatalogStore.Snapshot.namesOf(snapshot.getDecks()));
+        assertEquals(MasterCatalog.DEFAULT_OPPONENT_RANKS, CatalogStore.Snapshot.namesOf(snapshot.getOpponentRanks()));
+    }
+
+    @Test
+    public void write_keepsIdsOfExistingEntries() throws Exception {
+        List<String> before = Arrays.asList("A", "B", "C");
+        store.write(new MasterCatalog(before, before, before, null), before, 1L);
+        CatalogStore.Snapshot first = store.read();
+
+        List<String> after = Arrays.asList("C", "D", "A");
+        store.write(new MasterCatalog(before, after, after, null), after, 2L);
+        CatalogStore.Snapshot second = store.read();
+
+        assertEquals(idOf(first.getDecks(), "A"), idOf(second.getDecks(), "A"));
+        assertEquals(idOf(first.getDecks(), "C"), idOf(second.getDecks(), "C"));
+        int newId = idOf(second.getDecks(), "D");
+        for (CatalogStore.Entry entry : first.getDecks()) {
+            assertNotEquals(entry.getId(), newId);
+        }
+        for (CatalogStore.Entry entry : first.getPlayers()) {
+            assertNotEquals(entry.getId(), newId);
+        }
+    }
+
+    @Test
+    public void updateFetchedAt_rewritesOnlyTimestamp() throws Exception {
+        List<String> decks = Arrays.asList("A", "B");
+        store.write(new MasterCatalog(decks, decks, decks, null), decks, 1L);
+        long length = storeFile.length();
+
+        store.updateFetchedAt(42L);
+        CatalogStore.Snapshot snapshot = store.read();
+
+        assertEquals(42L, snapshot.getFetchedAtMillis());
+        assertEquals(decks, CatalogStore.Snapshot.namesOf(snapshot.getDecks()));
+        assertEquals(length, storeFile.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_corruptFileThrows() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(storeFile)) {
+            out.write(new byte[]{'n', 'o', 't', ' ', 'a', ' ', 's', 't', 'o', 'r', 'e'});
+        }
+        assertEquals(0, store.readCatalogVersion());
+        store.read();
+    }
+
+    private static int idOf(List<CatalogStore.Entry> entries, String name) {
+        for (CatalogStore.Entry entry : entries) {
+            if (entry.getName().equals(name)) {
+                return entry.getId();
+            }
+        }
+        throw new AssertionError("Entry not found: " + name);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DeckOrdering} の並べ替えが旧方式（比較のたびに List.indexOf）と同じ結果になることを確認する。
+ * 速度の比較は JMH の DeckOrderingBenchmark で行う。
+ */
+public class DeckOrderingTest {
+
+    private static final int DECK_COUNT = 250;
+
+    @Test
+    public void rankIndexSort_matchesLegacy() {
+        Random random = new Random(42);
+        List<String> sortOrder = new ArrayList<>();
+        for (int i = 0; i < DECK_COUNT; i++) {
+            sortOrder.add("デッキ" + i);
+        }
+        Collections.shuffle(sortOrder, random);
+        List<String> decks = new ArrayList<>(sortOrder);
+        // 並び順リストにないデッキも混ぜる
+        for (int i = 0; i < 10; i++) {
+            decks.add("新デッキ" + i);
+        }
+        Collections.shuffle(decks, random);
+
+        assertEquals(legacySort(decks, sortOrder), DeckOrdering.compile(sortOrder).sort(decks));
+    }
+
+    @Test
+    public void sort_fallsBackToAlphabeticalWithoutSortOrder() {
+        List<String> decks = new ArrayList<>();
+        decks.add("ロイヤル");
+        decks.add("ウィッチ");
+        decks.add("エルフ");
+
+        List<String> sorted = DeckOrdering.compile(Collections.<String>emptyList()).sort(decks);
+
+        List<String> expected = new ArrayList<>(decks);
+        Collections.sort(expected);
+        assertEquals(expected, sorted);
+    }
+
+    /**
+     * 以前の OverlayService.loadDeckNames() と同じ並べ替え（ログ出力を除く）
+     */
+    private static List<String> legacySort(List<String> decks, List<String> sortOrderList) {
+        List<String> loadedDeckNames = new ArrayList<>(decks);
+        loadedDeckNames.sort((deck1, deck2) -> {
+            int index1 = sortOrderList.indexOf(deck1);
+            int index2 = sortOrderList.indexOf(deck2);
+            if (index1 == -1) index1 = Integer.MAX_VALUE;
+            if (index2 == -1) index2 = Integer.MAX_VALUE;
+            return Integer.compare(index1, index2);
+        });
+        return loadedDeckNames;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DeckSearchIndex} がかな/カナ/ローマ字の違いを吸収して前方一致を優先した順で返すこと、
+ * デッキ数が多くても1回の検索が十分に速いことを確認する。
+ */
+public class DeckSearchIndexTest {
+
+    private static final List<String> DECKS = Arrays.asList(
+            "アグロエルフ", "コントロールロイヤル", "ロイヤル", "秘術ウィッチ", "ＡＦネメシス", "ドラゴン", "進化ロイヤル");
+
+    @Test
+    public void search_matchesKatakanaWithHiraganaAndRomaji() {
+        DeckSearchIndex index = DeckSearchIndex.build(DECKS);
+
+        assertEquals(Arrays.asList("ロイヤル", "コントロールロイヤル", "進化ロイヤル"), names(index, "ろいや"));
+        assertEquals(Arrays.asList("ロイヤル", "コントロールロイヤル", "進化ロイヤル"), names(index, "roiya"));
+        assertEquals(Arrays.asList("ドラゴン"), names(index, "doragon"));
+        assertEquals(Arrays.asList("アグロエルフ"), names(index, "ｴﾙﾌ"));
+        // 英字のまま一致した名前は、ローマ字として一致した名前（"あ" で始まるもの）より先に並ぶ
+        assertEquals(Arrays.asList("ＡＦネメシス", "アグロエルフ"), names(index, "af"));
+        assertEquals(Arrays.asList("秘術ウィッチ"), names(index, "秘術"));
+        assertTrue(names(index, "ぬ").isEmpty());
+    }
+
+    @Test
+    public void search_emptyQueryReturnsAllInOrderUpToLimit() {
+        DeckSearchIndex index = DeckSearchIndex.build(DECKS);
+
+        assertArrayEquals(new int[] {0, 1, 2}, index.search("", 3));
+        assertEquals(DECKS.size(), index.search(" ", 100).length);
+        assertEquals(1, index.search("ろいやる", 1).length);
+    }
+
+    @Test
+    public void romajiToHiragana_handlesDoubledConsonantsAndPendingInput() {
+        assertEquals("あっぷ", DeckSearchIndex.romajiToHiragana("appu"));
+        assertEquals("しんか", DeckSearchIndex.romajiToHiragana("shinka"));
+        assertEquals("ろい", DeckSearchIndex.romajiToHiragana("roiy"));
+        assertEquals("ちぇっく", DeckSearchIndex.romajiToHiragana("chekku"));
+    }
+
+    @Test
+    public void search_isFastForLargeDeckLists() {
+        List<String> decks = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            decks.add(DECKS.get(i % DECKS.size()) + i);
+        }
+        DeckSearchIndex index = DeckSearchIndex.build(decks);
+        String[] keystrokes = {"r", "ro", "roi", "roiy", "roiya", "roiyar", "roiyaru"};
+
+        // JIT のウォームアップ
+        for (int i = 0; i < 2_000; i++) {
+            index.search(keystrokes[i % keystrokes.length], 50);
+        }
+        int iterations = 20_000;
+        long started = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            index.search(keystrokes[i % keystrokes.length], 50);
+        }
+        long microsPerSearch = (System.nanoTime() - started) / iterations / 1000;
+
+        assertTrue("us/search=" + microsPerSearch, microsPerSearch < 1000);
+    }
+
+    private static List<String> names(DeckSearchIndex index, String query) {
+        List<String> result = new ArrayList<>();
+        for (int i : index.search(query, 50)) {
+            result.add(index.getName(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link OpponentDeckRanking} が最近の対戦ほど重く数え、古い対戦しかないデッキを除外することを確認する。
+ */
+public class OpponentDeckRankingTest {
+
+    private static final String PLAYER = "プレイヤーA";
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long NOW = 1_000 * DAY;
+
+    @Test
+    public void orderRecentFirst_searchResultsMapToSpinnerByName() {
+        List<String> catalog = Arrays.asList("アグロエルフ", "進化ロイヤル", "秘術ウィッチ", "ランプドラゴン");
+        // マスターデータにないデッキは並びに含めない
+        List<String> ordered = OpponentDeckRanking.orderRecentFirst(catalog,
+                Arrays.asList("ランプドラゴン", "消えたデッキ", "進化ロイヤル"));
+        assertEquals(Arrays.asList("ランプドラゴン", "進化ロイヤル", "アグロエルフ", "秘術ウィッチ"), ordered);
+
+        // 記録パネルと同じく、検索の索引はマスターデータの並び、スピナーは先頭の案内 + 最近のデッキ順
+        DeckSearchIndex index = DeckSearchIndex.build(catalog);
+        List<String> spinnerItems = new ArrayList<>();
+        spinnerItems.add("（相手のデッキを選択）");
+        spinnerItems.addAll(ordered);
+        int[] results = index.search("ウィッチ", 10);
+        assertEquals(1, results.length);
+        String name = index.getName(results[0]);
+        assertEquals("秘術ウィッチ", spinnerItems.get(spinnerItems.indexOf(name)));
+        // 索引の位置のまま選ぶと別のデッキになる
+        assertNotEquals(name, spinnerItems.get(results[0] + 1));
+    }
+
+    @Test
+    public void recentMatchesOutweighOlderOnes() {
+        OpponentDeckRanking ranking = new OpponentDeckRanking();
+        // 10日前に5回対戦したデッキより、2日前に1回対戦したデッキを上に並べる
+        for (int i = 0; i < 5; i++) {
+            ranking.add(match("エルフ", NOW - 10 * DAY));
+        }
+        ranking.add(match("ウィッチ", NOW - DAY));
+        ranking.add(match("ウィッチ", NOW));
+        ranking.add(match("ネメシス", NOW - 2 * DAY));
+        // 30日前に1回だけ対戦したデッキは重みが MIN_WEIGHT を下回るので含めない
+        ranking.add(match("ドラゴン", NOW - 30 * DAY));
+
+        assertEquals(Arrays.asList("ウィッチ", "ネメシス", "エルフ"), ranking.getRecentDecks(PLAYER, NOW, 5));
+        assertEquals(Collections.singletonList("ウィッチ"), ranking.getRecentDecks(PLAYER, NOW, 1));
+        assertEquals(1.0 + Math.pow(2, -1.0 / 3), ranking.getWeight(PLAYER, "ウィッチ", NOW), 1e-9);
+    }
+
+    @Test
+    public void orderDoesNotDependOnInsertionOrder() {
+        OpponentDeckRanking forward = new OpponentDeckRanking();
+        OpponentDeckRanking backward = new OpponentDeckRanking();
+        long[] times = {NOW - 5 * DAY, NOW - 3 * DAY, NOW - DAY};
+        for (int i = 0; i < times.length; i++) {
+            forward.add(match("ロイヤル", times[i]));
+            backward.add(match("ロイヤル", times[times.length - 1 - i]));
+        }
+
+        assertEquals(forward.getWeight(PLAYER, "ロイヤル", NOW), backward.getWeight(PLAYER, "ロイヤル", NOW), 1e-9);
+    }
+
+    @Test
+    public void addingRecordInvalidatesCachedOrder() {
+        OpponentDeckRanking ranking = new OpponentDeckRanking();
+        ranking.add(match("エルフ", NOW - DAY));
+        ranking.add(match("ロイヤル", NOW - 2 * DAY));
+        assertEquals(Arrays.asList("エルフ", "ロイヤル"), ranking.getRecentDecks(PLAYER, NOW, 5));
+
+        ranking.add(match("ロイヤル", NOW));
+
+        assertEquals(Arrays.asList("ロイヤル", "エルフ"), ranking.getRecentDecks(PLAYER, NOW, 5));
+        assertTrue(ranking.getRecentDecks("プレイヤーB", NOW, 5).isEmpty());
+    }
+
+    @Test
+    public void writeAndRead_roundTrips() throws Exception {
+        OpponentDeckRanking ranking = new OpponentDeckRanking();
+        ranking.add(match("エルフ", NOW - DAY));
+        ranking.add(match("ロイヤル", NOW));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ranking.writeTo(new DataOutputStream(bytes));
+        OpponentDeckRanking restored = OpponentDeckRanking.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(Arrays.asList("ロイヤル", "エルフ"), restored.getRecentDecks(PLAYER, NOW, 5));
+        assertEquals(ranking.getWeight(PLAYER, "エルフ", NOW), restored.getWeight(PLAYER, "エルフ", NOW), 1e-9);
+    }
+
+    private static MatchRecord match(String opponentDeck, long recordedAt) {
+        return MatchRecord.fromRow(0, PLAYER, recordedAt,
+                Arrays.asList("01/01", "", "ロイヤル", MatchRecord.TURN_FIRST, opponentDeck, MatchRecord.RESULT_WIN),
+                MatchRecord.NO_REMOTE_ROW);
+    }
+}
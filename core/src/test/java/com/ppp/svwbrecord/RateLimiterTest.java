@@ -0,0 +1,118 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RateLimiter} の送信ペース、優先度、Retry-After による停止を確認する。
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void acquire_usesBurstThenPacesAtRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 5, 0);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(RateLimiter.Lane.FOREGROUND);
+        }
+        long burstMs = elapsedMs(started);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(RateLimiter.Lane.FOREGROUND);
+        }
+        long totalMs = elapsedMs(started);
+
+        assertTrue("burst=" + burstMs, burstMs < 50);
+        // 溜まっていた分の後は 20ms ごとに1件
+        assertTrue("total=" + totalMs, totalMs >= 180);
+        assertEquals(15, limiter.getAcquiredCount());
+        assertTrue(limiter.getThrottledCount() >= 9);
+    }
+
+    @Test
+    public void background_leavesReservedTokensForForeground() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 3, 1);
+        limiter.acquire(RateLimiter.Lane.BACKGROUND);
+        limiter.acquire(RateLimiter.Lane.BACKGROUND);
+
+        // バックグラウンドはこれ以上すぐには使えないが、記録の書き込みは待たずに使える
+        long started = System.nanoTime();
+        limiter.acquire(RateLimiter.Lane.FOREGROUND);
+        assertTrue(elapsedMs(started) < 100);
+        assertEquals(0, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void foreground_goesAheadOfWaitingBackground() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1, 0);
+        limiter.acquire(RateLimiter.Lane.FOREGROUND);
+
+        List<RateLimiter.Lane> order = Collections.synchronizedList(new ArrayList<RateLimiter.Lane>());
+        CountDownLatch backgroundStarted = new CountDownLatch(3);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            threads.add(new Thread(() -> {
+                backgroundStarted.countDown();
+                acquireAndRecord(limiter, RateLimiter.Lane.BACKGROUND, order);
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        assertTrue(backgroundStarted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(10);
+        Thread foreground = new Thread(() -> acquireAndRecord(limiter, RateLimiter.Lane.FOREGROUND, order));
+        foreground.start();
+        threads.add(foreground);
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(4, order.size());
+        // 先に待っていたバックグラウンドの呼び出しより前か、遅くとも2番目に通る
+        assertTrue(order.toString(), order.indexOf(RateLimiter.Lane.FOREGROUND) <= 1);
+    }
+
+    @Test
+    public void pause_blocksAllLanesUntilRetryAfter() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 10, 0);
+        limiter.pause(300);
+
+        long started = System.nanoTime();
+        limiter.acquire(RateLimiter.Lane.FOREGROUND);
+
+        assertTrue(elapsedMs(started) >= 290);
+        assertEquals(1, limiter.getRateLimitedCount());
+    }
+
+    @Test
+    public void parseRetryAfter_acceptsSecondsAndHttpDates() {
+        long now = 1_700_000_000_000L;
+        assertEquals(30_000, RateLimiter.parseRetryAfterMs("30", now));
+        assertEquals(0, RateLimiter.parseRetryAfterMs("-5", now));
+        // 1_700_000_000_000 は 2023-11-14 22:13:20 GMT
+        assertEquals(10_000, RateLimiter.parseRetryAfterMs("Tue, 14 Nov 2023 22:13:30 GMT", now));
+        assertEquals(-1, RateLimiter.parseRetryAfterMs(null, now));
+        assertEquals(-1, RateLimiter.parseRetryAfterMs("soon", now));
+    }
+
+    private static void acquireAndRecord(RateLimiter limiter, RateLimiter.Lane lane, List<RateLimiter.Lane> order) {
+        try {
+            limiter.acquire(lane);
+            order.add(lane);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long elapsedMs(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
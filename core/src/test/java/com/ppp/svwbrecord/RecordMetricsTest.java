@@ -0,0 +1,126 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RecordMetrics} と {@link LatencyHistogram} の集計を確認する。
+ */
+public class RecordMetricsTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    public void histogram_percentilesUseBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.add(3);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.add(150);
+        }
+        histogram.add(4000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(3, histogram.getMinMs());
+        assertEquals(4000, histogram.getMaxMs());
+        assertEquals((90 * 3 + 9 * 150 + 4000) / 100, histogram.getMeanMs());
+        assertEquals(5, histogram.getPercentileMs(50));
+        assertEquals(5, histogram.getPercentileMs(90));
+        assertEquals(200, histogram.getPercentileMs(99));
+        assertEquals(4000, histogram.getPercentileMs(100));
+    }
+
+    @Test
+    public void histogram_percentileDoesNotExceedMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(-5); // 時計の巻き戻りは 0 として扱う
+        histogram.add(120);
+
+        assertEquals(0, histogram.getMinMs());
+        assertEquals(120, histogram.getPercentileMs(99));
+        assertEquals(0, new LatencyHistogram().getPercentileMs(50));
+    }
+
+    @Test
+    public void acknowledgedLatencyStartsFromTapOrFromOutboxTime() {
+        RecordMetrics metrics = new RecordMetrics(START);
+        OutboxEntry tapped = entry(1, START + 5);
+        OutboxEntry fromEarlierProcess = entry(2, START - 1000);
+        // ローカル保存はディスクへの同期が終わった時点まで計る
+        metrics.onCommitted(tapped, START, START + 40, 2);
+
+        metrics.onAcknowledged(Arrays.asList(fromEarlierProcess, tapped), START + 1500, 0);
+        metrics.onSheetsCall(800, true);
+
+        assertEquals(2, metrics.getRecordsAcknowledged());
+        assertEquals(0.5, metrics.getSheetsCallsPerRecord(), 1e-9);
+        String report = metrics.formatReport(START + 61_000);
+        assertTrue(report, report.contains("計測時間: 0:01:01"));
+        assertTrue(report, report.contains("[タップ→ローカル保存]\n  n=1 mean=40ms"));
+        // タップから1500ms、以前のプロセスの記録はキューへの保存から2500ms
+        assertTrue(report, report.contains("[タップ→スプレッドシート書き込み完了]\n  n=2 mean=2000ms"));
+        assertTrue(report, report.contains("現在: 0 / 最大: 2"));
+    }
+
+    @Test
+    public void retriesAndFailuresAreCountedByCause() {
+        RecordMetrics metrics = new RecordMetrics(START);
+        metrics.onRetry(RecordMetrics.Cause.TIMEOUT);
+        metrics.onRetry(RecordMetrics.Cause.TIMEOUT);
+        metrics.onRetry(RecordMetrics.Cause.NETWORK);
+        metrics.onFailure(RecordMetrics.Cause.AUTH);
+        metrics.onSheetsCall(30000, false);
+
+        assertEquals(2, metrics.getRetryCount(RecordMetrics.Cause.TIMEOUT));
+        assertEquals(1, metrics.getRetryCount(RecordMetrics.Cause.NETWORK));
+        assertEquals(0, metrics.getRetryCount(RecordMetrics.Cause.AUTH));
+        assertEquals(1, metrics.getFailureCount(RecordMetrics.Cause.AUTH));
+        String report = metrics.formatReport(START);
+        assertTrue(report, report.contains("タイムアウト: 2 / 0"));
+        assertTrue(report, report.contains("認証エラー: 0 / 1"));
+        assertTrue(report, report.contains("呼び出し: 1 (失敗 1)"));
+    }
+
+    @Test
+    public void rateLimitedResend_countsAsFailedCallAndRetry() {
+        RecordMetrics metrics = new RecordMetrics(START);
+        metrics.onRateLimitedResend();
+        metrics.onSheetsCall(1200, true);
+        metrics.onAcknowledged(Collections.singletonList(entry(1, START)), START + 1500, 0);
+
+        assertEquals(2, metrics.getSheetsCalls());
+        assertEquals(2.0, metrics.getSheetsCallsPerRecord(), 1e-9);
+        assertEquals(1, metrics.getRetryCount(RecordMetrics.Cause.RATE_LIMITED));
+        String report = metrics.formatReport(START);
+        assertTrue(report, report.contains("呼び出し: 2 (失敗 1)"));
+        assertTrue(report, report.contains("レート制限: 1 / 0"));
+    }
+
+    @Test
+    public void reset_clearsCountersButKeepsPendingTapTimes() {
+        RecordMetrics metrics = new RecordMetrics(START);
+        OutboxEntry pending = entry(1, START + 10);
+        metrics.onCommitted(pending, START, START + 10, 3);
+        metrics.onRetry(RecordMetrics.Cause.OTHER);
+
+        metrics.reset(START + 100);
+        metrics.onAcknowledged(Collections.singletonList(pending), START + 300, 2);
+
+        assertEquals(0, metrics.getRetryCount(RecordMetrics.Cause.OTHER));
+        assertEquals(1, metrics.getRecordsAcknowledged());
+        String report = metrics.formatReport(START + 300);
+        assertTrue(report, report.contains("[タップ→ローカル保存]\n  n=0"));
+        assertTrue(report, report.contains("[タップ→スプレッドシート書き込み完了]\n  n=1 mean=300ms"));
+        assertTrue(report, report.contains("現在: 2 / 最大: 3"));
+    }
+
+    private static OutboxEntry entry(long id, long createdAt) {
+        return new OutboxEntry(id, createdAt, "プレイヤーA",
+                Arrays.asList("01/01", "", "ロイヤル", "先攻", "エルフ", "勝ち"));
+    }
+}
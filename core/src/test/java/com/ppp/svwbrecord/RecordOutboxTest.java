@@ -0,0 +1,107 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RecordOutbox} が記録と再試行の状態を再起動後に復元できること、書き込み途中で終了した行を記録として読まないことを確認する。
+ */
+public class RecordOutboxTest {
+
+    private static final List<String> ROW = Arrays.asList("06/01", "", "自分", "先攻", "相手", "勝ち");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void pendingEntries_surviveReopen() throws Exception {
+        File journal = temporaryFolder.newFile("outbox.journal");
+        RecordOutbox outbox = new RecordOutbox(journal);
+        OutboxEntry first = outbox.append("A", ROW);
+        OutboxEntry second = outbox.append("B", ROW);
+        outbox.acknowledge(Collections.singletonList(first.getId()));
+        outbox.close();
+
+        RecordOutbox reopened = new RecordOutbox(journal);
+        List<OutboxEntry> pending = reopened.getPendingEntries();
+        assertEquals(1, pending.size());
+        assertEquals(second.getId(), pending.get(0).getId());
+        assertEquals(ROW, pending.get(0).getRow());
+        reopened.close();
+    }
+
+    @Test
+    public void retryState_survivesReopenAndCompaction() throws Exception {
+        File journal = temporaryFolder.newFile("outbox.journal");
+        RecordOutbox outbox = new RecordOutbox(journal);
+        OutboxEntry kept = outbox.append("A", ROW);
+        outbox.saveRetryState(1, 1000);
+        outbox.saveRetryState(2, 5000);
+        // 詰め直しが起きるまで ACK する
+        for (int i = 0; i < 40; i++) {
+            outbox.acknowledge(Collections.singletonList(outbox.append("B", ROW).getId()));
+        }
+        outbox.close();
+
+        RecordOutbox reopened = new RecordOutbox(journal);
+        assertEquals(2, reopened.getFailedAttempts());
+        assertEquals(5000, reopened.getNextAttemptAtMillis());
+        assertEquals(kept.getId(), reopened.getPendingEntries().get(0).getId());
+
+        // 送信待ちが空になったら状態も消える
+        reopened.acknowledge(Collections.singletonList(kept.getId()));
+        reopened.close();
+        RecordOutbox emptied = new RecordOutbox(journal);
+        assertEquals(0, emptied.getFailedAttempts());
+        assertEquals(0, emptied.getNextAttemptAtMillis());
+        emptied.close();
+    }
+
+    @Test
+    public void tornLastLine_isDroppedOnReopen() throws Exception {
+        File journal = temporaryFolder.newFile("outbox.journal");
+        RecordOutbox outbox = new RecordOutbox(journal);
+        OutboxEntry kept = outbox.append("A", ROW);
+        outbox.close();
+        // 改行まで書き込む前に終了した行（列が欠けている）
+        try (OutputStream out = new FileOutputStream(journal, true)) {
+            out.write("R\t99999999999999\t99999999999999\tプレ".getBytes(StandardCharsets.UTF_8));
+        }
+
+        RecordOutbox reopened = new RecordOutbox(journal);
+        List<OutboxEntry> pending = reopened.getPendingEntries();
+        assertEquals(1, pending.size());
+        assertEquals(kept.getId(), pending.get(0).getId());
+        // 切れた行の続きとして書き込まれない
+        OutboxEntry added = reopened.append("B", ROW);
+        reopened.close();
+
+        RecordOutbox again = new RecordOutbox(journal);
+        pending = again.getPendingEntries();
+        assertEquals(2, pending.size());
+        assertEquals(added.getId(), pending.get(1).getId());
+        assertEquals("B", pending.get(1).getSheetName());
+        assertEquals(ROW, pending.get(1).getRow());
+        again.close();
+    }
+
+    @Test
+    public void decode_rejectsLineWithWrongColumnCount() {
+        OutboxEntry entry = new OutboxEntry(1, 1, "A", ROW);
+        assertNotNull(OutboxEntry.decode(entry.encode()));
+        assertNull(OutboxEntry.decode("R\t1\t1\tA"));
+        assertNull(OutboxEntry.decode(entry.encode() + "\textra"));
+        assertNull(OutboxEntry.decode("R\t1\t1\tA\t06/01\t\t自分"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RetryPolicy} の再試行の間隔を確認する。
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void delay_doublesWithinJitterRangeUntilCap() {
+        RetryPolicy policy = new RetryPolicy(1000, 10_000, 10, new Random(1));
+        long[] ceilings = {1000, 2000, 4000, 8000, 10_000, 10_000};
+        for (int attempt = 1; attempt <= ceilings.length; attempt++) {
+            assertEquals(ceilings[attempt - 1], policy.ceilingMs(attempt));
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.nextDelayMs(attempt);
+                assertTrue("attempt " + attempt + ": " + delay,
+                        delay >= ceilings[attempt - 1] / 2 && delay <= ceilings[attempt - 1]);
+            }
+        }
+        // 回数が大きくてもあふれない
+        assertEquals(10_000, policy.ceilingMs(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void delay_isSpreadByJitter() {
+        RetryPolicy policy = new RetryPolicy(1000, 60_000, 10, new Random(7));
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            delays.add(policy.nextDelayMs(3));
+        }
+        assertTrue(delays.size() > 10);
+    }
+
+    @Test
+    public void isExhausted_afterMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy(1000, 60_000, 3, new Random(1));
+        assertFalse(policy.isExhausted(1));
+        assertFalse(policy.isExhausted(3));
+        assertTrue(policy.isExhausted(4));
+    }
+
+    @Test
+    public void defaultPolicy_retriesForAboutTenMinutes() {
+        RetryPolicy policy = RetryPolicy.createDefault();
+        long total = 0;
+        for (int attempt = 1; attempt <= policy.getMaxAttempts(); attempt++) {
+            total += policy.ceilingMs(attempt);
+        }
+        assertEquals(2 + 4 + 8 + 16 + 32 + 64 + 128 + 256, total / 1000);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ppp.svwbrecord;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link WinRateAggregator} の集計値と、書き出し・読み込みで集計値が変わらないことを確認する。
+ */
+public class WinRateAggregatorTest {
+
+    private static final String PLAYER = "プレイヤーA";
+
+    @Test
+    public void add_updatesEveryDimension() {
+        WinRateAggregator aggregator = new WinRateAggregator();
+        aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "LEGEND", MatchRecord.RESULT_WIN));
+        aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_SECOND, "LEGEND", MatchRecord.RESULT_LOSS));
+        aggregator.add(match(PLAYER, "ロイヤル", "ウィッチ", MatchRecord.TURN_FIRST, "EPIC", MatchRecord.RESULT_WIN));
+        aggregator.add(match("プレイヤーB", "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "LEGEND", MatchRecord.RESULT_LOSS));
+
+        assertTally(2, 1, aggregator.getTotal(PLAYER));
+        assertTally(2, 1, aggregator.getByMyDeck(PLAYER, "ロイヤル"));
+        assertTally(1, 1, aggregator.getMatchup(PLAYER, "ロイヤル", "エルフ"));
+        assertTally(1, 0, aggregator.getMatchup(PLAYER, "ロイヤル", "ウィッチ"));
+        assertTally(1, 0, aggregator.getMatchupByTurn(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST));
+        assertTally(0, 1, aggregator.getMatchupByTurn(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_SECOND));
+        assertTally(2, 0, aggregator.getByTurn(PLAYER, MatchRecord.TURN_FIRST));
+        assertTally(0, 1, aggregator.getByTurn(PLAYER, MatchRecord.TURN_SECOND));
+        assertTally(1, 1, aggregator.getByOpponentRank(PLAYER, "LEGEND"));
+        assertTally(0, 1, aggregator.getTotal("プレイヤーB"));
+        assertTally(0, 0, aggregator.getMatchup(PLAYER, "エルフ", "ロイヤル"));
+        assertEquals(2.0 / 3.0, aggregator.getTotal(PLAYER).getWinRate(), 1e-9);
+    }
+
+    @Test
+    public void add_countsButSkipsRecordsWithoutResult() {
+        WinRateAggregator aggregator = new WinRateAggregator();
+
+        assertFalse(aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "", "未選択")));
+
+        assertEquals(1, aggregator.getRecordCount());
+        assertEquals(0, aggregator.getTotal(PLAYER).getTotal());
+        assertTrue(Double.isNaN(aggregator.getTotal(PLAYER).getWinRate()));
+    }
+
+    @Test
+    public void returnedTally_isNotAffectedByLaterUpdates() {
+        WinRateAggregator aggregator = new WinRateAggregator();
+        aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "", MatchRecord.RESULT_WIN));
+        WinRateAggregator.Tally before = aggregator.getTotal(PLAYER);
+
+        aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "", MatchRecord.RESULT_WIN));
+
+        assertEquals(1, before.getWins());
+        assertEquals(2, aggregator.getTotal(PLAYER).getWins());
+    }
+
+    @Test
+    public void writeAndRead_roundTrips() throws Exception {
+        WinRateAggregator aggregator = new WinRateAggregator();
+        aggregator.add(match(PLAYER, "ロイヤル", "エルフ", MatchRecord.TURN_FIRST, "LEGEND", MatchRecord.RESULT_WIN));
+        aggregator.add(match(PLAYER, "ネメシス", "エルフ", MatchRecord.TURN_SECOND, "EPIC", MatchRecord.RESULT_LOSS));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        aggregator.writeTo(new DataOutputStream(bytes));
+        WinRateAggregator restored = WinRateAggregator.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, restored.getRecordCount());
+        assertTally(1, 1, restored.getTotal(PLAYER));
+        assertTally(0, 1, restored.getMatchup(PLAYER, "ネメシス", "エルフ"));
+        assertTally(1, 0, restored.getByOpponentRank(PLAYER, "LEGEND"));
+        assertTally(0, 1, restored.getByTurn(PLAYER, MatchRecord.TURN_SECOND));
+        assertTally(0, 1, restored.getMatchupByTurn(PLAYER, "ネメシス", "エルフ", MatchRecord.TURN_SECOND));
+    }
+
+    private static MatchRecord match(String sheet, String myDeck, String opponentDeck,
+                                     String turn, String rank, String result) {
+        return MatchRecord.fromRow(0, sheet, 0L,
+                Arrays.asList("01/01", rank, myDeck, turn, opponentDeck, result), MatchRecord.NO_REMOTE_ROW);
+    }
+
+    private static void assertTally(int wins, int losses, WinRateAggregator.Tally tally) {
+        assertEquals("wins", wins, tally.getWins());
+        assertEquals("losses", losses, tally.getLosses());
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "svwbrecord"
 include(":app")
+include(":core")